@@ -30,9 +30,16 @@ package icircles.abstractDescription;
  * policies, either expressed or implied, of the iCircles Project.
  */
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -62,7 +69,17 @@ public class AbstractBasicRegion implements Comparable<AbstractBasicRegion> {
 
     @JsonProperty(value="inSet")
     TreeSet<AbstractCurve> m_in_set;
-    static TreeSet<AbstractBasicRegion> m_library = new TreeSet<AbstractBasicRegion>();
+    private List<String> m_label_signature; // built on first use
+
+    /**
+     * The interning table behind {@link #get}.  Regions are keyed by their
+     * contour set and held weakly, so regions which are no longer referenced
+     * by any description drop out of the library.
+     */
+    static final ConcurrentHashMap<RegionKey, RegionReference> m_library =
+            new ConcurrentHashMap<RegionKey, RegionReference>();
+    static final ReferenceQueue<AbstractBasicRegion> m_collected =
+            new ReferenceQueue<AbstractBasicRegion>();
 
     /**
      * Default constructor is needed for Jackson Databinding.
@@ -74,21 +91,65 @@ public class AbstractBasicRegion implements Comparable<AbstractBasicRegion> {
         m_in_set = in_set;
     }
 
+    /**
+     * Returns the unique {@link AbstractBasicRegion} inside exactly the given
+     * contours, creating it if it is not already in the library.
+     *
+     * Lookups are hashed, so this takes O(1) time on average regardless of
+     * how many regions have been created so far.  It is safe to call from
+     * several threads at once.
+     *
+     * @param in_set the contours the region is inside.  The set is copied,
+     *        so the caller may go on to modify it.
+     * @return the interned region.
+     */
     public static AbstractBasicRegion get(Set<AbstractCurve> in_set) {
-        // TODO: This is quite an expensive way to look up already existing
-        // objects. This should definitely be replaced by 'contains'.
-        //
-        // I would suggest not to use the library at all.
-        for (AbstractBasicRegion alreadyThere : m_library) {
-            if (alreadyThere.m_in_set.equals(in_set)) {
-                return alreadyThere;
+        expungeCollected();
+
+        RegionKey key = new RegionKey(in_set);
+        while (true) {
+            RegionReference ref = m_library.get(key);
+            if (ref != null) {
+                AbstractBasicRegion alreadyThere = ref.get();
+                if (alreadyThere != null) {
+                    return alreadyThere;
+                }
+                // collected, but not yet expunged
+                m_library.remove(ref.key, ref);
             }
+
+            AbstractBasicRegion result = new AbstractBasicRegion(new TreeSet<AbstractCurve>(in_set));
+            RegionKey ownKey = new RegionKey(result.m_in_set);
+            RegionReference newRef = new RegionReference(ownKey, result);
+            ref = m_library.putIfAbsent(ownKey, newRef);
+            if (ref == null) {
+                return result;
+            }
+            // another thread got there first
+            AbstractBasicRegion winner = ref.get();
+            if (winner != null) {
+                return winner;
+            }
+            m_library.remove(ref.key, ref);
         }
+    }
 
-        TreeSet<AbstractCurve> tmp = new TreeSet<AbstractCurve>(in_set);
-        AbstractBasicRegion result = new AbstractBasicRegion(tmp);
-        m_library.add(result);
-        return result;
+    /**
+     * The number of regions currently held by the library.  Only used for
+     * diagnostics.
+     *
+     * @return the size of the library.
+     */
+    public static int getLibrarySize() {
+        expungeCollected();
+        return m_library.size();
+    }
+
+    private static void expungeCollected() {
+        RegionReference ref;
+        while ((ref = (RegionReference) m_collected.poll()) != null) {
+            m_library.remove(ref.key, ref);
+        }
     }
 
     /**
@@ -233,7 +294,9 @@ public class AbstractBasicRegion implements Comparable<AbstractBasicRegion> {
                 }
             }
 
-            logger.debug("straddle : " + debug() + "->" + other.debug() + "=" + result.debug());
+            if (logger.isDebugEnabled() && result != null) {
+                logger.debug("straddle : " + debug() + "->" + other.debug() + "=" + result.debug());
+            }
 
             return result;
         }
@@ -270,6 +333,45 @@ public class AbstractBasicRegion implements Comparable<AbstractBasicRegion> {
         return result;
     }
 
+    /**
+     * The sorted labels of the contours this region is inside.  Two regions
+     * without repeated labels are {@link #isLabelEquivalent label equivalent}
+     * exactly when their signatures are equal, so the signature can be used as
+     * a hash key for label-based lookups.
+     *
+     * @return an unmodifiable sorted list of labels, one per contour.
+     */
+    @JsonIgnore
+    public List<String> getLabelSignature() {
+        List<String> result = m_label_signature;
+        if (result == null) {
+            String[] labels = new String[m_in_set.size()];
+            int i = 0;
+            for (AbstractCurve c : m_in_set) {
+                labels[i++] = c.getLabel();
+            }
+            Arrays.sort(labels);
+            result = Collections.unmodifiableList(Arrays.asList(labels));
+            m_label_signature = result;
+        }
+        return result;
+    }
+
+    /**
+     * Does this region lie inside two contours with the same label?
+     *
+     * @return true if some label appears more than once in the signature.
+     */
+    public boolean hasRepeatedLabel() {
+        List<String> signature = getLabelSignature();
+        for (int i = 1; i < signature.size(); i++) {
+            if (signature.get(i).equals(signature.get(i - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Compares the label equivalence of two AbstractBasicRegion objects.  The
      * label equivalence ensures that the labels in this AbstractBasicRegion are
@@ -309,4 +411,89 @@ public class AbstractBasicRegion implements Comparable<AbstractBasicRegion> {
         }
         return false;
     }
+
+    /**
+     * A hash key for a set of contours.  Two keys are equal exactly when
+     * they hold the same contour objects.  Contours which merely compare
+     * equal - the same label and id, as recomposition gives the copies it
+     * makes for different diagrams - do not share regions, so diagrams laid
+     * out at the same time on different threads keep apart.
+     */
+    static final class RegionKey {
+
+        final Set<AbstractCurve> m_curves;
+        final int m_hash;
+
+        RegionKey(Set<AbstractCurve> curves) {
+            m_curves = curves;
+            int hash = 0;
+            for (AbstractCurve c : curves) {
+                // order-independent, so any Set implementation gives the same hash
+                hash += mix((c.m_label == null ? 0 : c.m_label.hashCode()) * 31 + c.m_id);
+            }
+            m_hash = hash;
+        }
+
+        /**
+         * Spreads the bits of a contour's hash, so that sums over sets of
+         * contours with similar labels and ids seldom collide.
+         */
+        private static int mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h;
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RegionKey)) {
+                return false;
+            }
+            RegionKey other = (RegionKey) o;
+            if (m_hash != other.m_hash || m_curves.size() != other.m_curves.size()) {
+                return false;
+            }
+            // keys held by the library always wrap a region's own TreeSet;
+            // two sorted sets of the same contours list them in the same order
+            if (isNaturallySorted(m_curves) && isNaturallySorted(other.m_curves)) {
+                Iterator<AbstractCurve> mine = m_curves.iterator();
+                for (AbstractCurve c : other.m_curves) {
+                    if (mine.next() != c) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            Set<AbstractCurve> mine = Collections.newSetFromMap(
+                    new IdentityHashMap<AbstractCurve, Boolean>());
+            mine.addAll(m_curves);
+            return mine.containsAll(other.m_curves);
+        }
+
+        private static boolean isNaturallySorted(Set<AbstractCurve> curves) {
+            return curves instanceof TreeSet
+                    && ((TreeSet<AbstractCurve>) curves).comparator() == null;
+        }
+    }
+
+    static final class RegionReference extends WeakReference<AbstractBasicRegion> {
+
+        final RegionKey key;
+
+        RegionReference(RegionKey key, AbstractBasicRegion abr) {
+            super(abr, m_collected);
+            this.key = key;
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package icircles.abstractDescription;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import org.apache.log4j.Logger;
@@ -14,7 +16,8 @@ public class AbstractCurve implements Comparable<AbstractCurve> {
 
     static Logger logger = Logger.getLogger(AbstractCurve.class.getName());
 
-    static int id = 0;
+    // shared by every thread which creates curves
+    static final AtomicInteger id = new AtomicInteger();
     @JsonProperty(value="label")
     String m_label;
     int m_id;
@@ -26,8 +29,12 @@ public class AbstractCurve implements Comparable<AbstractCurve> {
     }
 
     public AbstractCurve(String label) {
-        id++;
-        m_id = id;
+        m_id = id.incrementAndGet();
+        m_label = label;
+    }
+
+    private AbstractCurve(String label, int curve_id) {
+        m_id = curve_id;
         m_label = label;
     }
 
@@ -35,10 +42,29 @@ public class AbstractCurve implements Comparable<AbstractCurve> {
         return m_label;
     }
 
+    /**
+     * The number which tells apart curves with the same label.
+     */
+    public int getId() {
+        return m_id;
+    }
+
     public AbstractCurve clone() {
         return new AbstractCurve(m_label);
     }
 
+    /**
+     * A copy of this curve with the given id rather than a fresh one from the
+     * global counter.  The caller must make sure that no other curve with
+     * this label and id will be compared with the copy.
+     *
+     * @param curve_id the id of the copy.
+     * @return a new curve with the same label.
+     */
+    public AbstractCurve clone(int curve_id) {
+        return new AbstractCurve(m_label, curve_id);
+    }
+
     public int compareTo(AbstractCurve o) {
     	if(null == o) {
     		return 1; // null is less than anything
@@ -60,8 +60,9 @@ public class AbstractDescription {
 
     static Logger logger = Logger.getLogger(AbstractDescription.class.getName());
 
+    // PersistentSortedSets, except when bound from JSON
     @JsonProperty(value="ContourSet")
-    TreeSet<AbstractCurve> m_contours;
+    SortedSet<AbstractCurve> m_contours;
     @JsonProperty(value="ZoneSet")
     Set<AbstractBasicRegion> m_zones;
     @JsonProperty(value="ShadedZoneSet")
@@ -69,6 +70,11 @@ public class AbstractDescription {
 
     ArrayList<AbstractSpider> m_spiders;
 
+    // contour indices and zone bitsets, built on first use
+    private volatile ContourIndex m_index;
+    // zones and contours keyed by label, built on first use
+    private volatile LabelIndex m_label_index;
+
     /** 
      * Default constructor is needed for Jackson Databinding.
      */
@@ -80,17 +86,17 @@ public class AbstractDescription {
     public AbstractDescription(Set<AbstractCurve> contours,
 			       Set<AbstractBasicRegion> zones,
 			       Set<AbstractBasicRegion> shaded_zones) {
-        m_contours = new TreeSet<AbstractCurve>(contours);
-        m_zones = new TreeSet<AbstractBasicRegion>(zones);
-        m_shaded_zones = new TreeSet<AbstractBasicRegion>(shaded_zones);
+        m_contours = PersistentSortedSet.copyOf(contours);
+        m_zones = PersistentSortedSet.copyOf(zones);
+        m_shaded_zones = PersistentSortedSet.copyOf(shaded_zones);
         m_spiders = new ArrayList<AbstractSpider>();
     }
 
     public AbstractDescription(Set<AbstractCurve> contours,
 			       Set<AbstractBasicRegion> zones) {
-	m_contours = new TreeSet<AbstractCurve>(contours);
-	m_zones = new TreeSet<AbstractBasicRegion>(zones);
-	m_shaded_zones = new TreeSet<AbstractBasicRegion>();
+	m_contours = PersistentSortedSet.copyOf(contours);
+	m_zones = PersistentSortedSet.copyOf(zones);
+	m_shaded_zones = PersistentSortedSet.empty();
         m_spiders = new ArrayList<AbstractSpider>();
 	}
 
@@ -150,6 +156,30 @@ public class AbstractDescription {
         return new TreeSet<AbstractBasicRegion>(m_zones);
     }
 
+    /**
+     * The contours of this description, as a set which descriptions derived
+     * from this one can share.  Passing sets made from it by
+     * {@link PersistentSortedSet#with} and {@link PersistentSortedSet#without}
+     * to the constructor takes no copy.
+     *
+     * @return the contours, which must not be (and cannot be) changed.
+     */
+    @JsonIgnore
+    public PersistentSortedSet<AbstractCurve> getContourSet() {
+        return PersistentSortedSet.copyOf(m_contours);
+    }
+
+    /**
+     * The zones of this description, as a set which descriptions derived
+     * from this one can share, as with {@link #getContourSet}.
+     *
+     * @return the zones, which must not be (and cannot be) changed.
+     */
+    @JsonIgnore
+    public PersistentSortedSet<AbstractBasicRegion> getZoneSet() {
+        return PersistentSortedSet.copyOf(m_zones);
+    }
+
     @JsonIgnore
     public Iterator<AbstractSpider> getSpiderIterator() {
         return m_spiders.iterator();
@@ -262,12 +292,13 @@ public class AbstractDescription {
      *         in the diagram, true otherwise.
      */
     boolean oneOfMultipleInstances(AbstractCurve c) {
-        for (AbstractCurve cc : m_contours) {
-            if (cc != c && cc.matchesLabel(c)) {
-                return true;
-            }
+        Integer count = getLabelIndex().m_label_counts.get(c.getLabel());
+        if (count == null) {
+            return false;
         }
-        return false;
+        // c itself does not count as another instance
+        int others = count.intValue() - (getContourIndex(c) >= 0 ? 1 : 0);
+        return others > 0;
     }
 
     @JsonIgnore
@@ -282,8 +313,9 @@ public class AbstractDescription {
             result += c.checksum() * scaling;
             scaling += 0.07;
             scaling += 0.05;
+            int ci = getContourIndex(c);
             for (AbstractBasicRegion z : m_zones) {
-                if (z.isIn(c)) {
+                if (getZoneBits(z).isIn(ci)) {
                     result += z.checksum() * scaling;
                     scaling += 0.09;
                 }
@@ -292,25 +324,222 @@ public class AbstractDescription {
         return result;
     }
 
-    public boolean includesLabel(String l) {
+    /**
+     * A string which identifies this description up to the identity of its
+     * curve objects: two descriptions have the same key exactly when they have
+     * the same contour labels, the same zones and shaded zones over those
+     * labels, and the same spiders in the same order.  Curves which share a
+     * label are told apart by their position in the contour order.
+     *
+     * The key is rebuilt on each call, since spiders can still be added.
+     * It is used to look descriptions up in a layout cache.
+     *
+     * @return the canonical key.
+     */
+    @JsonIgnore
+    public String getCanonicalKey() {
+        HashMap<AbstractCurve, String> tokens = new HashMap<AbstractCurve, String>();
+        HashMap<String, Integer> seen = new HashMap<String, Integer>();
+        StringBuilder b = new StringBuilder();
+        b.append("C");
         for (AbstractCurve c : m_contours) {
-            if (c.getLabel().equals(l)) {
-                return true;
+            String label = c.getLabel() == null ? "" : c.getLabel();
+            Integer rank = seen.get(label);
+            seen.put(label, rank == null ? 1 : rank.intValue() + 1);
+            // length-prefixed, so that labels may hold any characters
+            String token = label.length() + ":" + label;
+            if (getLabelIndex().m_label_counts.get(c.getLabel()).intValue() > 1) {
+                token = token + "#" + (rank == null ? 0 : rank.intValue());
             }
+            tokens.put(c, token);
+            b.append(token);
         }
-        return false;
+        b.append("|Z");
+        appendZones(b, m_zones, tokens);
+        b.append("|S");
+        appendZones(b, m_shaded_zones, tokens);
+        b.append("|P");
+        for (AbstractSpider s : m_spiders) {
+            b.append("(");
+            appendZones(b, s.get_feet(), tokens);
+            if (s.getName() != null) {
+                b.append(s.getName().length()).append(":").append(s.getName());
+            }
+            b.append(")");
+        }
+        return b.toString();
+    }
+
+    private static void appendZones(StringBuilder b, Collection<AbstractBasicRegion> zones,
+            HashMap<AbstractCurve, String> tokens) {
+        ArrayList<String> encoded = new ArrayList<String>(zones.size());
+        for (AbstractBasicRegion z : zones) {
+            StringBuilder zb = new StringBuilder("[");
+            Iterator<AbstractCurve> it = z.getContourIterator();
+            while (it.hasNext()) {
+                AbstractCurve c = it.next();
+                String token = tokens.get(c);
+                if (token == null) {
+                    // not a contour of this description
+                    String label = c.getLabel() == null ? "" : c.getLabel();
+                    token = label.length() + ":" + label + "#?";
+                }
+                zb.append(token);
+            }
+            zb.append("]");
+            encoded.add(zb.toString());
+        }
+        // zone sets need not be sorted, e.g. after JSON binding
+        Collections.sort(encoded);
+        for (String e : encoded) {
+            b.append(e);
+        }
+    }
+
+    public boolean includesLabel(String l) {
+        return getLabelIndex().m_label_counts.containsKey(l);
     }
 
+    /**
+     * Finds the zone of this description which lies in contours with exactly
+     * the labels of z.
+     *
+     * This is a hash lookup on the {@link AbstractBasicRegion#getLabelSignature
+     * label signature} of z, unless this description has zones inside several
+     * contours with the same label, in which case the zones are scanned.
+     *
+     * @param z a zone, possibly from another description.
+     * @return a label equivalent zone, or null if there is none.
+     */
     public AbstractBasicRegion getLabelEquivalentZone(AbstractBasicRegion z) {
-        for (AbstractBasicRegion zone : m_zones) {
-            if (zone.isLabelEquivalent(z)) {
-                return zone;
+        LabelIndex index = getLabelIndex();
+        if (index.m_zones_by_signature == null) {
+            for (AbstractBasicRegion zone : m_zones) {
+                if (zone.isLabelEquivalent(z)) {
+                    return zone;
+                }
             }
+            return null;
         }
-        return null;
+        return index.m_zones_by_signature.get(z.getLabelSignature());
     }
 
     public boolean hasShadedZone(AbstractBasicRegion z){
     	return m_shaded_zones.contains(z);
     }
+
+    /**
+     * The position of a contour in this description's sorted contour set.
+     * This is the bit used for that contour in {@link ZoneBits}.
+     *
+     * @param c a contour of this description.
+     * @return the index of c, or -1 if c is not a contour of this description.
+     */
+    public int getContourIndex(AbstractCurve c) {
+        Integer i = getIndex().m_indices.get(c);
+        return i == null ? -1 : i.intValue();
+    }
+
+    /**
+     * @param index a value returned by {@link #getContourIndex}.
+     * @return the contour with the given index.
+     */
+    public AbstractCurve getContour(int index) {
+        return getIndex().m_curves[index];
+    }
+
+    /**
+     * Returns the bitset encoding of a zone, relative to the contours of this
+     * description.  Zones of this description are encoded once, so this is a
+     * hash lookup for them.
+     *
+     * @param z a zone whose contours are all contours of this description.
+     * @return the bitset for z.
+     */
+    public ZoneBits getZoneBits(AbstractBasicRegion z) {
+        ContourIndex index = getIndex();
+        ZoneBits result = index.m_zone_bits.get(z);
+        if (result == null) {
+            result = index.encode(z);
+        }
+        return result;
+    }
+
+    private ContourIndex getIndex() {
+        ContourIndex index = m_index;
+        if (index == null) {
+            // racing threads build identical indices, so no need to lock
+            index = new ContourIndex(m_contours, m_zones);
+            m_index = index;
+        }
+        return index;
+    }
+
+    private LabelIndex getLabelIndex() {
+        LabelIndex index = m_label_index;
+        if (index == null) {
+            index = new LabelIndex(m_contours, m_zones);
+            m_label_index = index;
+        }
+        return index;
+    }
+
+    private static final class LabelIndex {
+
+        final HashMap<String, Integer> m_label_counts = new HashMap<String, Integer>();
+        // null if some zone repeats a label; signatures are ambiguous then
+        HashMap<List<String>, AbstractBasicRegion> m_zones_by_signature =
+                new HashMap<List<String>, AbstractBasicRegion>();
+
+        LabelIndex(SortedSet<AbstractCurve> contours, Set<AbstractBasicRegion> zones) {
+            for (AbstractCurve c : contours) {
+                Integer count = m_label_counts.get(c.getLabel());
+                m_label_counts.put(c.getLabel(), count == null ? 1 : count.intValue() + 1);
+            }
+            for (AbstractBasicRegion z : zones) {
+                if (z.hasRepeatedLabel()) {
+                    m_zones_by_signature = null;
+                    break;
+                }
+                // the first zone in iteration order wins, as with a linear scan
+                List<String> signature = z.getLabelSignature();
+                if (!m_zones_by_signature.containsKey(signature)) {
+                    m_zones_by_signature.put(signature, z);
+                }
+            }
+        }
+    }
+
+    private static final class ContourIndex {
+
+        final TreeMap<AbstractCurve, Integer> m_indices = new TreeMap<AbstractCurve, Integer>();
+        final AbstractCurve[] m_curves;
+        final HashMap<AbstractBasicRegion, ZoneBits> m_zone_bits = new HashMap<AbstractBasicRegion, ZoneBits>();
+
+        ContourIndex(SortedSet<AbstractCurve> contours, Set<AbstractBasicRegion> zones) {
+            m_curves = contours.toArray(new AbstractCurve[contours.size()]);
+            for (int i = 0; i < m_curves.length; i++) {
+                m_indices.put(m_curves[i], i);
+            }
+            for (AbstractBasicRegion z : zones) {
+                m_zone_bits.put(z, encode(z));
+            }
+        }
+
+        ZoneBits encode(AbstractBasicRegion z) {
+            int[] indices = new int[z.getNumContours()];
+            int n = 0;
+            Iterator<AbstractCurve> it = z.getContourIterator();
+            while (it.hasNext()) {
+                Integer i = m_indices.get(it.next());
+                if (i != null) {
+                    indices[n++] = i.intValue();
+                }
+            }
+            if (n < indices.length) {
+                indices = Arrays.copyOf(indices, n);
+            }
+            return ZoneBits.make(indices, m_curves.length);
+        }
+    }
 }
@@ -0,0 +1,638 @@
+package icircles.abstractDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A normal form of an {@link AbstractDescription} under relabelling of its
+ * contours, together with the relabelling which produces it.
+ *
+ * Two descriptions which differ only in the names of their contours, such
+ * as "a b ab" and "x y xy", have the same canonical description, so one
+ * layout of it can be relabelled to serve either.  Zones, shaded zones and
+ * spider habitats all take part; spiders keep their order and names.
+ *
+ * The canonical contour order is found by colour refinement - contours are
+ * told apart by the zones, shading and spiders they take part in - followed
+ * by a search over the contours refinement cannot separate, keeping the
+ * ordering with the smallest encoding.
+ *
+ * The search skips orderings which a symmetry of the description maps onto
+ * one already tried, since they encode the same way.  Twins - contours which
+ * can be swapped without changing anything, such as the contours of
+ * "a b c" or of a Venn diagram - are found before the search, and further
+ * symmetries as two orderings turn out to encode alike.  Descriptions whose
+ * symmetries escape this can still make the search large, so it stops after
+ * MAX_LEAVES orderings; the form is then still a faithful relabelling, but
+ * may not be shared by every isomorphic description (see {@link #isExact}).
+ */
+public final class CanonicalForm {
+
+    static Logger logger = Logger.getLogger(CanonicalForm.class.getName());
+
+    /** Contours are encoded as bits of a long. */
+    static final int MAX_CONTOURS = 63;
+    /** The number of complete orderings the search may try. */
+    static final int MAX_LEAVES = 1000;
+
+    private final AbstractDescription m_original;
+    private final AbstractDescription m_canonical;
+    private final HashMap<String, String> m_to_original = new HashMap<String, String>();
+    private final HashMap<String, String> m_to_canonical = new HashMap<String, String>();
+    private final boolean m_exact;
+
+    private CanonicalForm(AbstractDescription original, AbstractCurve[] curves,
+            int[] position, Search search) {
+        m_original = original;
+        m_exact = !search.m_exhausted;
+        int n = curves.length;
+
+        AbstractCurve[] canonicalCurves = new AbstractCurve[n];
+        TreeSet<AbstractCurve> contours = new TreeSet<AbstractCurve>();
+        for (int i = 0; i < n; i++) {
+            String label = canonicalLabel(position[i], n);
+            canonicalCurves[i] = new AbstractCurve(label);
+            contours.add(canonicalCurves[i]);
+            m_to_original.put(label, curves[i].getLabel());
+            m_to_canonical.put(curves[i].getLabel(), label);
+        }
+        TreeSet<AbstractBasicRegion> zones = new TreeSet<AbstractBasicRegion>();
+        for (long mask : search.m_zones) {
+            zones.add(region(mask, canonicalCurves));
+        }
+        TreeSet<AbstractBasicRegion> shaded = new TreeSet<AbstractBasicRegion>();
+        for (long mask : search.m_shaded) {
+            shaded.add(region(mask, canonicalCurves));
+        }
+        m_canonical = new AbstractDescription(contours, zones, shaded);
+        Iterator<AbstractSpider> it = original.getSpiderIterator();
+        for (long[] feet : search.m_feet) {
+            TreeSet<AbstractBasicRegion> habitat = new TreeSet<AbstractBasicRegion>();
+            for (long mask : feet) {
+                habitat.add(region(mask, canonicalCurves));
+            }
+            m_canonical.addSpider(new AbstractSpider(habitat, it.next().getName()));
+        }
+    }
+
+    /**
+     * Computes the canonical form of a description.
+     *
+     * @return the canonical form, or null if the description has several
+     *         contours with one label, more than MAX_CONTOURS contours, or
+     *         zones over curves which are not among its contours.
+     */
+    public static CanonicalForm of(AbstractDescription ad) {
+        int n = ad.getNumContours();
+        if (n > MAX_CONTOURS) {
+            return null;
+        }
+        AbstractCurve[] curves = new AbstractCurve[n];
+        HashMap<AbstractCurve, Integer> index = new HashMap<AbstractCurve, Integer>();
+        HashMap<String, AbstractCurve> byLabel = new HashMap<String, AbstractCurve>();
+        Iterator<AbstractCurve> cIt = ad.getContourIterator();
+        for (int i = 0; i < n; i++) {
+            curves[i] = cIt.next();
+            index.put(curves[i], i);
+            if (byLabel.put(curves[i].getLabel(), curves[i]) != null) {
+                return null; // split contours: the relabelling would not be a function of labels
+            }
+        }
+
+        Search search = new Search(n);
+        if (!search.setUp(ad, index)) {
+            return null;
+        }
+        int[] position = search.run();
+        return new CanonicalForm(ad, curves, position, search);
+    }
+
+    /**
+     * @return the canonical description, with contours labelled a, b, c...
+     *         (or aa, ab, ... when there are more than 26 contours).
+     */
+    public AbstractDescription getDescription() {
+        return m_canonical;
+    }
+
+    public AbstractDescription getOriginal() {
+        return m_original;
+    }
+
+    /**
+     * @return the canonical key of the canonical description; equal for any
+     *         two descriptions with exact forms which are relabellings of
+     *         each other.
+     */
+    public String getKey() {
+        return m_canonical.getCanonicalKey();
+    }
+
+    /**
+     * @return false if the search for the smallest encoding was cut short.
+     */
+    public boolean isExact() {
+        return m_exact;
+    }
+
+    /**
+     * @return the label in the original description of a canonical contour.
+     */
+    public String getOriginalLabel(String canonicalLabel) {
+        return m_to_original.get(canonicalLabel);
+    }
+
+    /**
+     * @return the canonical label of a contour of the original description.
+     */
+    public String getCanonicalLabel(String originalLabel) {
+        return m_to_canonical.get(originalLabel);
+    }
+
+    /**
+     * Labels of one fixed width, so that they sort in the canonical order.
+     */
+    static String canonicalLabel(int position, int numContours) {
+        int width = 1;
+        for (int span = 26; span < numContours; span *= 26) {
+            width++;
+        }
+        char[] chars = new char[width];
+        for (int w = width - 1; w >= 0; w--) {
+            chars[w] = (char) ('a' + position % 26);
+            position /= 26;
+        }
+        // AbstractCurve.matchesLabel compares labels by reference
+        return new String(chars).intern();
+    }
+
+    private static AbstractBasicRegion region(long mask, AbstractCurve[] curves) {
+        TreeSet<AbstractCurve> in = new TreeSet<AbstractCurve>();
+        for (int i = 0; i < curves.length; i++) {
+            if ((mask & (1L << i)) != 0) {
+                in.add(curves[i]);
+            }
+        }
+        return AbstractBasicRegion.get(in);
+    }
+
+    /**
+     * The refinement and search, over contours numbered by their position in
+     * the original description.  Colours are ranks of signatures which
+     * mention colours only, never labels, so isomorphic descriptions are
+     * refined in step.
+     */
+    private static final class Search {
+
+        final int m_n;
+        long[] m_zones;
+        long[] m_shaded;
+        long[][] m_feet;
+
+        // the zones, shaded zones and habitats, for testing symmetries
+        HashSet<Long> m_zone_set;
+        HashSet<Long> m_shaded_set;
+        ArrayList<HashSet<Long>> m_feet_sets;
+        // for each contour, the least contour it is a twin of
+        int[] m_twin;
+        // symmetries found between orderings which encode alike
+        ArrayList<int[]> m_automorphisms = new ArrayList<int[]>();
+
+        int m_leaves;
+        boolean m_exhausted;
+        long[] m_best_encoding;
+        int[] m_best_position;
+
+        Search(int n) {
+            m_n = n;
+        }
+
+        boolean setUp(AbstractDescription ad, HashMap<AbstractCurve, Integer> index) {
+            m_zones = masks(ad.m_zones, index);
+            m_shaded = masks(ad.m_shaded_zones, index);
+            ArrayList<long[]> feet = new ArrayList<long[]>();
+            Iterator<AbstractSpider> it = ad.getSpiderIterator();
+            while (it.hasNext()) {
+                feet.add(masks(it.next().get_feet(), index));
+            }
+            if (m_zones == null || m_shaded == null || feet.contains(null)) {
+                return false;
+            }
+            m_feet = feet.toArray(new long[feet.size()][]);
+            m_zone_set = asSet(m_zones);
+            m_shaded_set = asSet(m_shaded);
+            m_feet_sets = new ArrayList<HashSet<Long>>();
+            for (long[] f : m_feet) {
+                m_feet_sets.add(asSet(f));
+            }
+            return true;
+        }
+
+        private static HashSet<Long> asSet(long[] masks) {
+            HashSet<Long> result = new HashSet<Long>();
+            for (long mask : masks) {
+                result.add(mask);
+            }
+            return result;
+        }
+
+        private static long[] masks(Iterable<AbstractBasicRegion> zones,
+                HashMap<AbstractCurve, Integer> index) {
+            ArrayList<Long> result = new ArrayList<Long>();
+            for (AbstractBasicRegion z : zones) {
+                long mask = 0;
+                Iterator<AbstractCurve> it = z.getContourIterator();
+                while (it.hasNext()) {
+                    Integer i = index.get(it.next());
+                    if (i == null) {
+                        return null;
+                    }
+                    mask |= 1L << i.intValue();
+                }
+                result.add(mask);
+            }
+            long[] array = new long[result.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = result.get(i);
+            }
+            return array;
+        }
+
+        int[] run() {
+            findTwins(refine(new int[m_n]));
+            search(new int[m_n], new int[0]);
+            if (m_exhausted) {
+                logger.debug("canonical form search stopped after " + m_leaves + " orderings");
+            }
+            return m_best_position;
+        }
+
+        /**
+         * @param colour the colours, with each contour of fixed given a
+         *        colour of its own.
+         * @param fixed the contours singled out so far, in order.
+         */
+        private void search(int[] colour, int[] fixed) {
+            if (m_leaves >= MAX_LEAVES) {
+                m_exhausted = true;
+                return;
+            }
+            colour = refine(colour);
+
+            // the first cell (in colour order) with several contours
+            int cell = -1;
+            int[] counts = new int[m_n];
+            for (int c = 0; c < m_n; c++) {
+                counts[colour[c]]++;
+            }
+            for (int k = 0; k < m_n; k++) {
+                if (counts[k] > 1) {
+                    cell = k;
+                    break;
+                }
+            }
+            if (cell < 0) {
+                m_leaves++;
+                long[] encoding = encode(colour);
+                int cmp = m_best_encoding == null ? -1 : compare(encoding, m_best_encoding);
+                if (cmp < 0) {
+                    m_best_encoding = encoding;
+                    m_best_position = colour;
+                } else if (cmp == 0) {
+                    addAutomorphism(colour);
+                }
+                return;
+            }
+            // try each contour of the cell as the first of that cell, but
+            // only one of those a symmetry fixing the contours singled out
+            // so far maps to one another, as their orderings encode alike
+            int[] fixedNext = Arrays.copyOf(fixed, fixed.length + 1);
+            int[] orbit = null;
+            int known = -1;
+            boolean[] tried = new boolean[m_n];
+            for (int v = 0; v < m_n; v++) {
+                if (colour[v] != cell) {
+                    continue;
+                }
+                if (known != m_automorphisms.size()) {
+                    known = m_automorphisms.size();
+                    orbit = orbits(fixed);
+                }
+                if (tried[orbit[v]]) {
+                    continue;
+                }
+                tried[orbit[v]] = true;
+                int[] split = new int[m_n];
+                for (int c = 0; c < m_n; c++) {
+                    split[c] = 2 * colour[c] + (c == v ? 0 : 1);
+                }
+                fixedNext[fixed.length] = v;
+                search(split, fixedNext);
+            }
+        }
+
+        /**
+         * Finds the twins: contours of one colour which can be swapped
+         * without changing any zone set.
+         */
+        private void findTwins(int[] colour) {
+            m_twin = new int[m_n];
+            for (int v = 0; v < m_n; v++) {
+                m_twin[v] = v;
+                for (int u = 0; u < v; u++) {
+                    if (m_twin[u] == u && colour[u] == colour[v] && isTwin(u, v)) {
+                        m_twin[v] = u;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private boolean isTwin(int u, int v) {
+            int[] swap = new int[m_n];
+            for (int c = 0; c < m_n; c++) {
+                swap[c] = c;
+            }
+            swap[u] = v;
+            swap[v] = u;
+            return isAutomorphism(swap);
+        }
+
+        private boolean isAutomorphism(int[] perm) {
+            if (!maps(m_zones, m_zone_set, perm) || !maps(m_shaded, m_shaded_set, perm)) {
+                return false;
+            }
+            for (int s = 0; s < m_feet.length; s++) {
+                if (!maps(m_feet[s], m_feet_sets.get(s), perm)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // a permutation of a finite set is onto, so mapping into it is enough
+        private boolean maps(long[] masks, HashSet<Long> set, int[] perm) {
+            for (long mask : masks) {
+                if (!set.contains(permute(mask, perm))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long permute(long mask, int[] perm) {
+            long result = 0;
+            for (int c = 0; c < m_n; c++) {
+                if ((mask & (1L << c)) != 0) {
+                    result |= 1L << perm[c];
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Two orderings which encode alike differ by a symmetry: the map
+         * taking each contour to the one placed where it is in the best
+         * ordering.
+         */
+        private void addAutomorphism(int[] position) {
+            int[] at = new int[m_n];
+            for (int c = 0; c < m_n; c++) {
+                at[m_best_position[c]] = c;
+            }
+            int[] perm = new int[m_n];
+            boolean identity = true;
+            for (int c = 0; c < m_n; c++) {
+                perm[c] = at[position[c]];
+                identity &= perm[c] == c;
+            }
+            if (!identity) {
+                m_automorphisms.add(perm);
+            }
+        }
+
+        /**
+         * The orbits of the contours under the twin swaps and the symmetries
+         * found so far which fix every contour of fixed, each named by its
+         * least contour.
+         */
+        private int[] orbits(int[] fixed) {
+            boolean[] isFixed = new boolean[m_n];
+            for (int v : fixed) {
+                isFixed[v] = true;
+            }
+            int[] parent = new int[m_n];
+            for (int c = 0; c < m_n; c++) {
+                parent[c] = c;
+            }
+            // unfixed twins can be swapped freely
+            int[] firstFree = new int[m_n];
+            Arrays.fill(firstFree, -1);
+            for (int c = 0; c < m_n; c++) {
+                if (!isFixed[c]) {
+                    if (firstFree[m_twin[c]] < 0) {
+                        firstFree[m_twin[c]] = c;
+                    } else {
+                        union(parent, firstFree[m_twin[c]], c);
+                    }
+                }
+            }
+            automorphisms:
+            for (int[] perm : m_automorphisms) {
+                for (int v : fixed) {
+                    if (perm[v] != v) {
+                        continue automorphisms;
+                    }
+                }
+                for (int c = 0; c < m_n; c++) {
+                    union(parent, c, perm[c]);
+                }
+            }
+            for (int c = 0; c < m_n; c++) {
+                parent[c] = find(parent, c);
+            }
+            return parent;
+        }
+
+        private static int find(int[] parent, int c) {
+            while (parent[c] != c) {
+                parent[c] = parent[parent[c]];
+                c = parent[c];
+            }
+            return c;
+        }
+
+        // keeps the least contour of each orbit as its root
+        private static void union(int[] parent, int a, int b) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a < b) {
+                parent[b] = a;
+            } else if (b < a) {
+                parent[a] = b;
+            }
+        }
+
+        /**
+         * Splits colour classes until every contour of a class is in zones,
+         * shaded zones and spider habitats with the same colour patterns.
+         *
+         * @return colours ranked 0, 1, 2...
+         */
+        private int[] refine(int[] colour) {
+            colour = rank(colour, null);
+            int classes = countClasses(colour);
+            while (true) {
+                String[] zoneSig = signatures(m_zones, colour);
+                String[] shadedSig = signatures(m_shaded, colour);
+                String[][] feetSig = new String[m_feet.length][];
+                for (int s = 0; s < m_feet.length; s++) {
+                    feetSig[s] = signatures(m_feet[s], colour);
+                }
+                String[] contourSig = new String[m_n];
+                for (int c = 0; c < m_n; c++) {
+                    long bit = 1L << c;
+                    ArrayList<String> features = new ArrayList<String>();
+                    addFeatures(features, "z", m_zones, zoneSig, bit);
+                    addFeatures(features, "s", m_shaded, shadedSig, bit);
+                    for (int s = 0; s < m_feet.length; s++) {
+                        addFeatures(features, "p" + s + ":", m_feet[s], feetSig[s], bit);
+                    }
+                    Collections.sort(features);
+                    StringBuilder b = new StringBuilder();
+                    b.append(colour[c]);
+                    for (String f : features) {
+                        b.append('|').append(f);
+                    }
+                    contourSig[c] = b.toString();
+                }
+                int[] refined = rank(colour, contourSig);
+                int refinedClasses = countClasses(refined);
+                colour = refined;
+                if (refinedClasses == classes) {
+                    return colour;
+                }
+                classes = refinedClasses;
+            }
+        }
+
+        private static void addFeatures(ArrayList<String> features, String kind,
+                long[] masks, String[] sigs, long bit) {
+            for (int z = 0; z < masks.length; z++) {
+                if ((masks[z] & bit) != 0) {
+                    features.add(kind + sigs[z]);
+                }
+            }
+        }
+
+        /** Each zone as the sorted colours of its contours. */
+        private String[] signatures(long[] masks, int[] colour) {
+            String[] result = new String[masks.length];
+            int[] colours = new int[m_n];
+            for (int z = 0; z < masks.length; z++) {
+                int k = 0;
+                for (int c = 0; c < m_n; c++) {
+                    if ((masks[z] & (1L << c)) != 0) {
+                        colours[k++] = colour[c];
+                    }
+                }
+                Arrays.sort(colours, 0, k);
+                StringBuilder b = new StringBuilder("(");
+                for (int i = 0; i < k; i++) {
+                    b.append(colours[i]).append(',');
+                }
+                result[z] = b.append(')').toString();
+            }
+            return result;
+        }
+
+        /**
+         * Ranks contours by colour, then by signature if given.  The result
+         * depends only on the colours and signatures, not on contour order.
+         */
+        private int[] rank(final int[] colour, final String[] sig) {
+            Integer[] order = new Integer[m_n];
+            for (int c = 0; c < m_n; c++) {
+                order[c] = c;
+            }
+            Comparator<Integer> cmp = new Comparator<Integer>() {
+                public int compare(Integer x, Integer y) {
+                    if (colour[x] != colour[y]) {
+                        return colour[x] < colour[y] ? -1 : 1;
+                    }
+                    return sig == null ? 0 : sig[x].compareTo(sig[y]);
+                }
+            };
+            Arrays.sort(order, cmp);
+            int[] result = new int[m_n];
+            int r = -1;
+            for (int i = 0; i < m_n; i++) {
+                if (i == 0 || cmp.compare(order[i - 1], order[i]) != 0) {
+                    r++;
+                }
+                result[order[i]] = r;
+            }
+            return result;
+        }
+
+        private int countClasses(int[] colour) {
+            int max = -1;
+            for (int c : colour) {
+                max = Math.max(max, c);
+            }
+            return max + 1;
+        }
+
+        /**
+         * The zones, shaded zones and spider habitats with each contour moved
+         * to the bit of its position, each set sorted.
+         */
+        private long[] encode(int[] position) {
+            int length = m_zones.length + m_shaded.length + 2;
+            for (long[] feet : m_feet) {
+                length += feet.length + 1;
+            }
+            long[] result = new long[length];
+            int at = 0;
+            at = encodeSet(m_zones, position, result, at);
+            at = encodeSet(m_shaded, position, result, at);
+            for (long[] feet : m_feet) {
+                at = encodeSet(feet, position, result, at);
+            }
+            return result;
+        }
+
+        private int encodeSet(long[] masks, int[] position, long[] out, int at) {
+            int start = at;
+            for (long mask : masks) {
+                long moved = 0;
+                for (int c = 0; c < m_n; c++) {
+                    if ((mask & (1L << c)) != 0) {
+                        moved |= 1L << position[c];
+                    }
+                }
+                out[at++] = moved;
+            }
+            Arrays.sort(out, start, at);
+            out[at++] = -1; // separator; masks are never negative
+            return at;
+        }
+
+        private static int compare(long[] a, long[] b) {
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return a[i] < b[i] ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package icircles.abstractDescription;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * An immutable set in natural order, held as a balanced (AVL) tree.
+ *
+ * {@link #with} and {@link #without} leave this set as it is and return a
+ * new one which shares all of this set's tree except the path to the
+ * changed element, so each costs O(log n) time and new tree nodes.  A chain
+ * of decomposition or recomposition steps, each of which moves a few zones,
+ * can then keep a description for every step without copying every zone at
+ * every step.
+ *
+ * Like a {@link java.util.TreeSet}, it relies on compareTo being consistent
+ * with equals.  Views by range are not supported.
+ */
+public final class PersistentSortedSet<E extends Comparable<? super E>>
+        extends AbstractSet<E> implements SortedSet<E> {
+
+    private static final class Node<E> {
+
+        final E m_value;
+        final Node<E> m_left;
+        final Node<E> m_right;
+        final int m_height;
+
+        Node(E value, Node<E> left, Node<E> right) {
+            m_value = value;
+            m_left = left;
+            m_right = right;
+            m_height = 1 + Math.max(height(left), height(right));
+        }
+    }
+
+    private static final PersistentSortedSet<?> EMPTY = new PersistentSortedSet<String>(null, 0);
+
+    private final Node<E> m_root;
+    private final int m_size;
+
+    private PersistentSortedSet(Node<E> root, int size) {
+        m_root = root;
+        m_size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> empty() {
+        return (PersistentSortedSet<E>) EMPTY;
+    }
+
+    /**
+     * A set of the given elements.  This takes no copy of a
+     * PersistentSortedSet, and linear time for a set already in natural
+     * order, such as a TreeSet without a comparator.
+     *
+     * @param c the elements.
+     * @return a set holding just those elements.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> copyOf(
+            Collection<? extends E> c) {
+        if (c instanceof PersistentSortedSet) {
+            return (PersistentSortedSet<E>) c;
+        }
+        ArrayList<E> sorted = new ArrayList<E>(c);
+        if (!(c instanceof SortedSet && ((SortedSet<? extends E>) c).comparator() == null)) {
+            Collections.sort(sorted);
+            // drop elements which compare equal, as a TreeSet would
+            int kept = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                if (kept == 0 || sorted.get(kept - 1).compareTo(sorted.get(i)) != 0) {
+                    sorted.set(kept++, sorted.get(i));
+                }
+            }
+            sorted.subList(kept, sorted.size()).clear();
+        }
+        if (sorted.isEmpty()) {
+            return empty();
+        }
+        return new PersistentSortedSet<E>(build(sorted, 0, sorted.size()), sorted.size());
+    }
+
+    private static <E> Node<E> build(ArrayList<E> sorted, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        return new Node<E>(sorted.get(mid), build(sorted, from, mid), build(sorted, mid + 1, to));
+    }
+
+    /**
+     * @param e an element.
+     * @return this set with e added, or this set if it already holds e.
+     */
+    public PersistentSortedSet<E> with(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        Node<E> root = insert(m_root, e);
+        if (root == m_root) {
+            return this;
+        }
+        return new PersistentSortedSet<E>(root, m_size + 1);
+    }
+
+    /**
+     * @param e an element.
+     * @return this set with e taken away, or this set if it does not hold e.
+     */
+    public PersistentSortedSet<E> without(E e) {
+        Node<E> root = delete(m_root, e);
+        if (root == m_root) {
+            return this;
+        }
+        return new PersistentSortedSet<E>(root, m_size - 1);
+    }
+
+    @Override
+    public int size() {
+        return m_size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        E e;
+        try {
+            e = (E) o;
+            Node<E> n = m_root;
+            while (n != null) {
+                int cmp = e.compareTo(n.m_value);
+                if (cmp == 0) {
+                    return true;
+                }
+                n = cmp < 0 ? n.m_left : n.m_right;
+            }
+        } catch (ClassCastException x) {
+            // not an element of this set
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            // the nodes whose values and right subtrees are still to come
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private final Node<E>[] m_stack = new Node[height(m_root)];
+            private int m_depth = pushLeft(m_root, 0);
+
+            private int pushLeft(Node<E> n, int depth) {
+                for (; n != null; n = n.m_left) {
+                    m_stack[depth++] = n;
+                }
+                return depth;
+            }
+
+            public boolean hasNext() {
+                return m_depth > 0;
+            }
+
+            public E next() {
+                if (m_depth == 0) {
+                    throw new NoSuchElementException();
+                }
+                Node<E> n = m_stack[--m_depth];
+                m_depth = pushLeft(n.m_right, m_depth);
+                return n.m_value;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("PersistentSortedSet is immutable");
+            }
+        };
+    }
+
+    public Comparator<? super E> comparator() {
+        return null;
+    }
+
+    public E first() {
+        if (m_root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<E> n = m_root;
+        while (n.m_left != null) {
+            n = n.m_left;
+        }
+        return n.m_value;
+    }
+
+    public E last() {
+        if (m_root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<E> n = m_root;
+        while (n.m_right != null) {
+            n = n.m_right;
+        }
+        return n.m_value;
+    }
+
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        throw new UnsupportedOperationException("no range views of a PersistentSortedSet");
+    }
+
+    public SortedSet<E> headSet(E toElement) {
+        throw new UnsupportedOperationException("no range views of a PersistentSortedSet");
+    }
+
+    public SortedSet<E> tailSet(E fromElement) {
+        throw new UnsupportedOperationException("no range views of a PersistentSortedSet");
+    }
+
+    private static int height(Node<?> n) {
+        return n == null ? 0 : n.m_height;
+    }
+
+    private static <E extends Comparable<? super E>> Node<E> insert(Node<E> n, E e) {
+        if (n == null) {
+            return new Node<E>(e, null, null);
+        }
+        int cmp = e.compareTo(n.m_value);
+        if (cmp < 0) {
+            Node<E> left = insert(n.m_left, e);
+            return left == n.m_left ? n : balance(n.m_value, left, n.m_right);
+        } else if (cmp > 0) {
+            Node<E> right = insert(n.m_right, e);
+            return right == n.m_right ? n : balance(n.m_value, n.m_left, right);
+        }
+        return n;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Comparable<? super E>> Node<E> delete(Node<E> n, Object o) {
+        if (n == null) {
+            return null;
+        }
+        int cmp;
+        try {
+            cmp = ((E) o).compareTo(n.m_value);
+        } catch (ClassCastException x) {
+            return n;
+        }
+        if (cmp < 0) {
+            Node<E> left = delete(n.m_left, o);
+            return left == n.m_left ? n : balance(n.m_value, left, n.m_right);
+        } else if (cmp > 0) {
+            Node<E> right = delete(n.m_right, o);
+            return right == n.m_right ? n : balance(n.m_value, n.m_left, right);
+        }
+        if (n.m_left == null) {
+            return n.m_right;
+        }
+        if (n.m_right == null) {
+            return n.m_left;
+        }
+        // replace n by the least element to its right
+        Node<E> least = n.m_right;
+        while (least.m_left != null) {
+            least = least.m_left;
+        }
+        return balance(least.m_value, n.m_left, deleteLeast(n.m_right));
+    }
+
+    private static <E> Node<E> deleteLeast(Node<E> n) {
+        if (n.m_left == null) {
+            return n.m_right;
+        }
+        return balance(n.m_value, deleteLeast(n.m_left), n.m_right);
+    }
+
+    /**
+     * A node for value over left and right, whose heights differ by at most
+     * two, rotated so that they differ by at most one.
+     */
+    private static <E> Node<E> balance(E value, Node<E> left, Node<E> right) {
+        int hl = height(left);
+        int hr = height(right);
+        if (hl > hr + 1) {
+            if (height(left.m_left) >= height(left.m_right)) {
+                return new Node<E>(left.m_value, left.m_left,
+                        new Node<E>(value, left.m_right, right));
+            }
+            Node<E> lr = left.m_right;
+            return new Node<E>(lr.m_value,
+                    new Node<E>(left.m_value, left.m_left, lr.m_left),
+                    new Node<E>(value, lr.m_right, right));
+        }
+        if (hr > hl + 1) {
+            if (height(right.m_right) >= height(right.m_left)) {
+                return new Node<E>(right.m_value,
+                        new Node<E>(value, left, right.m_left), right.m_right);
+            }
+            Node<E> rl = right.m_left;
+            return new Node<E>(rl.m_value,
+                    new Node<E>(value, left, rl.m_left),
+                    new Node<E>(right.m_value, rl.m_right, right.m_right));
+        }
+        return new Node<E>(value, left, right);
+    }
+}
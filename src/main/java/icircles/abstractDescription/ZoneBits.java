@@ -0,0 +1,195 @@
+package icircles.abstractDescription;
+
+/**
+ * A bitset encoding of an {@link AbstractBasicRegion} relative to the contours
+ * of one {@link AbstractDescription}.
+ *
+ * Bit i is set when the zone is inside the i-th contour of the description
+ * (in the sort order of {@link AbstractCurve}).  Descriptions with at most 64
+ * contours use a single <code>long</code>; bigger ones spill into an array.
+ *
+ * ZoneBits are only comparable with other ZoneBits from the same
+ * description.  Obtain them with {@link AbstractDescription#getZoneBits}.
+ */
+public final class ZoneBits implements Comparable<ZoneBits> {
+
+    private final long m_low;      // contours 0..63
+    private final long[] m_high;   // contours 64.. or null
+    private final int m_size;
+    private final int m_hash;
+
+    ZoneBits(long low, long[] high) {
+        m_low = low;
+        m_high = high;
+        int size = Long.bitCount(low);
+        long hash = low;
+        if (high != null) {
+            for (long w : high) {
+                size += Long.bitCount(w);
+                hash = hash * 31 + w;
+            }
+        }
+        m_size = size;
+        m_hash = (int) (hash ^ (hash >>> 32));
+    }
+
+    static ZoneBits make(int[] indices, int numContours) {
+        long low = 0;
+        long[] high = numContours > 64 ? new long[(numContours - 1) / 64] : null;
+        for (int i : indices) {
+            if (i < 64) {
+                low |= 1L << i;
+            } else {
+                high[(i >> 6) - 1] |= 1L << (i & 63);
+            }
+        }
+        return new ZoneBits(low, high);
+    }
+
+    private long word(int w) {
+        if (w == 0) {
+            return m_low;
+        }
+        return m_high == null ? 0L : m_high[w - 1];
+    }
+
+    private int numWords() {
+        return m_high == null ? 1 : m_high.length + 1;
+    }
+
+    /**
+     * Is this zone inside the contour with the given index?
+     *
+     * @param contourIndex see {@link AbstractDescription#getContourIndex}.
+     * @return true if the zone is inside that contour.
+     */
+    public boolean isIn(int contourIndex) {
+        if (contourIndex < 0) {
+            return false;
+        }
+        return (word(contourIndex >> 6) & (1L << (contourIndex & 63))) != 0;
+    }
+
+    public int getNumContours() {
+        return m_size;
+    }
+
+    /**
+     * The first contour index, from the given one on, which this zone is
+     * inside.  Loop over the contours of a zone with
+     * <pre>for (int i = z.nextContour(0); i >= 0; i = z.nextContour(i + 1))</pre>
+     *
+     * @return the index, or -1 if there is none.
+     */
+    public int nextContour(int from) {
+        int w = from >> 6;
+        if (w >= numWords()) {
+            return -1;
+        }
+        long bits = word(w) & (-1L << (from & 63));
+        while (bits == 0) {
+            w++;
+            if (w >= numWords()) {
+                return -1;
+            }
+            bits = word(w);
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * The bitset equivalent of {@link AbstractBasicRegion#moveOutside}.
+     *
+     * @return this zone moved outside the contour with the given index.
+     */
+    public ZoneBits without(int contourIndex) {
+        if (!isIn(contourIndex)) {
+            return this;
+        }
+        long low = m_low;
+        long[] high = m_high;
+        if (contourIndex < 64) {
+            low &= ~(1L << contourIndex);
+        } else {
+            high = m_high.clone();
+            high[(contourIndex >> 6) - 1] &= ~(1L << (contourIndex & 63));
+        }
+        return new ZoneBits(low, high);
+    }
+
+    /**
+     * @return true if every contour this zone is inside also holds other.
+     */
+    public boolean isSubsetOf(ZoneBits other) {
+        for (int w = 0; w < numWords(); w++) {
+            if ((word(w) & ~other.word(w)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The bitset equivalent of {@link AbstractBasicRegion#getStraddledContour}.
+     *
+     * @param other a zone from the same description.
+     * @return the index of the single contour which distinguishes the two
+     *         zones, or -1 if they differ by none or by more than one.
+     */
+    public int getStraddledIndex(ZoneBits other) {
+        int found = -1;
+        int n = Math.max(numWords(), other.numWords());
+        for (int w = 0; w < n; w++) {
+            long diff = word(w) ^ other.word(w);
+            if (diff == 0) {
+                continue;
+            }
+            if (found >= 0 || Long.bitCount(diff) != 1) {
+                return -1;
+            }
+            found = (w << 6) + Long.numberOfTrailingZeros(diff);
+        }
+        return found;
+    }
+
+    /**
+     * Orders zones in the same way as {@link AbstractBasicRegion#compareTo}:
+     * by number of contours, then by the first contour where they differ.
+     */
+    public int compareTo(ZoneBits other) {
+        if (other.m_size < m_size) {
+            return 1;
+        } else if (other.m_size > m_size) {
+            return -1;
+        }
+        int n = Math.max(numWords(), other.numWords());
+        for (int w = 0; w < n; w++) {
+            long diff = word(w) ^ other.word(w);
+            if (diff != 0) {
+                // whoever holds the lowest differing contour sorts first
+                return (word(w) & Long.lowestOneBit(diff)) != 0 ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ZoneBits)) {
+            return false;
+        }
+        ZoneBits other = (ZoneBits) o;
+        if (m_hash != other.m_hash || m_size != other.m_size) {
+            return false;
+        }
+        return compareTo(other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return m_hash;
+    }
+}
@@ -32,7 +32,12 @@ package icircles.abstractDualGraph;
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 
@@ -47,52 +52,110 @@ public class AbstractDualGraph {
 
     static Logger logger = Logger.getLogger(AbstractDualGraph.class.getName());
 
-    ArrayList<AbstractDualNode> nodes;
-    ArrayList<AbstractDualEdge> edges;
+    // both in the order they were made, with O(1) removal
+    LinkedHashSet<AbstractDualNode> nodes;
+    LinkedHashSet<AbstractDualEdge> edges;
+    // nodes of degree d, by index, are in m_by_degree.get(d); isolated nodes
+    // are not held
+    private final ArrayList<TreeSet<AbstractDualNode>> m_by_degree =
+            new ArrayList<TreeSet<AbstractDualNode>>();
+    // nodes in the order they were made, and how far getFourTuple has found
+    // no square; nodes only lose edges, so a node without one never gains one
+    private final ArrayList<AbstractDualNode> m_node_list;
+    private int m_squares_from = 0;
+    private static final Comparator<AbstractDualNode> BY_INDEX = new Comparator<AbstractDualNode>() {
+        public int compare(AbstractDualNode a, AbstractDualNode b) {
+            return a.index < b.index ? -1 : (a.index == b.index ? 0 : 1);
+        }
+    };
 
+    /**
+     * Neighbouring zones differ by a single contour, so each edge is found
+     * from its end inside more contours, by taking each of that zone's
+     * contours away in turn and looking the result up.  This takes time in
+     * proportion to the number of zones times the number of contours.
+     *
+     * Edges run from the earlier of their nodes in abrs to the later, and
+     * are listed in that order, both in the graph and at each node.
+     *
+     * @param abrs distinct zones, made by {@link AbstractBasicRegion#get}.
+     */
     public AbstractDualGraph(ArrayList<AbstractBasicRegion> abrs) {
-        nodes = new ArrayList<AbstractDualNode>();
-        edges = new ArrayList<AbstractDualEdge>();
+        ArrayList<AbstractDualNode> node_list = new ArrayList<AbstractDualNode>();
+        edges = new LinkedHashSet<AbstractDualEdge>();
         // Each abr becomes a node.
         // Neighbouring abrs get edges added between them.
+        HashMap<AbstractBasicRegion, Integer> indices = new HashMap<AbstractBasicRegion, Integer>();
         for (AbstractBasicRegion abr : abrs) {
-            nodes.add(new AbstractDualNode(abr));
+            indices.put(abr, node_list.size());
+            node_list.add(new AbstractDualNode(abr, node_list.size()));
         }
-        for (AbstractDualNode n : nodes) {
-            boolean found_node_again = false;
-            for (AbstractDualNode n2 : nodes) {
-                if (!found_node_again) {
-                    if (n2 == n) {
-                        found_node_again = true;
-                    }
-                } else {
-                    AbstractCurve straddlingCurve =
-                            n.abr.getStraddledContour(n2.abr);
-                    if (straddlingCurve != null) {
-                        add_edge(n, n2, straddlingCurve);
-                    }
+        nodes = new LinkedHashSet<AbstractDualNode>(node_list);
+        m_node_list = node_list;
+        ArrayList<long[]> found = new ArrayList<long[]>();
+        ArrayList<AbstractCurve> labels = new ArrayList<AbstractCurve>();
+        for (int i = 0; i < node_list.size(); i++) {
+            AbstractBasicRegion abr = node_list.get(i).abr;
+            Iterator<AbstractCurve> it = abr.getContourIterator();
+            while (it.hasNext()) {
+                AbstractCurve straddlingCurve = it.next();
+                Integer j = indices.get(abr.moveOutside(straddlingCurve));
+                if (j != null) {
+                    int from = Math.min(i, j.intValue());
+                    int to = Math.max(i, j.intValue());
+                    found.add(new long[]{((long) from << 32) | to, labels.size()});
+                    labels.add(straddlingCurve);
                 }
             }
         }
+        Collections.sort(found, new Comparator<long[]>() {
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+        });
+        for (long[] f : found) {
+            add_edge(node_list.get((int) (f[0] >>> 32)), node_list.get((int) f[0]),
+                    labels.get((int) f[1]));
+        }
+        for (AbstractDualNode n : node_list) {
+            if (n.degree() > 0) {
+                bucket(n.degree()).add(n);
+            }
+        }
+    }
+
+    private TreeSet<AbstractDualNode> bucket(int degree) {
+        while (m_by_degree.size() <= degree) {
+            m_by_degree.add(new TreeSet<AbstractDualNode>(BY_INDEX));
+        }
+        return m_by_degree.get(degree);
+    }
+
+    private void removeEdgeFrom(AbstractDualNode n, AbstractDualEdge e) {
+        bucket(n.degree()).remove(n);
+        n.removeEdge(e);
+        if (n.degree() > 0) {
+            bucket(n.degree()).add(n);
+        }
     }
 
     private void add_edge(AbstractDualNode n, AbstractDualNode n2,
             AbstractCurve straddlingCurve) {
         AbstractDualEdge e = new AbstractDualEdge(n, n2, straddlingCurve);
-        n.incidentEdges.add(e);
-        n2.incidentEdges.add(e);
+        n.addEdge(e);
+        n2.addEdge(e);
         edges.add(e);
     }
 
     public void remove(AbstractDualEdge e) {
-        e.from.removeEdge(e);
-        e.to.removeEdge(e);
+        removeEdgeFrom(e.from, e);
+        removeEdgeFrom(e.to, e);
         edges.remove(e);
     }
 
     public void remove(AbstractDualNode n) {
-        while (n.incidentEdges.size() != 0) {
-            remove(n.incidentEdges.get(0));
+        while (n.degree() != 0) {
+            remove(n.getIncidentEdges().iterator().next());
         }
         nodes.remove(n);
     }
@@ -100,28 +163,27 @@ public class AbstractDualGraph {
     public AbstractDualEdge getLowDegreeEdge() {
         // find a lowest-degree vertex, and from that,
         // choose the edge to its lowest-degree neighbour
-        logger.trace("graph is " + this.debug());
+        if (logger.isTraceEnabled()) {
+            logger.trace("graph is " + this.debug());
+        }
 
-        int lowestDegree = Integer.MAX_VALUE;
+        // the first node, in the original order, of the lowest degree
+        // above zero; isolated nodes are ignored when picking a low-degree edge
         AbstractDualNode lowestDegreeNode = null;
-        for (AbstractDualNode n : nodes) {
-            int thisDegree = n.degree();
-
-            if (thisDegree == 0) {
-                continue; // ignore isolated nodes when picking a low-degree edge
-            }
-            if (thisDegree < lowestDegree) {
-                lowestDegreeNode = n;
-                lowestDegree = thisDegree;
+        for (int d = 1; d < m_by_degree.size(); d++) {
+            TreeSet<AbstractDualNode> b = m_by_degree.get(d);
+            if (!b.isEmpty()) {
+                lowestDegreeNode = b.first();
+                break;
             }
         }
         if (lowestDegreeNode == null) {
             return null;
         }
 
-        lowestDegree = Integer.MAX_VALUE;
+        int lowestDegree = Integer.MAX_VALUE;
         AbstractDualEdge result = null;
-        for (AbstractDualEdge e : lowestDegreeNode.incidentEdges) {
+        for (AbstractDualEdge e : lowestDegreeNode.getIncidentEdges()) {
             AbstractDualNode otherNode;
             if (e.from == lowestDegreeNode) {
                 otherNode = e.to;
@@ -176,34 +238,43 @@ public class AbstractDualGraph {
         return result;
     }
 
+    /**
+     * Finds edges n->n2 and n2->m, and an edge from n with the same label as
+     * the second, by looking that label up at n.
+     */
     public ArrayList<AbstractDualNode> getFourTuple() {
 
-        for (AbstractDualNode n : nodes) {
-            for (AbstractDualEdge e : n.incidentEdges) {
+        for (; m_squares_from < m_node_list.size(); m_squares_from++) {
+            AbstractDualNode n = m_node_list.get(m_squares_from);
+            if (!nodes.contains(n)) {
+                continue;
+            }
+            for (AbstractDualEdge e : n.getIncidentEdges()) {
                 if (e.from != n) {
                     continue;
                 }
                 AbstractDualNode n2 = e.to;
-                for (AbstractDualEdge e2 : n2.incidentEdges) {
+                for (AbstractDualEdge e2 : n2.getIncidentEdges()) {
                     if (e2.from != n2) {
                         continue;
                     }
 
                     // we have edges e and e2 - are these part of a square?
-                    logger.debug("edges are " + e.from.abr.debug() + "->" + e.to.abr.debug() + "\n and "
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("edges are " + e.from.abr.debug() + "->" + e.to.abr.debug() + "\n and "
                                 + e2.from.abr.debug() + "->" + e2.to.abr.debug());
+                    }
 
                     // look for an edge from n with the same label as e2
-                    for (AbstractDualEdge e3 : n.incidentEdges) {
-                        if (e3.label == e2.label) {
-                            // found a square
-                            ArrayList<AbstractDualNode> result = new ArrayList<AbstractDualNode>();
-                            result.add(n);
-                            result.add(n2);
-                            result.add(e3.to);
-                            result.add(e2.to);
-                            return result;
-                        }
+                    AbstractDualEdge e3 = n.getEdge(e2.label);
+                    if (e3 != null) {
+                        // found a square
+                        ArrayList<AbstractDualNode> result = new ArrayList<AbstractDualNode>();
+                        result.add(n);
+                        result.add(n2);
+                        result.add(e3.to);
+                        result.add(e2.to);
+                        return result;
                     }
                 }
             }
@@ -31,9 +31,11 @@ package icircles.abstractDualGraph;
  * policies, either expressed or implied, of the iCircles Project.
  */
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 
 import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
 
 /**
  * Stores the vertex of the {@link AbstractDualGraph} and the edges incident on
@@ -42,18 +44,38 @@ import icircles.abstractDescription.AbstractBasicRegion;
 public class AbstractDualNode {
 
     public AbstractBasicRegion abr;
-    ArrayList<AbstractDualEdge> incidentEdges;
+    // position in the list the graph was made from
+    final int index;
+    // a zone has at most one neighbour across each contour; the edges are
+    // kept in the order they were added, and each is removed in O(1)
+    private LinkedHashMap<AbstractCurve, AbstractDualEdge> incidentEdges;
 
-    AbstractDualNode(AbstractBasicRegion abr) {
-        incidentEdges = new ArrayList<AbstractDualEdge>();
+    AbstractDualNode(AbstractBasicRegion abr, int index) {
+        incidentEdges = new LinkedHashMap<AbstractCurve, AbstractDualEdge>();
         this.abr = abr;
+        this.index = index;
     }
 
     int degree() {
         return incidentEdges.size();
     }
 
+    Collection<AbstractDualEdge> getIncidentEdges() {
+        return incidentEdges.values();
+    }
+
+    void addEdge(AbstractDualEdge e) {
+        incidentEdges.put(e.label, e);
+    }
+
+    /**
+     * @return the edge to the neighbour across the given contour, or null.
+     */
+    AbstractDualEdge getEdge(AbstractCurve label) {
+        return incidentEdges.get(label);
+    }
+
     void removeEdge(AbstractDualEdge e) {
-        incidentEdges.remove(e);
+        incidentEdges.remove(e.label);
     }
 }
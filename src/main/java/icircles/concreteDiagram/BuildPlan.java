@@ -0,0 +1,188 @@
+package icircles.concreteDiagram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.recomposition.RecompData;
+
+/**
+ * Makes the plan of {@link BuildStep}s that DiagramCreator follows, putting
+ * together contours which can be placed side by side.
+ */
+public final class BuildPlan {
+
+    private BuildPlan() {
+    }
+
+    /**
+     * Groups the contours to be added into build steps, in the order they
+     * are added.  Contours which will have the same radius (the same
+     * "score") go in one step when they are
+     *  (i) nested in the same zone, or
+     *  (ii) single-piercings of the same pair of zones,
+     * going by the labels of the zones.  The step is placed where the first
+     * of them would have been.
+     *
+     * Zones are compared through a hash key of their label signatures, so
+     * grouping takes linear time.  Label equivalence only looks one way: a
+     * zone inside two contours with the same label, such as {a,a}, is label
+     * equivalent to {a,b}, though {a,b} is not label equivalent to {a,a}.
+     * Additions which split a zone with a repeated label have no key, so
+     * when one leads a step it is compared directly with every addition
+     * which comes after it, with or without a key, just as the walk along
+     * the list always compared a lead with those after it.
+     *
+     * @param additions the contours to add, in the order they are added.
+     * @param scores the score of each added contour.
+     * @return the steps, in the order they are to be taken.
+     */
+    public static ArrayList<BuildStep> combine(List<RecompData> additions,
+            Map<AbstractCurve, Double> scores) {
+        int n = additions.size();
+        Object[] keys = new Object[n];
+        HashMap<Object, ArrayList<Integer>> groups = new HashMap<Object, ArrayList<Integer>>();
+        for (int i = 0; i < n; i++) {
+            keys[i] = symmetryKey(additions.get(i), scores);
+            if (keys[i] != null) {
+                ArrayList<Integer> group = groups.get(keys[i]);
+                if (group == null) {
+                    group = new ArrayList<Integer>();
+                    groups.put(keys[i], group);
+                }
+                group.add(i);
+            }
+        }
+
+        // the additions not yet in a step, linked in order; n ends the list
+        int[] next = new int[n + 1];
+        int[] prev = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            next[i] = i + 1;
+            prev[i] = i - 1;
+        }
+
+        ArrayList<BuildStep> plan = new ArrayList<BuildStep>();
+        for (int i = 0; i < n; i = next[i]) {
+            RecompData rd = additions.get(i);
+            BuildStep bs = new BuildStep(rd);
+            plan.add(bs);
+            // a nested addition just after one taken into its step is passed
+            // over, as the walk along the list of additions always did
+            boolean nested = rd.split_zones.size() == 1;
+            int passed_over = -1;
+            if (keys[i] != null) {
+                // i is the first unplaced addition of its group - take the
+                // rest, and keep any passed over to lead a later step
+                ArrayList<Integer> passed = new ArrayList<Integer>();
+                for (int j : groups.get(keys[i])) {
+                    if (j == i || prev[j] == -2) {
+                        continue; // this step, or placed already
+                    }
+                    if (j == passed_over) {
+                        passed.add(j);
+                        continue;
+                    }
+                    bs.recomp_data.add(additions.get(j));
+                    if (nested) {
+                        passed_over = next[j];
+                    }
+                    unlink(j, next, prev);
+                }
+                if (passed.isEmpty()) {
+                    groups.remove(keys[i]);
+                } else {
+                    groups.put(keys[i], passed);
+                }
+            } else if (nested || rd.split_zones.size() == 2) {
+                for (int j = next[i]; j < n; j = next[j]) {
+                    if (j == passed_over || !isSymmetric(rd, additions.get(j), scores)) {
+                        continue;
+                    }
+                    bs.recomp_data.add(additions.get(j));
+                    if (nested) {
+                        passed_over = next[j];
+                    }
+                    unlink(j, next, prev);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * A key shared by exactly those additions which {@link #isSymmetric} to
+     * one another, or null for a double piercing or an addition splitting a
+     * zone with a repeated label.
+     */
+    private static Object symmetryKey(RecompData rd, Map<AbstractCurve, Double> scores) {
+        Double score = scores.get(rd.added_curve);
+        if (rd.split_zones.size() == 1) {
+            List<String> sig = rd.split_zones.get(0).getLabelSignature();
+            if (rd.split_zones.get(0).hasRepeatedLabel()) {
+                return null;
+            }
+            return Arrays.asList(sig, score);
+        } else if (rd.split_zones.size() == 2) {
+            AbstractBasicRegion abr1 = rd.split_zones.get(0);
+            AbstractBasicRegion abr2 = rd.split_zones.get(1);
+            if (abr1.getNumContours() > abr2.getNumContours()) {
+                // a single piercing splits two zones, one inside one more
+                // contour than the other - list the outer zone first
+                AbstractBasicRegion swap = abr1;
+                abr1 = abr2;
+                abr2 = swap;
+            }
+            List<String> sig1 = abr1.getLabelSignature();
+            List<String> sig2 = abr2.getLabelSignature();
+            if (abr1.hasRepeatedLabel() || abr2.hasRepeatedLabel()) {
+                return null;
+            }
+            return Arrays.asList(sig1, sig2, score);
+        }
+        return null;
+    }
+
+    // takes j out of the list of unplaced additions, marking it placed
+    private static void unlink(int j, int[] next, int[] prev) {
+        next[prev[j]] = next[j];
+        prev[next[j]] = prev[j];
+        prev[j] = -2;
+    }
+
+    /**
+     * Are the contours of rd and rd2 to be added together, being nested in
+     * label equivalent zones, or single-piercings of label equivalent pairs
+     * of zones, with the same score?
+     */
+    private static boolean isSymmetric(RecompData rd, RecompData rd2,
+            Map<AbstractCurve, Double> scores) {
+        if (rd.split_zones.size() != rd2.split_zones.size()) {
+            return false;
+        }
+        if (rd.split_zones.size() == 1) {
+            if (!rd.split_zones.get(0).isLabelEquivalent(rd2.split_zones.get(0))) {
+                return false;
+            }
+        } else if (rd.split_zones.size() == 2) {
+            AbstractBasicRegion abr1 = rd.split_zones.get(0);
+            AbstractBasicRegion abr2 = rd.split_zones.get(1);
+            AbstractBasicRegion abr3 = rd2.split_zones.get(0);
+            AbstractBasicRegion abr4 = rd2.split_zones.get(1);
+            if (!((abr1.isLabelEquivalent(abr3) && abr2.isLabelEquivalent(abr4))
+                    || (abr1.isLabelEquivalent(abr4) && abr2.isLabelEquivalent(abr3)))) {
+                return false;
+            }
+        } else {
+            return false;
+        }
+        double abrScore = scores.get(rd.added_curve);
+        double abrScore2 = scores.get(rd2.added_curve);
+        assert (abrScore > 0 && abrScore2 > 0); // "zones must have score");
+        return abrScore == abrScore2;
+    }
+}
@@ -4,10 +4,13 @@ import java.util.ArrayList;
 
 import icircles.recomposition.RecompData;
 
+/**
+ * The contours placed together in one step of a layout.  DiagramCreator
+ * makes a plan of these, in the order the steps are taken.
+ */
 public class BuildStep {
 
     public ArrayList<RecompData> recomp_data;
-    public BuildStep next = null;
 
     BuildStep(RecompData rd) {
         recomp_data = new ArrayList<RecompData>();
@@ -0,0 +1,101 @@
+package icircles.concreteDiagram;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores the candidate placements of a circle, one after another or on a
+ * fork-join pool.
+ *
+ * Each score goes in the slot of its candidate, and the caller reduces the
+ * scores in candidate order, so the result is the same however the work was
+ * split and whichever part finished first.  Scoring must only read shared
+ * state.
+ */
+final class CandidateEvaluator {
+
+    /** Scores one candidate after another. */
+    static final CandidateEvaluator SERIAL = new CandidateEvaluator(null, 0);
+
+    interface Scorer {
+
+        /**
+         * @param i the index of a candidate.
+         * @return its score.
+         */
+        double score(int i);
+    }
+
+    private final ForkJoinPool m_pool;
+    private final long m_min_work;
+
+    /**
+     * @param pool the pool to score on, or null to score one candidate
+     *        after another.
+     * @param min_work the least work, in circles tested, worth splitting
+     *        across the pool.
+     */
+    CandidateEvaluator(ForkJoinPool pool, long min_work) {
+        m_pool = pool;
+        m_min_work = min_work;
+    }
+
+    /**
+     * @return true if this scores one candidate after another, so that a
+     *         caller may as well score them as it goes.
+     */
+    boolean isSerial() {
+        return m_pool == null;
+    }
+
+    /**
+     * @param n the number of candidates.
+     * @param work_per_candidate roughly how many circles each candidate is
+     *        tested against.
+     * @param scorer scores each candidate.
+     * @return the scores, by candidate.
+     */
+    double[] evaluate(int n, int work_per_candidate, Scorer scorer) {
+        double[] scores = new double[n];
+        if (m_pool == null || n < 2 || (long) n * work_per_candidate < m_min_work) {
+            for (int i = 0; i < n; i++) {
+                scores[i] = scorer.score(i);
+            }
+        } else {
+            int grain = Math.max(1, n / (4 * m_pool.getParallelism()));
+            m_pool.invoke(new Range(scorer, scores, 0, n, grain));
+        }
+        return scores;
+    }
+
+    private static final class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Scorer m_scorer;
+        private final double[] m_scores;
+        private final int m_from;
+        private final int m_to;
+        private final int m_grain;
+
+        Range(Scorer scorer, double[] scores, int from, int to, int grain) {
+            m_scorer = scorer;
+            m_scores = scores;
+            m_from = from;
+            m_to = to;
+            m_grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (m_to - m_from <= m_grain) {
+                for (int i = m_from; i < m_to; i++) {
+                    m_scores[i] = m_scorer.score(i);
+                }
+                return;
+            }
+            int mid = (m_from + m_to) >>> 1;
+            invokeAll(new Range(m_scorer, m_scores, m_from, mid, m_grain),
+                    new Range(m_scorer, m_scores, mid, m_to, m_grain));
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package icircles.concreteDiagram;
+
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The arrangement of a set of circles: where they cross, and the arcs into
+ * which those crossings cut each circle.
+ *
+ * The arrangement is computed once.  The boundary of any zone (a set of
+ * containing and excluding circles) is then a selection of those arcs, so
+ * zone areas and outlines can be worked out exactly instead of through
+ * {@link java.awt.geom.Area} operations on curve approximations.
+ *
+ * Circles are taken at their true radius, without the nudge which
+ * {@link ConcreteZone#getShape} uses to make neighbouring zones overlap.
+ * A point on a circle counts as inside it.
+ */
+public class CircleArrangement {
+
+    /**
+     * One arc of the arrangement, running from one crossing point to the
+     * next in the direction of increasing angle.  A circle which crosses
+     * no other circle has a single arc going all the way round.
+     */
+    public static final class Arc {
+        final CircleContour circle;
+        final double startAngle;   // radians
+        final double extent;       // radians, in (0, 2pi]
+        final int startVertex;     // -1 for a full circle
+        final int endVertex;
+
+        Arc(CircleContour circle, double startAngle, double extent,
+                int startVertex, int endVertex) {
+            this.circle = circle;
+            this.startAngle = startAngle;
+            this.extent = extent;
+            this.startVertex = startVertex;
+            this.endVertex = endVertex;
+        }
+
+        public CircleContour getCircle() {
+            return circle;
+        }
+
+        public double getStartAngle() {
+            return startAngle;
+        }
+
+        public double getExtent() {
+            return extent;
+        }
+
+        double pointX(double angle) {
+            return circle.cx + circle.radius * Math.cos(angle);
+        }
+
+        double pointY(double angle) {
+            return circle.cy + circle.radius * Math.sin(angle);
+        }
+
+        /**
+         * The arc's contribution to the integral of (x dy - y dx)/2, which
+         * summed round a closed boundary gives the enclosed area.
+         */
+        double greenTerm() {
+            double r = circle.radius;
+            double a0 = startAngle;
+            double a1 = startAngle + extent;
+            return 0.5 * (r * r * extent
+                    + circle.cx * r * (Math.sin(a1) - Math.sin(a0))
+                    - circle.cy * r * (Math.cos(a1) - Math.cos(a0)));
+        }
+    }
+
+    /**
+     * An arc of a zone boundary, traversed so that the zone lies on its
+     * left (the direction of increasing angle for containing circles, and
+     * the reverse for excluding circles).
+     */
+    public static final class BoundaryArc {
+        final Arc arc;
+        final boolean reversed;
+
+        BoundaryArc(Arc arc, boolean reversed) {
+            this.arc = arc;
+            this.reversed = reversed;
+        }
+
+        public Arc getArc() {
+            return arc;
+        }
+
+        public boolean isReversed() {
+            return reversed;
+        }
+
+        int fromVertex() {
+            return reversed ? arc.endVertex : arc.startVertex;
+        }
+
+        int toVertex() {
+            return reversed ? arc.startVertex : arc.endVertex;
+        }
+
+        double fromAngle() {
+            return reversed ? arc.startAngle + arc.extent : arc.startAngle;
+        }
+
+        double toAngle() {
+            return reversed ? arc.startAngle : arc.startAngle + arc.extent;
+        }
+
+        public double getFromX() {
+            return arc.pointX(fromAngle());
+        }
+
+        public double getFromY() {
+            return arc.pointY(fromAngle());
+        }
+
+        public double getToX() {
+            return arc.pointX(toAngle());
+        }
+
+        public double getToY() {
+            return arc.pointY(toAngle());
+        }
+    }
+
+    /** Crossings closer than this are taken to be the same point. */
+    static final double COINCIDENT = 1e-6;
+
+    private final ArrayList<CircleContour> circles;
+    private final HashMap<CircleContour, List<Arc>> arcsByCircle;
+    private int numVertices;
+
+    public CircleArrangement(List<CircleContour> circles) {
+        this.circles = new ArrayList<CircleContour>(circles);
+        arcsByCircle = new HashMap<CircleContour, List<Arc>>();
+        build();
+    }
+
+    public List<CircleContour> getCircles() {
+        return circles;
+    }
+
+    public int getNumVertices() {
+        return numVertices;
+    }
+
+    /**
+     * @return the arcs of the given circle, in order of increasing angle, or
+     *         null if the circle is not part of this arrangement.
+     */
+    public List<Arc> getArcs(CircleContour c) {
+        return arcsByCircle.get(c);
+    }
+
+    private void build() {
+        int n = circles.size();
+        // for each circle, the angles at which it meets the others, and the
+        // vertex id of each meeting point
+        double[][] angles = new double[n][];
+        int[][] vertices = new int[n][];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            angles[i] = new double[4];
+            vertices[i] = new int[4];
+        }
+
+        for (int i = 0; i < n; i++) {
+            CircleContour ci = circles.get(i);
+            for (int j = i + 1; j < n; j++) {
+                CircleContour cj = circles.get(j);
+                double dx = cj.cx - ci.cx;
+                double dy = cj.cy - ci.cy;
+                double d = Math.sqrt(dx * dx + dy * dy);
+                if (d == 0 || d >= ci.radius + cj.radius
+                        || d <= Math.abs(ci.radius - cj.radius)) {
+                    continue; // apart, nested, or touching at a single point
+                }
+                // distance from ci's centre along the centre line to the chord
+                double a = (d * d + ci.radius * ci.radius - cj.radius * cj.radius) / (2 * d);
+                double h = Math.sqrt(Math.max(0, ci.radius * ci.radius - a * a));
+                double mx = ci.cx + dx * a / d;
+                double my = ci.cy + dy * a / d;
+                for (int s = -1; s <= 1; s += 2) {
+                    double px = mx - s * dy * h / d;
+                    double py = my + s * dx * h / d;
+                    int v = numVertices++;
+                    add(angles, vertices, counts, i,
+                            Math.atan2(py - ci.cy, px - ci.cx), v);
+                    add(angles, vertices, counts, j,
+                            Math.atan2(py - cj.cy, px - cj.cx), v);
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            CircleContour c = circles.get(i);
+            ArrayList<Arc> arcs = new ArrayList<Arc>();
+            int k = counts[i];
+            if (k == 0) {
+                arcs.add(new Arc(c, 0, 2 * Math.PI, -1, -1));
+            } else {
+                Integer[] order = new Integer[k];
+                for (int m = 0; m < k; m++) {
+                    order[m] = m;
+                }
+                final double[] a = angles[i];
+                Arrays.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer x, Integer y) {
+                        return Double.compare(a[x], a[y]);
+                    }
+                });
+                for (int m = 0; m < k; m++) {
+                    int from = order[m];
+                    int to = order[(m + 1) % k];
+                    double extent = a[to] - a[from];
+                    if (m + 1 == k) {
+                        extent += 2 * Math.PI;
+                    }
+                    if (extent <= 0) {
+                        continue; // two crossings at the same angle
+                    }
+                    arcs.add(new Arc(c, a[from], extent,
+                            vertices[i][from], vertices[i][to]));
+                }
+            }
+            arcsByCircle.put(c, arcs);
+        }
+    }
+
+    private static void add(double[][] angles, int[][] vertices, int[] counts,
+            int i, double angle, int vertex) {
+        if (counts[i] == angles[i].length) {
+            angles[i] = Arrays.copyOf(angles[i], counts[i] * 2);
+            vertices[i] = Arrays.copyOf(vertices[i], counts[i] * 2);
+        }
+        angles[i][counts[i]] = angle;
+        vertices[i][counts[i]] = vertex;
+        counts[i]++;
+    }
+
+    /**
+     * Is the point inside every containing circle and outside every excluding
+     * circle?  Points on a circle count as inside it, so each point of the
+     * plane is in exactly one zone.
+     */
+    public static boolean zoneContains(List<CircleContour> containing,
+            List<CircleContour> excluding, double x, double y) {
+        return zoneContains(containing, excluding, null, x, y);
+    }
+
+    private static boolean zoneContains(List<CircleContour> containing,
+            List<CircleContour> excluding, CircleContour skip,
+            double x, double y) {
+        for (CircleContour c : containing) {
+            if (c != skip && !inside(c, x, y)) {
+                return false;
+            }
+        }
+        for (CircleContour c : excluding) {
+            if (c != skip && inside(c, x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean inside(CircleContour c, double x, double y) {
+        double dx = x - c.cx;
+        double dy = y - c.cy;
+        return dx * dx + dy * dy <= c.radius * c.radius;
+    }
+
+    /**
+     * Collects the arcs which bound the zone inside all the containing circles
+     * and outside all the excluding circles.  An arc of one of those circles
+     * is on the boundary when its interior is in the zone as far as all the
+     * other circles are concerned.
+     *
+     * Every circle of the zone must be part of this arrangement.
+     */
+    public ArrayList<BoundaryArc> getBoundary(List<CircleContour> containing,
+            List<CircleContour> excluding) {
+        ArrayList<BoundaryArc> result = new ArrayList<BoundaryArc>();
+        collectBoundary(containing, excluding, containing, false, result);
+        collectBoundary(containing, excluding, excluding, true, result);
+        return result;
+    }
+
+    private void collectBoundary(List<CircleContour> containing,
+            List<CircleContour> excluding, List<CircleContour> side,
+            boolean reversed, ArrayList<BoundaryArc> result) {
+        for (CircleContour c : side) {
+            List<Arc> arcs = arcsByCircle.get(c);
+            if (arcs == null) {
+                throw new IllegalArgumentException(
+                        "circle " + c.ac.getLabel() + " is not in the arrangement");
+            }
+            for (Arc arc : arcs) {
+                // sample three points along the arc and go with the majority,
+                // in case one is where another circle just touches this one
+                int votes = 0;
+                for (int q = 1; q <= 3; q++) {
+                    double angle = arc.startAngle + arc.extent * q / 4;
+                    if (zoneContains(containing, excluding, c,
+                            arc.pointX(angle), arc.pointY(angle))) {
+                        votes++;
+                    }
+                }
+                if (votes >= 2) {
+                    result.add(new BoundaryArc(arc, reversed));
+                }
+            }
+        }
+    }
+
+    /**
+     * The exact area enclosed by a zone boundary, by Green's theorem.
+     * Only meaningful for bounded zones (those with a containing circle).
+     */
+    public static double area(List<BoundaryArc> boundary) {
+        double result = 0;
+        for (BoundaryArc b : boundary) {
+            double term = b.arc.greenTerm();
+            result += b.reversed ? -term : term;
+        }
+        return result;
+    }
+
+    /**
+     * Chains boundary arcs into closed loops.  Each loop keeps the zone on its
+     * left, so outer edges and holes wind in opposite directions.
+     */
+    public static List<List<BoundaryArc>> toLoops(List<BoundaryArc> boundary) {
+        ArrayList<List<BoundaryArc>> loops = new ArrayList<List<BoundaryArc>>();
+        HashMap<Integer, ArrayList<BoundaryArc>> byStart =
+                new HashMap<Integer, ArrayList<BoundaryArc>>();
+        for (BoundaryArc b : boundary) {
+            if (b.arc.startVertex < 0) {
+                loops.add(Arrays.asList(b));
+                continue;
+            }
+            ArrayList<BoundaryArc> list = byStart.get(b.fromVertex());
+            if (list == null) {
+                list = new ArrayList<BoundaryArc>(2);
+                byStart.put(b.fromVertex(), list);
+            }
+            list.add(b);
+        }
+        for (BoundaryArc first : boundary) {
+            if (first.arc.startVertex < 0 || !byStart.get(first.fromVertex()).remove(first)) {
+                continue; // a full circle, or already used in a loop
+            }
+            ArrayList<BoundaryArc> loop = new ArrayList<BoundaryArc>();
+            loop.add(first);
+            BoundaryArc current = first;
+            while (!closes(current, first)) {
+                ArrayList<BoundaryArc> next = byStart.get(current.toVertex());
+                if (next != null && !next.isEmpty()) {
+                    current = next.remove(next.size() - 1);
+                } else {
+                    // three circles through one point give crossings with
+                    // different ids at the same place
+                    current = removeNearestStart(byStart, current);
+                    if (current == null) {
+                        break;
+                    }
+                }
+                loop.add(current);
+            }
+            loops.add(loop);
+        }
+        return loops;
+    }
+
+    private static boolean closes(BoundaryArc last, BoundaryArc first) {
+        if (last.toVertex() == first.fromVertex()) {
+            return true;
+        }
+        double dx = last.arc.pointX(last.toAngle()) - first.arc.pointX(first.fromAngle());
+        double dy = last.arc.pointY(last.toAngle()) - first.arc.pointY(first.fromAngle());
+        return dx * dx + dy * dy < COINCIDENT * COINCIDENT;
+    }
+
+    private static BoundaryArc removeNearestStart(
+            HashMap<Integer, ArrayList<BoundaryArc>> byStart, BoundaryArc from) {
+        double x = from.arc.pointX(from.toAngle());
+        double y = from.arc.pointY(from.toAngle());
+        ArrayList<BoundaryArc> bestList = null;
+        BoundaryArc best = null;
+        double bestDist = COINCIDENT * COINCIDENT;
+        for (ArrayList<BoundaryArc> list : byStart.values()) {
+            for (BoundaryArc b : list) {
+                double dx = b.arc.pointX(b.fromAngle()) - x;
+                double dy = b.arc.pointY(b.fromAngle()) - y;
+                double dist = dx * dx + dy * dy;
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    best = b;
+                    bestList = list;
+                }
+            }
+        }
+        if (best != null) {
+            bestList.remove(best);
+        }
+        return best;
+    }
+
+    /**
+     * Builds a path of the boundary loops.  Curve segments come from
+     * {@link Arc2D}; no area operations are involved.
+     */
+    public static Path2D.Double toPath(List<BoundaryArc> boundary) {
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO);
+        for (List<BoundaryArc> loop : toLoops(boundary)) {
+            boolean first = true;
+            for (BoundaryArc b : loop) {
+                CircleContour c = b.arc.circle;
+                // Arc2D angles are in degrees, measured the other way round
+                double start = -Math.toDegrees(b.fromAngle());
+                double extent = Math.toDegrees(b.reversed ? b.arc.extent : -b.arc.extent);
+                Arc2D.Double a = new Arc2D.Double(c.cx - c.radius, c.cy - c.radius,
+                        2 * c.radius, 2 * c.radius, start, extent, Arc2D.OPEN);
+                path.append(a, !first);
+                first = false;
+            }
+            path.closePath();
+        }
+        return path;
+    }
+}
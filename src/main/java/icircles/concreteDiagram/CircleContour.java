@@ -48,7 +48,6 @@ public class CircleContour {
 
     static Logger logger = Logger.getLogger(CircleContour.class.getName());
 
-    Ellipse2D.Double circle;
     double cx;
     double cy;
     double radius;
@@ -56,13 +55,39 @@ public class CircleContour {
     
     Color col;
     Stroke stroke;
-    
-//    Area bigInterior;
-//    Area smallInterior; 
-    // TODO this caching of the smallInterior somehow became out of date.
-    // I have just suppressed it, which slow things down. but we need to understand why and reinstate the cache.
+    boolean frozen; // part of a diagram shared through a DiagramCache
+
+    // The ellipse and interiors of this circle, with the centre, radius and
+    // nudge they were made for.  DiagramCreator moves and shrinks circles by
+    // setting cx, cy and radius directly, so each use checks them against
+    // the current values and starts afresh if any has changed.
+    private volatile Shapes shapes;
+
+    private static final class Shapes {
+
+        final double cx;
+        final double cy;
+        final double radius;
+        final double nudge;
+        final Ellipse2D.Double circle;
+        // made on first use
+        volatile Area bigInterior;
+        volatile Area smallInterior;
+
+        Shapes(double cx, double cy, double radius, double nudge) {
+            this.cx = cx;
+            this.cy = cy;
+            this.radius = radius;
+            this.nudge = nudge;
+            circle = makeEllipse(cx, cy, radius);
+        }
+
+        boolean matches(CircleContour c) {
+            return cx == c.cx && cy == c.cy && radius == c.radius && nudge == c.nudge;
+        }
+    }
 
-    public AbstractCurve ac;
+    public final AbstractCurve ac;
 
     public CircleContour(double cx,
             double cy, double radius, 
@@ -71,55 +96,88 @@ public class CircleContour {
         this.cy = cy;
         this.radius = radius;
         this.ac = ac;
-        circle = makeEllipse(cx, cy, radius);
     }
 
     public CircleContour(CircleContour c) {
+		this(c, c.ac);
+	}
+
+    /**
+     * A copy of c, standing for a different abstract curve.
+     */
+    public CircleContour(CircleContour c, AbstractCurve ac) {
 		this.cx = c.cx;
 		this.cy = c.cy;
 		this.radius = c.radius;
-		this.ac = c.ac;
-		circle = makeEllipse(cx, cy, radius);
+		this.ac = ac;
 		this.col = c.col;
 	}
 
 	public void shift(double x, double y) {
+        checkNotFrozen();
         cx += x;
         cy += y;
-        circle = makeEllipse(cx, cy, radius);
-//        bigInterior = null;
-//        smallInterior = null;
     }
 
     private void scaleAboutZero(double scale) {
         cx *= scale;
         cy *= scale;
         radius *= scale;
-        circle = makeEllipse(cx, cy, radius);
-//        bigInterior = null;
-//        smallInterior = null;
     }
 
-    private Ellipse2D.Double makeEllipse(double x, double y, double r) {
+    private static Ellipse2D.Double makeEllipse(double x, double y, double r) {
         return new Ellipse2D.Double(x - r, y - r, 2 * r, 2 * r);
     }
 
+    private Shapes shapes() {
+        Shapes result = shapes;
+        if (result == null || !result.matches(this)) {
+            result = new Shapes(cx, cy, radius, nudge);
+            shapes = result;
+        }
+        return result;
+    }
+
+    /**
+     * The circle, or a copy of it once frozen.
+     */
     public Ellipse2D.Double getCircle() {
-        return circle;
+        Ellipse2D.Double result = shapes().circle;
+        return frozen ? (Ellipse2D.Double) result.clone() : result;
     }
 
+    /**
+     * The interior of this circle grown by its nudge.  The Area is kept
+     * until the circle moves or changes size, and must not be modified;
+     * once frozen, a copy is returned.
+     */
     public Area getBigInterior() {
-//        if (bigInterior == null) {
-          Area  bigInterior = new Area(makeEllipse(cx, cy, radius + nudge));
-//        }
-        return bigInterior;
+        Shapes s = shapes();
+        Area result = s.bigInterior;
+        if (result == null) {
+            result = new Area(makeEllipse(s.cx, s.cy, s.radius + s.nudge));
+            s.bigInterior = result;
+        }
+        return frozen ? new Area(result) : result;
     }
 
+    /**
+     * The interior of this circle shrunk by its nudge.  The Area is kept
+     * until the circle moves or changes size, and must not be modified;
+     * once frozen, a copy is returned.
+     */
     public Area getSmallInterior() {
-        //if (smallInterior == null) {
-        Area    smallInterior = new Area(makeEllipse(cx, cy, radius - nudge));
-        //}
-        return smallInterior;
+        Shapes s = shapes();
+        Area result = s.smallInterior;
+        if (result == null) {
+            result = new Area(makeEllipse(s.cx, s.cy, s.radius - s.nudge));
+            s.smallInterior = result;
+        }
+        return frozen ? new Area(result) : result;
+    }
+
+    public double getNudge() {
+        return nudge;
     }
 
     public String debug() {
@@ -232,6 +290,7 @@ public class CircleContour {
 	}
 
 	public void setColor(Color color) {
+		checkNotFrozen();
 		col = color;
 	}
 
@@ -248,9 +307,16 @@ public class CircleContour {
 	}
 
 	public void setStroke(Stroke s) {
+		checkNotFrozen();
 		stroke = s;
 	}
 	public Stroke stroke() {
 		return stroke;
 	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("contour belongs to a frozen diagram");
+		}
+	}
 }
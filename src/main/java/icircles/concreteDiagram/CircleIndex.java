@@ -0,0 +1,141 @@
+package icircles.concreteDiagram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Finds the circles whose bounding boxes meet a given box, without looking
+ * at every circle.
+ *
+ * Circles are held in a hierarchy of uniform grids, one per level, the
+ * cells of each level twice the width of those of the level below.  A circle
+ * goes in the lowest level whose cells are at least as wide as the circle,
+ * in the cell holding its centre, so it lies within half a cell of that
+ * cell.  A query looks at the cells of each level within half a cell of the
+ * box, or at the whole level if that would mean more cells than circles.
+ *
+ * Boxes are those of the circles grown by their nudge, so that they cover
+ * both {@link CircleContour#getBigInterior} and
+ * {@link CircleContour#getSmallInterior}.  The circles must not move while
+ * they are in the index.
+ */
+class CircleIndex {
+
+    private final double m_base;
+    private final ArrayList<HashMap<Long, ArrayList<CircleContour>>> m_levels =
+            new ArrayList<HashMap<Long, ArrayList<CircleContour>>>();
+    private final ArrayList<ArrayList<CircleContour>> m_level_circles =
+            new ArrayList<ArrayList<CircleContour>>();
+    // the order the circles were added, in which queries return them
+    private final IdentityHashMap<CircleContour, Integer> m_order =
+            new IdentityHashMap<CircleContour, Integer>();
+    private final Comparator<CircleContour> m_by_order = new Comparator<CircleContour>() {
+        public int compare(CircleContour a, CircleContour b) {
+            return m_order.get(a).compareTo(m_order.get(b));
+        }
+    };
+
+    /**
+     * @param base the width of the cells at the lowest level, about the
+     *        diameter of the smallest circles expected.
+     */
+    CircleIndex(double base) {
+        m_base = base;
+    }
+
+    CircleIndex(double base, Iterable<CircleContour> circles) {
+        this(base);
+        for (CircleContour c : circles) {
+            add(c);
+        }
+    }
+
+    void add(CircleContour c) {
+        if (m_order.containsKey(c)) {
+            return;
+        }
+        m_order.put(c, m_order.size());
+        double diameter = 2 * reach(c);
+        int level = 0;
+        double size = m_base;
+        while (size < diameter) {
+            size *= 2;
+            level++;
+        }
+        while (m_levels.size() <= level) {
+            m_levels.add(new HashMap<Long, ArrayList<CircleContour>>());
+            m_level_circles.add(new ArrayList<CircleContour>());
+        }
+        Long key = key(cell(c.cx, size), cell(c.cy, size));
+        ArrayList<CircleContour> in_cell = m_levels.get(level).get(key);
+        if (in_cell == null) {
+            in_cell = new ArrayList<CircleContour>(2);
+            m_levels.get(level).put(key, in_cell);
+        }
+        in_cell.add(c);
+        m_level_circles.get(level).add(c);
+    }
+
+    /**
+     * The circles whose boxes meet the given box, in the order they were
+     * added to the index.
+     */
+    ArrayList<CircleContour> overlapping(double minX, double minY, double maxX, double maxY) {
+        ArrayList<CircleContour> result = new ArrayList<CircleContour>();
+        double size = m_base;
+        for (int level = 0; level < m_levels.size(); level++, size *= 2) {
+            ArrayList<CircleContour> all = m_level_circles.get(level);
+            if (all.isEmpty()) {
+                continue;
+            }
+            long x0 = cell(minX - size / 2, size);
+            long x1 = cell(maxX + size / 2, size);
+            long y0 = cell(minY - size / 2, size);
+            long y1 = cell(maxY + size / 2, size);
+            if ((double) (x1 - x0 + 1) * (y1 - y0 + 1) > all.size()) {
+                for (CircleContour c : all) {
+                    addIfOverlapping(c, minX, minY, maxX, maxY, result);
+                }
+                continue;
+            }
+            HashMap<Long, ArrayList<CircleContour>> cells = m_levels.get(level);
+            for (long x = x0; x <= x1; x++) {
+                for (long y = y0; y <= y1; y++) {
+                    ArrayList<CircleContour> in_cell = cells.get(key(x, y));
+                    if (in_cell != null) {
+                        for (CircleContour c : in_cell) {
+                            addIfOverlapping(c, minX, minY, maxX, maxY, result);
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(result, m_by_order);
+        return result;
+    }
+
+    private static void addIfOverlapping(CircleContour c,
+            double minX, double minY, double maxX, double maxY,
+            ArrayList<CircleContour> result) {
+        double r = reach(c);
+        if (c.cx + r >= minX && c.cx - r <= maxX
+                && c.cy + r >= minY && c.cy - r <= maxY) {
+            result.add(c);
+        }
+    }
+
+    private static double reach(CircleContour c) {
+        return Math.abs(c.radius) + Math.abs(c.nudge);
+    }
+
+    private static long cell(double v, double size) {
+        return (long) Math.floor(v / size);
+    }
+
+    private static Long key(long x, long y) {
+        return Long.valueOf((x << 32) ^ (y & 0xffffffffL));
+    }
+}
@@ -30,14 +30,20 @@ package icircles.concreteDiagram;
  * policies, either expressed or implied, of the iCircles Project.
  */
 
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
 import icircles.abstractDescription.AbstractDescription;
+import icircles.abstractDescription.AbstractSpider;
+import icircles.abstractDescription.CanonicalForm;
 import icircles.util.CannotDrawException;
 
 import java.awt.Font;
 import java.awt.Point;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.Level;
@@ -52,6 +58,10 @@ public class ConcreteDiagram {
     ArrayList<ConcreteZone> unshadedZones;
     ArrayList<ConcreteSpider> spiders;
     private Font font;
+    private CircleArrangement arrangement;
+    private volatile boolean frozen;
+    private boolean degraded;
+    private static volatile DiagramCache cache;
 
     public ConcreteDiagram(Rectangle2D.Double box,
             ArrayList<CircleContour> circles,
@@ -65,10 +75,170 @@ public class ConcreteDiagram {
         this.spiders = spiders;
     }
 
+    /**
+     * Makes this diagram read-only, so that it can be shared between threads
+     * and callers.  Its lists refuse changes, and its contours and zones
+     * refuse new colours, strokes and positions.
+     */
+    synchronized void freeze() {
+        if (frozen) {
+            return;
+        }
+        for (CircleContour c : circles) {
+            c.frozen = true;
+        }
+        circles = new FrozenList<CircleContour>(circles);
+        for (ConcreteZone z : shadedZones) {
+            z.freeze();
+        }
+        shadedZones = new FrozenList<ConcreteZone>(shadedZones);
+        for (ConcreteZone z : unshadedZones) {
+            z.freeze();
+        }
+        unshadedZones = new FrozenList<ConcreteZone>(unshadedZones);
+        if (spiders != null) {
+            for (ConcreteSpider s : spiders) {
+                s.freeze();
+            }
+            spiders = new FrozenList<ConcreteSpider>(spiders);
+        }
+        frozen = true;
+    }
+
+    /**
+     * @return true if this diagram is read-only, as are diagrams returned
+     *         from a {@link DiagramCache}.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * @return true if the layout of this diagram was cut short, or left
+     *         spider feet it could not move, in anytime mode (see
+     *         {@link DiagramCreator#setAnytime}): some circles or spider feet
+     *         may be smaller or closer together than they would otherwise be,
+     *         and some feet may lie on the legs of other spiders.  Outside
+     *         anytime mode no foot is left on another spider's leg.
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
+
+    /**
+     * Turns a diagram of a canonical description into a diagram of the
+     * description the canonical form came from, by renaming contours and
+     * zones.  Circles are recoloured for their new labels.  No layout work is
+     * done, and this diagram is left as it is.
+     *
+     * @param form the canonical form whose {@link CanonicalForm#getDescription
+     *        description} this diagram draws.
+     * @return a new diagram of {@link CanonicalForm#getOriginal}.
+     */
+    public ConcreteDiagram relabel(CanonicalForm form) {
+        AbstractDescription original = form.getOriginal();
+        HashMap<String, AbstractCurve> curves = new HashMap<String, AbstractCurve>();
+        Iterator<AbstractCurve> cIt = original.getContourIterator();
+        while (cIt.hasNext()) {
+            AbstractCurve ac = cIt.next();
+            curves.put(ac.getLabel(), ac);
+        }
+
+        HashMap<CircleContour, CircleContour> newCircles = new HashMap<CircleContour, CircleContour>();
+        ArrayList<CircleContour> relabelledCircles = new ArrayList<CircleContour>();
+        for (CircleContour c : circles) {
+            CircleContour copy = new CircleContour(c,
+                    curves.get(form.getOriginalLabel(c.ac.getLabel())));
+            DiagramCreator.set_colour(copy);
+            newCircles.put(c, copy);
+            relabelledCircles.add(copy);
+        }
+
+        ArrayList<ConcreteZone> relabelledShaded = new ArrayList<ConcreteZone>();
+        for (ConcreteZone z : shadedZones) {
+            relabelledShaded.add(relabel(z, form, curves, newCircles));
+        }
+        ArrayList<ConcreteZone> relabelledUnshaded = new ArrayList<ConcreteZone>();
+        for (ConcreteZone z : unshadedZones) {
+            relabelledUnshaded.add(relabel(z, form, curves, newCircles));
+        }
+
+        ArrayList<ConcreteSpider> relabelledSpiders = null;
+        if (spiders != null) {
+            // spiders keep their order through canonicalisation
+            relabelledSpiders = new ArrayList<ConcreteSpider>();
+            Iterator<AbstractSpider> sIt = original.getSpiderIterator();
+            for (ConcreteSpider s : spiders) {
+                ConcreteSpider copy = new ConcreteSpider(sIt.next());
+                HashMap<ConcreteSpiderFoot, ConcreteSpiderFoot> newFeet =
+                        new HashMap<ConcreteSpiderFoot, ConcreteSpiderFoot>();
+                for (ConcreteSpiderFoot foot : s.getFeet()) {
+                    ConcreteSpiderFoot footCopy = new ConcreteSpiderFoot(foot.getX(), foot.getY());
+                    footCopy.setSpider(copy);
+                    newFeet.put(foot, footCopy);
+                    copy.getFeet().add(footCopy);
+                }
+                for (ConcreteSpiderLeg leg : s.getLegs()) {
+                    copy.getLegs().add(new ConcreteSpiderLeg(newFeet.get(leg.from), newFeet.get(leg.to)));
+                }
+                relabelledSpiders.add(copy);
+            }
+        }
+
+        ConcreteDiagram result = new ConcreteDiagram(box, relabelledCircles,
+                relabelledShaded, relabelledUnshaded, relabelledSpiders);
+        result.setFont(font);
+        result.degraded = degraded;
+        return result;
+    }
+
+    private static ConcreteZone relabel(ConcreteZone z, CanonicalForm form,
+            HashMap<String, AbstractCurve> curves,
+            HashMap<CircleContour, CircleContour> newCircles) {
+        TreeSet<AbstractCurve> in = new TreeSet<AbstractCurve>();
+        Iterator<AbstractCurve> it = z.abr.getContourIterator();
+        while (it.hasNext()) {
+            in.add(curves.get(form.getOriginalLabel(it.next().getLabel())));
+        }
+        ArrayList<CircleContour> containing = new ArrayList<CircleContour>();
+        for (CircleContour c : z.containingCircles) {
+            containing.add(newCircles.get(c));
+        }
+        ArrayList<CircleContour> excluding = new ArrayList<CircleContour>();
+        for (CircleContour c : z.excludingCircles) {
+            excluding.add(newCircles.get(c));
+        }
+        ConcreteZone result = new ConcreteZone(AbstractBasicRegion.get(in), containing, excluding);
+        result.col = z.col;
+        return result;
+    }
+
     public ArrayList<CircleContour> getCircles() {
         return circles;
     }
 
+    /**
+     * The arrangement of all the circles in this diagram.  It is built on
+     * first use and shared by all the zones, which take their exact
+     * boundaries from it.
+     */
+    public synchronized CircleArrangement getArrangement() {
+        if (arrangement == null) {
+            arrangement = new CircleArrangement(circles);
+            for (ConcreteZone zone : shadedZones) {
+                zone.setArrangement(arrangement);
+            }
+            for (ConcreteZone zone : unshadedZones) {
+                zone.setArrangement(arrangement);
+            }
+        }
+        return arrangement;
+    }
+
     public double checksum() {
         return circles_checksum() + shading_checksum() + spiders_checksum();
     }
@@ -124,8 +294,11 @@ public class ConcreteDiagram {
         return unshadedZones;
     }
 
+    /**
+     * @return the box, or a copy of it once frozen.
+     */
     public Rectangle2D.Double getBox() {
-        return box;
+        return frozen ? (Rectangle2D.Double) box.clone() : box;
     }
 
     /**
@@ -142,15 +315,50 @@ public class ConcreteDiagram {
             // not drawable
             throw new CannotDrawException("badly formed diagram spec");
         }
+        DiagramCache c = cache;
+        if (c != null) {
+            return c.makeConcreteDiagram(ad, size);
+        }
         DiagramCreator dc = new DiagramCreator(ad);
         return dc.createDiagram(size);
     }
 
+    /**
+     * Routes {@link #makeConcreteDiagram} through a cache of layouts, or
+     * stops caching if the cache is null (the default).  Diagrams from the
+     * cache are {@link #isFrozen frozen}.
+     */
+    public static void setCache(DiagramCache c) {
+        cache = c;
+    }
+
+    public static DiagramCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Lays out a diagram once, so that it can then be drawn at several sizes
+     * without being laid out again.
+     *
+     * @return the layout, or null if the circles could not be placed.
+     */
+    public static DiagramLayout makeLayout(AbstractDescription ad) throws CannotDrawException {
+        if (!ad.checksOk()) {
+            // not drawable
+            throw new CannotDrawException("badly formed diagram spec");
+        }
+        DiagramCreator dc = new DiagramCreator(ad);
+        return dc.createLayout();
+    }
+
     public ArrayList<ConcreteSpider> getSpiders() {
         return spiders;
     }
 
     public void setFont(Font f) {
+        if (frozen) {
+            throw new UnsupportedOperationException("diagram is frozen");
+        }
         font = f;
     }
 
@@ -182,7 +390,7 @@ public class ConcreteDiagram {
     public ConcreteSpiderFoot getSpiderFootAtPoint(Point p) {
         if (getSpiders() != null) {
             for (ConcreteSpider s : getSpiders()) {
-                for (ConcreteSpiderFoot f : s.feet) {
+                for (ConcreteSpiderFoot f : s.getFeet()) {
                     double dist = Math.sqrt((p.x - f.getX()) * (p.x - f.getX())
                             + (p.y - f.getY()) * (p.y - f.getY()));
                     if (dist < ConcreteSpiderFoot.FOOT_RADIUS + 2) {
@@ -216,7 +424,7 @@ public class ConcreteDiagram {
         final double threshold = (ConcreteSpiderFoot.FOOT_RADIUS + 2)/scaleFactor;
         if (getSpiders() != null) {
             for (ConcreteSpider s : getSpiders()) {
-                for (ConcreteSpiderFoot f : s.feet) {
+                for (ConcreteSpiderFoot f : s.getFeet()) {
                     double dist = Math.sqrt((p.x - f.getX()) * (p.x - f.getX())
                             + (p.y - f.getY()) * (p.y - f.getY()));
                     if (dist < threshold) {
@@ -273,13 +481,16 @@ public class ConcreteDiagram {
      * coordinates.</p>
      */
     public ConcreteZone getZoneAtPoint(Point p) {
+        if (!box.contains(p)) {
+            return null;
+        }
         for (ConcreteZone zone : this.unshadedZones) {
-            if (zone.getShape(box).contains(p)) {
+            if (zone.containsPoint(p.x, p.y)) {
                 return zone;
             }
         }
         for (ConcreteZone zone : this.shadedZones) {
-            if (zone.getShape(box).contains(p)) {
+            if (zone.containsPoint(p.x, p.y)) {
                 return zone;
             }
         }
@@ -42,11 +42,10 @@ public class ConcreteSpider {
 
     static Logger logger = Logger.getLogger(ConcreteSpider.class.getName());
 
-    // TODO: make some data private
-    public int footRad = 1;
-    public ArrayList<ConcreteSpiderFoot> feet;
-    public ArrayList<ConcreteSpiderLeg> legs;
-    public AbstractSpider as;
+    public final int footRad = 1;
+    private ArrayList<ConcreteSpiderFoot> feet;
+    private ArrayList<ConcreteSpiderLeg> legs;
+    private final AbstractSpider as;
 
     public ConcreteSpider(AbstractSpider as) {
         this.as = as;
@@ -54,6 +53,37 @@ public class ConcreteSpider {
         legs = new ArrayList<ConcreteSpiderLeg>();
     }
 
+    void freeze() {
+        feet = new FrozenList<ConcreteSpiderFoot>(feet);
+        legs = new FrozenList<ConcreteSpiderLeg>(legs);
+    }
+
+    /**
+     * Returns the feet of this spider.  The list refuses changes once the
+     * diagram is frozen.
+     * @return the feet of this spider.
+     */
+    public ArrayList<ConcreteSpiderFoot> getFeet() {
+        return feet;
+    }
+
+    /**
+     * Returns the legs joining the feet of this spider.  The list refuses
+     * changes once the diagram is frozen.
+     * @return the legs of this spider.
+     */
+    public ArrayList<ConcreteSpiderLeg> getLegs() {
+        return legs;
+    }
+
+    /**
+     * Returns the abstract spider this spider draws.
+     * @return the abstract spider this spider draws.
+     */
+    public AbstractSpider getAbstractSpider() {
+        return as;
+    }
+
     public double checksum() {
         double result = 0.0;
         for (ConcreteSpiderFoot foot : feet) {
@@ -1,12 +1,19 @@
 package icircles.concreteDiagram;
 
-public // TODO make some data private
-class ConcreteSpiderLeg{
-public // TODO make some data private
-	ConcreteSpiderFoot from;
-public // TODO make some data private
-	ConcreteSpiderFoot to;
-public double checksum() {
-	return 1.1 * from.checksum() + 2.1 * to.checksum();
-}
+/**
+ * A straight leg joining two feet of a spider.
+ */
+public class ConcreteSpiderLeg {
+
+    public final ConcreteSpiderFoot from;
+    public final ConcreteSpiderFoot to;
+
+    public ConcreteSpiderLeg(ConcreteSpiderFoot from, ConcreteSpiderFoot to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public double checksum() {
+        return 1.1 * from.checksum() + 2.1 * to.checksum();
+    }
 }
@@ -3,15 +3,21 @@ package icircles.concreteDiagram;
 import icircles.abstractDescription.AbstractBasicRegion;
 import java.awt.Color;
 import java.awt.geom.Area;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ConcreteZone {
 
     AbstractBasicRegion abr;
     ArrayList<CircleContour> containingCircles;
     ArrayList<CircleContour> excludingCircles;
-    Area shape;
+    volatile Area shape;
+    volatile CircleArrangement arrangement;
+    volatile List<CircleArrangement.BoundaryArc> boundary;
+    boolean frozen;
 
     public ConcreteZone(AbstractBasicRegion abr,
             ArrayList<CircleContour> containingCircles,
@@ -22,20 +28,166 @@ public class ConcreteZone {
         shape = null;
     }
 
+    /**
+     * The zone as an Area, each circle nudged as in {@link #containsDisc},
+     * clipped to box the first time it is asked for and kept after that.
+     * Once frozen, a copy is returned, as the zone may be shared.
+     */
     public Area getShape(Rectangle2D.Double box) {
-        if (shape != null) {
-            return shape;
+        Area a = shape;
+        if (a == null) {
+            a = new Area(box);
+            for (CircleContour c : containingCircles) {
+                a.intersect(c.getBigInterior());
+            }
+            for (CircleContour c : excludingCircles) {
+                a.subtract(c.getSmallInterior());
+            }
+            shape = a;
         }
+        return frozen ? new Area(a) : a;
+    }
+
+    /**
+     * Tests whether a disc lies inside this zone, using distances between
+     * circle centres rather than Area operations.
+     *
+     * The disc must lie within every containing circle (grown by its nudge)
+     * and clear of every excluding circle (shrunk by its nudge), just as for
+     * {@link #getShape}.  Unlike getShape, the zone is not clipped to a box.
+     * getShape approximates the circles with curves, so the two can disagree
+     * for discs which touch the zone boundary.
+     *
+     * @param cx the x coordinate of the centre of the disc.
+     * @param cy the y coordinate of the centre of the disc.
+     * @param radius the radius of the disc.
+     * @return true if the disc fits in this zone.
+     */
+    public boolean containsDisc(double cx, double cy, double radius) {
+        for (CircleContour c : containingCircles) {
+            double dx = cx - c.cx;
+            double dy = cy - c.cy;
+            double reach = c.radius + c.nudge - radius;
+            if (reach < 0 || dx * dx + dy * dy > reach * reach) {
+                return false;
+            }
+        }
+        for (CircleContour c : excludingCircles) {
+            double excludedRad = c.radius - c.nudge;
+            if (excludedRad <= 0) {
+                continue;
+            }
+            double dx = cx - c.cx;
+            double dy = cy - c.cy;
+            double gap = radius + excludedRad;
+            if (dx * dx + dy * dy < gap * gap) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        Area a = new Area(box);
+    /**
+     * The radius of the largest disc centred at a given point which lies
+     * inside this zone, in the sense of {@link #containsDisc}: the least
+     * distance from the point to the edge of a containing circle (grown by
+     * its nudge) or to an excluding circle (shrunk by its nudge).
+     *
+     * @param cx the x coordinate of the centre of the disc.
+     * @param cy the y coordinate of the centre of the disc.
+     * @return the radius, negative if the point is outside the zone, or
+     *         positive infinity if no circle bounds the zone.
+     */
+    public double largestDiscRadius(double cx, double cy) {
+        double result = Double.POSITIVE_INFINITY;
         for (CircleContour c : containingCircles) {
-            a.intersect(c.getBigInterior());
+            double dist = Math.sqrt((cx - c.cx) * (cx - c.cx) + (cy - c.cy) * (cy - c.cy));
+            result = Math.min(result, c.radius + c.nudge - dist);
         }
         for (CircleContour c : excludingCircles) {
-            a.subtract(c.getSmallInterior());
+            double excludedRad = c.radius - c.nudge;
+            if (excludedRad <= 0) {
+                continue;
+            }
+            double dist = Math.sqrt((cx - c.cx) * (cx - c.cx) + (cy - c.cy) * (cy - c.cy));
+            result = Math.min(result, dist - excludedRad);
         }
-        shape = a;
-        return a;
+        return result;
+    }
+
+    /**
+     * Tests whether a point lies in this zone, using the true circles.
+     * Points on a circle count as inside it, so zones do not overlap.
+     */
+    public boolean containsPoint(double x, double y) {
+        return CircleArrangement.zoneContains(containingCircles, excludingCircles, x, y);
+    }
+
+    /**
+     * Shares an arrangement of (at least) all the circles of this zone, so
+     * that {@link #getBoundary} need not build its own.
+     */
+    void setArrangement(CircleArrangement arrangement) {
+        if (this.arrangement != arrangement) {
+            this.arrangement = arrangement;
+            boundary = null;
+        }
+    }
+
+    /**
+     * The exact boundary of this zone: the arcs of its circles which have the
+     * zone on one side, each directed to keep the zone on its left.
+     */
+    public List<CircleArrangement.BoundaryArc> getBoundary() {
+        if (boundary != null) {
+            return boundary;
+        }
+        if (arrangement == null) {
+            ArrayList<CircleContour> own = new ArrayList<CircleContour>(containingCircles);
+            own.addAll(excludingCircles);
+            arrangement = new CircleArrangement(own);
+        }
+        List<CircleArrangement.BoundaryArc> result = Collections.unmodifiableList(
+                arrangement.getBoundary(containingCircles, excludingCircles));
+        boundary = result;
+        return result;
+    }
+
+    /**
+     * The exact area of this zone, computed from its boundary arcs.
+     *
+     * @return the area, or positive infinity for a zone outside all its
+     *         circles.
+     */
+    public double getArea() {
+        if (containingCircles.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return CircleArrangement.area(getBoundary());
+    }
+
+    /**
+     * The outline of this zone as a path of circular arcs.  A zone outside all
+     * its circles is unbounded, so its path is clipped to the given box.
+     */
+    public Path2D.Double getBoundaryPath(Rectangle2D.Double box) {
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO);
+        if (containingCircles.isEmpty()) {
+            // wound the same way as the outer edges of bounded zones
+            path.moveTo(box.getMinX(), box.getMinY());
+            path.lineTo(box.getMaxX(), box.getMinY());
+            path.lineTo(box.getMaxX(), box.getMaxY());
+            path.lineTo(box.getMinX(), box.getMaxY());
+            path.closePath();
+        }
+        path.append(CircleArrangement.toPath(getBoundary()), false);
+        return path;
+    }
+
+    void freeze() {
+        containingCircles = new FrozenList<CircleContour>(containingCircles);
+        excludingCircles = new FrozenList<CircleContour>(excludingCircles);
+        frozen = true;
     }
 
     public ArrayList<CircleContour> getContainingContours() {
@@ -52,6 +204,9 @@ public class ConcreteZone {
     Color col;
 
     public void setColor(Color c) {
+        if (frozen) {
+            throw new UnsupportedOperationException("zone belongs to a frozen diagram");
+        }
         col = c;
     }
 
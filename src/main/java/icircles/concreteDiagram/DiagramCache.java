@@ -0,0 +1,244 @@
+package icircles.concreteDiagram;
+
+import icircles.abstractDescription.AbstractDescription;
+import icircles.abstractDescription.CanonicalForm;
+import icircles.util.CannotDrawException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bounded cache of diagram layouts, keyed by the
+ * {@link AbstractDescription#getCanonicalKey canonical key} of the abstract
+ * description.
+ *
+ * Each entry holds the size-independent {@link DiagramLayout} of one
+ * description, or the reason it could not be drawn, together with the
+ * diagrams already made from it at a few sizes.  Diagrams handed out are
+ * {@link ConcreteDiagram#isFrozen frozen}, so the same instance can be given
+ * to every caller.  Their abstract curves and zones are those of the first
+ * description laid out under the key; compare them by label.
+ *
+ * When the cache is full, either the least recently used or the least
+ * frequently used entry (ties going to the least recently used) is dropped.
+ *
+ * With {@link #setShareIsomorphic} on, descriptions are reduced to their
+ * {@link CanonicalForm} first, so descriptions which differ only in contour
+ * labels share one layout, which is relabelled for each of them.  A
+ * description whose canonical form could not be found exactly is looked up
+ * under its own labels instead.
+ *
+ * Use one directly, or install one with {@link ConcreteDiagram#setCache}.
+ */
+public class DiagramCache {
+
+    static Logger logger = Logger.getLogger(DiagramCache.class.getName());
+
+    /** Evict the entry which was used least recently. */
+    public static final int EVICT_LRU = 0;
+    /** Evict the entry which was used least often. */
+    public static final int EVICT_LFU = 1;
+
+    /** Diagrams kept per entry, one per canvas size. */
+    static final int SIZES_PER_ENTRY = 4;
+
+    private final int m_capacity;
+    private final int m_policy;
+    // in access order, least recently used first
+    private final LinkedHashMap<String, Entry> m_entries;
+
+    private volatile boolean m_share_isomorphic;
+
+    private long m_hits;
+    private long m_misses;
+    private long m_evictions;
+
+    public DiagramCache(int capacity, int policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("cache capacity must be positive");
+        }
+        if (policy != EVICT_LRU && policy != EVICT_LFU) {
+            throw new IllegalArgumentException("unknown eviction policy " + policy);
+        }
+        m_capacity = capacity;
+        m_policy = policy;
+        m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    public DiagramCache(int capacity) {
+        this(capacity, EVICT_LRU);
+    }
+
+    /**
+     * As {@link ConcreteDiagram#makeConcreteDiagram}, but the layout is only
+     * worked out the first time a description is seen.
+     *
+     * @return a frozen diagram, or null if the circles could not be placed.
+     * @throws CannotDrawException if the description cannot be drawn; this
+     *         too is remembered.
+     */
+    public ConcreteDiagram makeConcreteDiagram(AbstractDescription ad, int size)
+            throws CannotDrawException {
+        if (!ad.checksOk()) {
+            // not drawable
+            throw new CannotDrawException("badly formed diagram spec");
+        }
+        CanonicalForm form = m_share_isomorphic ? CanonicalForm.of(ad) : null;
+        if (form != null && form.isExact()) {
+            ConcreteDiagram canonical = lookUp(form.getDescription(), size);
+            if (canonical == null) {
+                return null;
+            }
+            ConcreteDiagram result = canonical.relabel(form);
+            result.freeze();
+            return result;
+        }
+        return lookUp(ad, size);
+    }
+
+    private ConcreteDiagram lookUp(AbstractDescription ad, int size)
+            throws CannotDrawException {
+        String key = ad.getCanonicalKey();
+        Entry entry;
+        synchronized (this) {
+            entry = m_entries.get(key);
+            if (entry != null) {
+                m_hits++;
+                entry.m_uses++;
+            } else {
+                m_misses++;
+            }
+        }
+        if (entry == null) {
+            // lay out without holding the lock; a racing thread may do the
+            // same work, and the first to finish is kept
+            Entry fresh = new Entry();
+            try {
+                fresh.m_layout = new DiagramCreator(ad).createLayout();
+            } catch (CannotDrawException x) {
+                fresh.m_failure = x.message;
+            }
+            synchronized (this) {
+                entry = m_entries.get(key);
+                if (entry == null) {
+                    entry = fresh;
+                    m_entries.put(key, entry);
+                    evict();
+                }
+            }
+        }
+        return entry.getDiagram(size);
+    }
+
+    private void evict() {
+        while (m_entries.size() > m_capacity) {
+            Iterator<Map.Entry<String, Entry>> it = m_entries.entrySet().iterator();
+            Map.Entry<String, Entry> victim = it.next();
+            if (m_policy == EVICT_LFU) {
+                // the first of the least used, in least recently used order
+                while (it.hasNext()) {
+                    Map.Entry<String, Entry> e = it.next();
+                    if (e.getValue().m_uses < victim.getValue().m_uses) {
+                        victim = e;
+                    }
+                }
+            }
+            logger.debug("evicting layout " + victim.getKey());
+            m_entries.remove(victim.getKey());
+            m_evictions++;
+        }
+    }
+
+    /**
+     * Lets descriptions which differ only in contour labels share a layout.
+     * Their diagrams may then differ from the ones they would get alone,
+     * since the layout is worked out for the canonical labels.  Any
+     * description without an exact canonical form is cached as if this
+     * were off.
+     */
+    public void setShareIsomorphic(boolean share) {
+        m_share_isomorphic = share;
+    }
+
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+
+    public synchronized long getEvictions() {
+        return m_evictions;
+    }
+
+    public synchronized int getSize() {
+        return m_entries.size();
+    }
+
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    public synchronized void resetStatistics() {
+        m_hits = 0;
+        m_misses = 0;
+        m_evictions = 0;
+    }
+
+    public synchronized void clear() {
+        m_entries.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DiagramCache(" + m_entries.size() + "/" + m_capacity
+                + (m_policy == EVICT_LFU ? " LFU" : " LRU")
+                + ", hits " + m_hits + ", misses " + m_misses
+                + ", evictions " + m_evictions + ")";
+    }
+
+    private static final class Entry {
+
+        DiagramLayout m_layout;
+        String m_failure;
+        long m_uses = 1;
+        // diagrams, or failure messages, by size; least recently used first
+        private final LinkedHashMap<Integer, Object> m_by_size =
+                new LinkedHashMap<Integer, Object>(8, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Integer, Object> eldest) {
+                        return size() > SIZES_PER_ENTRY;
+                    }
+                };
+
+        synchronized ConcreteDiagram getDiagram(int size) throws CannotDrawException {
+            if (m_failure != null) {
+                throw new CannotDrawException(m_failure);
+            }
+            if (m_layout == null) {
+                return null;
+            }
+            Object made = m_by_size.get(size);
+            if (made == null) {
+                try {
+                    ConcreteDiagram diagram = m_layout.makeDiagram(size);
+                    diagram.freeze();
+                    made = diagram;
+                } catch (CannotDrawException x) {
+                    made = x.message;
+                }
+                m_by_size.put(size, made);
+            }
+            if (made instanceof String) {
+                throw new CannotDrawException((String) made);
+            }
+            return (ConcreteDiagram) made;
+        }
+    }
+}
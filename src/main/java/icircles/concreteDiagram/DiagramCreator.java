@@ -44,6 +44,7 @@ import icircles.recomposition.Recomposer;
 import icircles.recomposition.RecompositionStep;
 import icircles.recomposition.RecompositionStrategy;
 
+import icircles.util.CancellationToken;
 import icircles.util.CannotDrawException;
 
 import java.awt.Color;
@@ -53,8 +54,11 @@ import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.Level;
@@ -79,6 +83,12 @@ class AngleIterator {
     }
 }
 
+/**
+ * Lays out one abstract description.  Creators share no mutable state, so
+ * separate creators can lay out diagrams on separate threads at once, and
+ * give the same diagrams as they would one after another.  The methods of a
+ * single creator are synchronized.
+ */
 public class DiagramCreator {
 
     static Logger logger = Logger.getLogger(DiagramCreator.class.getName());
@@ -92,9 +102,54 @@ public class DiagramCreator {
     HashMap<AbstractCurve, Double> guide_sizes;
     HashMap<AbstractCurve, CircleContour> map;
     ArrayList<CircleContour> circles;
+    // the same circles, for finding those near a zone
+    CircleIndex circle_index;
     int debug_image_number = 0;
     int debug_size = 50;
 
+    /** Test whether circles fit in zones with distances between circles. */
+    public static final int CONTAINMENT_ANALYTIC = 0;
+    /** Test whether circles fit in zones by subtracting Areas. */
+    public static final int CONTAINMENT_AREA = 1;
+    /** Run both tests, use the analytic one and log any disagreement. */
+    public static final int CONTAINMENT_VERIFY = 2;
+    int containment_mode = CONTAINMENT_ANALYTIC;
+    // for refining the angle of a single piercing
+    final static double GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+    final static int GOLDEN_SECTION_STEPS = 24;
+
+    /**
+     * The least work, in candidate circles times the circles each is tested
+     * against, which {@link #setCandidatePool(ForkJoinPool)} splits across
+     * the pool.
+     */
+    public static final int PARALLEL_MIN_WORK = 4096;
+    CandidateEvaluator evaluator = CandidateEvaluator.SERIAL;
+
+    // a spider foot closer than this to a leg is on it
+    final static double FOOT_TOLERANCE = 6;
+    // the cells of the spider leg index, in multiples of FOOT_TOLERANCE
+    final static double FOOT_CELL_FACTOR = 8;
+    final static int MAX_FOOT_MOVES = 10;
+    final static int MIN_FOOT_RING_POINTS = 16;
+
+    // set while a layout runs with a deadline or a cancellation token
+    CancellationToken cancellation;
+    boolean anytime = false;
+    // the layout being made has given up some work in anytime mode
+    boolean degraded;
+
+    /** Search for space on a single grid with spacing smallest_rad. */
+    public static final int GRID_FIXED = 0;
+    /**
+     * Search a coarse grid first, halving its spacing while the space found
+     * is too small for the guide size of the contour.
+     */
+    public static final int GRID_COARSE_TO_FINE = 1;
+    final static double COARSEST_GRID_FACTOR = 8;
+    final static double FINEST_GRID_FACTOR = 0.5;
+    int grid_mode = GRID_FIXED;
+
     public DiagramCreator(AbstractDescription ad) {
         m_initial_diagram = ad;
         d_steps = new ArrayList<DecompositionStep>();
@@ -119,28 +174,130 @@ public class DiagramCreator {
         map = new HashMap<AbstractCurve, CircleContour>();
     }
 
-    public ConcreteDiagram createDiagram(int size) throws CannotDrawException {
+    /**
+     * Chooses how circle placement tests whether a candidate circle fits in
+     * a zone.  With the analytic test, piercing circles are given the
+     * largest radius which fits, found directly; with the Area tests, radii
+     * growing by half each time are tried until one fails.
+     *
+     * @param mode one of {@link #CONTAINMENT_ANALYTIC} (the default),
+     *        {@link #CONTAINMENT_AREA} or {@link #CONTAINMENT_VERIFY}.
+     */
+    public synchronized void setContainmentMode(int mode) {
+        containment_mode = mode;
+    }
+
+    public synchronized void setGridMode(int mode) {
+        grid_mode = mode;
+    }
+
+    /**
+     * Scores candidate placements of piercing circles on the given pool
+     * when there are enough of them, or one after another if the pool is
+     * null (the default).  The diagrams are the same either way.
+     *
+     * Only the analytic containment test is run on the pool: the Area tests
+     * share Areas, which are not safe to use from several threads at once.
+     */
+    public synchronized void setCandidatePool(ForkJoinPool pool) {
+        setCandidatePool(pool, PARALLEL_MIN_WORK);
+    }
+
+    /**
+     * @param min_work the least work, in candidate circles times the circles
+     *        each is tested against, to split across the pool.
+     */
+    public synchronized void setCandidatePool(ForkJoinPool pool, int min_work) {
+        evaluator = pool == null ? CandidateEvaluator.SERIAL : new CandidateEvaluator(pool, min_work);
+    }
+
+    /**
+     * Chooses what a layout does when its cancellation token is cancelled or
+     * its deadline passes.  By default it gives up with a
+     * CannotDrawException.  In anytime mode, work which only improves the
+     * layout is cut short instead, and the diagram is returned
+     * {@link ConcreteDiagram#isDegraded degraded}: the grid search for space
+     * for a nested contour or a spider foot keeps the best space found so
+     * far, and spider feet left on the legs of other spiders stay where they
+     * are.  Spider feet which cannot be moved off such legs, cancelled or
+     * not, likewise leave the diagram degraded rather than failing with a
+     * CannotDrawException.  Circles cannot be left out, so a layout cancelled while placing
+     * them still gives up.
+     */
+    public synchronized void setAnytime(boolean anytime) {
+        this.anytime = anytime;
+    }
+
+    public synchronized ConcreteDiagram createDiagram(int size) throws CannotDrawException {
+        DiagramLayout layout = createLayout();
+        if (layout == null) {
+            return null;
+        }
+        return layout.makeDiagram(size);
+    }
+
+    /**
+     * As {@link #createDiagram(int)}, but stops once the given time has
+     * passed.
+     *
+     * @param timeout_ms how long the layout may take.
+     */
+    public synchronized ConcreteDiagram createDiagram(int size, long timeout_ms)
+            throws CannotDrawException {
+        return createDiagram(size, CancellationToken.withTimeout(timeout_ms));
+    }
+
+    /**
+     * As {@link #createDiagram(int)}, but stops once the token is cancelled,
+     * with a CannotDrawException or, in {@link #setAnytime anytime} mode, if
+     * it can, with a degraded diagram.
+     */
+    public synchronized ConcreteDiagram createDiagram(int size, CancellationToken token)
+            throws CannotDrawException {
+        CancellationToken old = cancellation;
+        cancellation = token;
+        try {
+            return createDiagram(size);
+        } finally {
+            cancellation = old;
+        }
+    }
+
+    /**
+     * Places the circles, without fitting them to any particular size.
+     *
+     * @return the layout, from which diagrams of any size can be made, or
+     *         null if the circles could not be placed.
+     */
+    public synchronized DiagramLayout createLayout() throws CannotDrawException {
+        degraded = false;
         make_guide_sizes(); // scores zones too
-        /*
-         * Rectangle2D.Double box = null; if (guide_sizes.size() < 1) { box =
-         * new Rectangle2D.Double(0, 0, 1000, 1000); } else { box = new
-         * Rectangle2D.Double(0, 0, 1000 * guide_sizes.size(), 1000 *
-         * guide_sizes.size()); }
-         */
         circles = new ArrayList<CircleContour>();
-        ConcreteDiagram result = null;
-        try
-        {
-        boolean ok = createCircles(/*
-                 * box,
-                 */size);
-
+        circle_index = new CircleIndex(2 * smallest_rad);
+        boolean ok = createCircles(debug_size);
         if (!ok) {
             circles = null;
             return null;
         }
+        return new DiagramLayout(this, circles, degraded);
+    }
 
-        CircleContour.fitCirclesToSize(circles, size);
+    /**
+     * Fits a copy of the layout's circles to the given size, and derives the
+     * zones and spiders from those copies.
+     */
+    synchronized ConcreteDiagram createDiagram(DiagramLayout layout, int size)
+            throws CannotDrawException {
+        circles = layout.getCircles(size);
+        degraded = layout.isDegraded();
+        map = new HashMap<AbstractCurve, CircleContour>();
+        double smallest = Double.POSITIVE_INFINITY;
+        for (CircleContour c : circles) {
+            map.put(c.ac, c);
+            smallest = Math.min(smallest, c.radius);
+        }
+        circle_index = new CircleIndex(smallest > 0 && smallest < Double.POSITIVE_INFINITY
+                ? 2 * smallest : 1, circles);
 
         ArrayList<ConcreteZone> shadedZones = new ArrayList<ConcreteZone>();
         ArrayList<ConcreteZone> unshadedZones = new ArrayList<ConcreteZone>();
@@ -148,14 +305,10 @@ public class DiagramCreator {
 
         ArrayList<ConcreteSpider> spiders = createSpiders();
 
-        result = new ConcreteDiagram(new Rectangle2D.Double(0, 0, size, size),
+        ConcreteDiagram result = new ConcreteDiagram(new Rectangle2D.Double(0, 0, size, size),
                 circles, shadedZones, unshadedZones, spiders);
         result.setFont(new Font("Helvetica", Font.BOLD,  16));
-        }
-        catch(CannotDrawException x)
-        {
-        throw x;
-        }
+        result.setDegraded(degraded);
         return result;
     }
 
@@ -267,42 +420,13 @@ public class DiagramCreator {
                 ConcreteSpiderFoot foot = footList.get(0);
                 footList.remove(0);
                 foot.setSpider(cs);
-                cs.feet.add(foot);
+                cs.getFeet().add(foot);
 
                 // get the corresponding abr from the last_diag
                 feet_and_zones.put(foot, last_diag.getLabelEquivalentZone(abr));
             }
-            // choose a foot as "most central" - shortest leg length sum
-            // and draw legs from the central body to the outer feet
-            //
-            // TODO - not all spiders require a central body - e.g. four feet in a row
-            // so we need a minimum-leg-span tree rather than choosing a central
-            // foot as "body"
-            ConcreteSpiderFoot centralFoot = null;
-            double best_dist_sum = Double.MAX_VALUE;
-            for (ConcreteSpiderFoot centreCandidate : cs.feet) {
-                double distSum = 0;
-                for (ConcreteSpiderFoot other : cs.feet) {
-                    if (other == centreCandidate) {
-                        continue;
-                    }
-                    distSum += Math.sqrt((centreCandidate.getX() - other.getX()) * (centreCandidate.getX() - other.getX())
-                            + (centreCandidate.getY() - other.getY()) * (centreCandidate.getY() - other.getY()));
-                }
-                if (distSum < best_dist_sum) {
-                    best_dist_sum = distSum;
-                    centralFoot = centreCandidate;
-                }
-            }
-            for (ConcreteSpiderFoot other : cs.feet) {
-                if (other == centralFoot) {
-                    continue;
-                }
-                ConcreteSpiderLeg leg = new ConcreteSpiderLeg();
-                leg.from = centralFoot;
-                leg.to = other;
-                cs.legs.add(leg);
-            }
+            // join the feet with the shortest legs
+            cs.getLegs().addAll(SpiderLegTree.minimumSpanningTree(cs.getFeet()));
 
             spiders.add(cs);
             result.add(cs);
@@ -310,112 +434,254 @@ public class DiagramCreator {
 
         // Now we want to avoid spiders that overlap - especially 
         // those with a leg passing through the foot of another spider.
-        // For now, just nudge the spider foot off the offending leg.
-        // Check that the new foot is still in its relevant abstract basic region.
-
-        // First - detect where feet meet a non-adjacent leg
-        double tol = 6;
-        
-        boolean check_feet_placements = true;
-        while(check_feet_placements){
-        check_feet_placements = false;
+        // Nudge each spider foot off any offending leg, keeping it in its
+        // relevant abstract basic region.
+
+        separateFeetFromLegs(spiders, feet_and_zones, box, FOOT_TOLERANCE);
+
+        return result;
+    }
+
+    /**
+     * Moves spider feet off legs which do not end at them, keeping each foot
+     * in its zone.
+     *
+     * Feet on legs are taken in the order in which a scan of every foot, by
+     * spider, against every leg, by spider, would meet them.  Each is tried
+     * moved up, or diagonally, by five times tol, and a move is kept if the
+     * foot stays in its zone and leaves the leg.  After a move, only the
+     * moved foot and the feet near its legs, found through a
+     * {@link SpiderLegIndex}, are checked again.  A foot which none of those
+     * moves frees is tried at points on rings further and further out, and
+     * put at the first point leaving it and its legs clear of every other
+     * foot and leg.
+     *
+     * @throws CannotDrawException if some foot is still on a leg, unless in
+     *         anytime mode, where the layout is marked degraded instead.
+     */
+    private void separateFeetFromLegs(ArrayList<ConcreteSpider> spiders,
+            HashMap<ConcreteSpiderFoot, AbstractBasicRegion> feet_and_zones,
+            Rectangle2D.Double box, double tol) throws CannotDrawException {
+        // number the feet and legs in scan order
+        ArrayList<ConcreteSpiderFoot> feet = new ArrayList<ConcreteSpiderFoot>();
+        ArrayList<ConcreteSpiderLeg> legs = new ArrayList<ConcreteSpiderLeg>();
+        IdentityHashMap<ConcreteSpiderFoot, Integer> foot_numbers =
+                new IdentityHashMap<ConcreteSpiderFoot, Integer>();
+        IdentityHashMap<ConcreteSpiderLeg, Integer> leg_numbers =
+                new IdentityHashMap<ConcreteSpiderLeg, Integer>();
+        SpiderLegIndex index = new SpiderLegIndex(FOOT_CELL_FACTOR * tol, tol);
         for (ConcreteSpider cs : spiders) {
-        	if(check_feet_placements)//(start again)
-        		break;
-            for (ConcreteSpiderFoot foot : cs.feet) {
-                // check whether foot is too close to another leg
-            	if(check_feet_placements)//(start again)
-            		break;
-                for (ConcreteSpider cs2 : spiders) {
-                	if(check_feet_placements)//(start again)
-                		break;
-                    for (ConcreteSpiderLeg leg : cs2.legs) {
-                        if (leg.from == foot || leg.to == foot) {
-                            // this leg is bound to be close to foot -it's attached!
-                            continue;
-                        }
-                        // is foot on leg?
-                        logger.trace("check spider "+cs+" foot ("+foot.getX()+","+foot.getY()+") against "+
-                                     " spider "+cs2+
-                                     " leg ("+leg.from.getX()+","+leg.from.getY()+")->("+leg.to.getX()+","+leg.to.getY()+")");
-
-                        boolean foot_on_leg = foot_is_on_leg(foot, leg, tol);
-                        if (foot_on_leg) {
-                            // nudge the foot, but check it's still in its zone afterwards
-                            double old_x = foot.getX();
-                            double old_y = foot.getY();
-                            AbstractBasicRegion abr = feet_and_zones.get(foot);
-
-                            ConcreteZone cz = makeConcreteZone(abr);
-                            Area a = new Area(cz.getShape(box));
-                            
-                            double new_y = old_y + 5 * tol;
-//    	                    double new_x = old_x + 2 * tol;
-                            double new_x = old_x;
-                            CircleContour test = new CircleContour(new_x, new_y, tol, null);
-                            if (containedIn(test, a)) {
-                                foot.setX(new_x);
-                                foot.setY(new_y);
-                                if(foot_is_on_leg(foot, leg, tol)){
-                                	foot.setX(old_x);
-                                	foot.setY(old_y);
-                                }else{
-                                    check_feet_placements = true; // if we moved one, start all over again!
-                                    break;                                	
-                                }
-                            }
-                            new_x = old_x - 5 * tol;
-                            new_y = old_y - 5 * tol;
-                            test = new CircleContour(new_x, new_y, tol, null);
-                            if (containedIn(test, a)) {
-                                foot.setX(new_x);
-                                foot.setY(new_y);
-                                if(foot_is_on_leg(foot, leg, tol)){
-                                	foot.setX(old_x);
-                                	foot.setY(old_y);
-                                }else{
-                                    check_feet_placements = true; // if we moved one, start all over again!
-                                    break;                                	
-                                }
-                            }
-                            new_x = old_x + 5 * tol;
-                            new_y = old_y - 5 * tol;
-                            test = new CircleContour(new_x, new_y, tol, null);
-                            if (containedIn(test, a)) {
-                                foot.setX(new_x);
-                                foot.setY(new_y);
-                                if(foot_is_on_leg(foot, leg, tol)){
-                                	foot.setX(old_x);
-                                	foot.setY(old_y);
-                                }else{
-                                    check_feet_placements = true; // if we moved one, start all over again!
-                                    break;                                	
-                                }
-                            }
-                            new_x = old_x - 5 * tol;
-                            new_y = old_y + 5 * tol;
-                            test = new CircleContour(new_x, new_y, tol, null);
-                            if (containedIn(test, a)) {
-                                foot.setX(new_x);
-                                foot.setY(new_y);
-                                if(foot_is_on_leg(foot, leg, tol)){
-                                	foot.setX(old_x);
-                                	foot.setY(old_y);
-                                }else{
-                                    check_feet_placements = true; // if we moved one, start all over again!
-                                    break;                                	
-                                }
-                            }
-                        }
+            for (ConcreteSpiderFoot foot : cs.getFeet()) {
+                foot_numbers.put(foot, feet.size());
+                feet.add(foot);
+                index.addFoot(foot);
+            }
+        }
+        for (ConcreteSpider cs : spiders) {
+            for (ConcreteSpiderLeg leg : cs.getLegs()) {
+                leg_numbers.put(leg, legs.size());
+                legs.add(leg);
+                index.addLeg(leg);
+            }
+        }
+        if (legs.isEmpty()) {
+            return;
+        }
+        long num_legs = legs.size();
+
+        // each foot on a leg, as foot number * num_legs + leg number
+        TreeSet<Long> worklist = new TreeSet<Long>();
+        for (ConcreteSpiderFoot foot : feet) {
+            queueFootOnLegs(foot, index, tol, foot_numbers, leg_numbers, num_legs, worklist);
+        }
+
+        HashMap<AbstractBasicRegion, ConcreteZone> zones = new HashMap<AbstractBasicRegion, ConcreteZone>();
+        int moves_left = MAX_FOOT_MOVES * feet.size();
+        while (!worklist.isEmpty()) {
+            if (stopEarly()) {
+                // leave the remaining feet on legs
+                return;
+            }
+            long pair = worklist.pollFirst();
+            ConcreteSpiderFoot foot = feet.get((int) (pair / num_legs));
+            ConcreteSpiderLeg leg = legs.get((int) (pair % num_legs));
+            if (!foot_is_on_leg(foot, leg, tol)) {
+                continue;
+            }
+            ConcreteZone cz = footZone(foot, feet_and_zones, zones);
+            if (!nudgeFoot(foot, leg, cz, cz.getShape(box), tol)) {
+                // queued again if it or the leg moves
+                continue;
+            }
+            index.moveFoot(foot);
+            queueFootOnLegs(foot, index, tol, foot_numbers, leg_numbers, num_legs, worklist);
+            for (ConcreteSpiderLeg moved : index.legsOf(foot)) {
+                for (ConcreteSpiderFoot other : index.feetNear(moved)) {
+                    if (moved.from != other && moved.to != other
+                            && foot_is_on_leg(other, moved, tol)) {
+                        worklist.add(foot_numbers.get(other) * num_legs + leg_numbers.get(moved));
                     }
                 }
             }
+            if (--moves_left == 0) {
+                logger.info("spider feet still moving after " + MAX_FOOT_MOVES * feet.size() + " moves");
+                break;
+            }
+        }
+
+        // move feet which the nudges left on legs, or whose legs cross other
+        // feet, while that leaves fewer feet on legs
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (ConcreteSpiderFoot foot : feet) {
+                int collisions = countCollisions(foot, index, tol);
+                if (collisions == 0) {
+                    continue;
+                }
+                if (stopEarly()) {
+                    return;
+                }
+                ConcreteZone cz = footZone(foot, feet_and_zones, zones);
+                if (moveFootClear(foot, collisions, index, cz, cz.getShape(box), box, tol)) {
+                    improved = true;
+                }
+            }
+        }
+        for (ConcreteSpiderFoot foot : feet) {
+            if (countCollisions(foot, index, tol) > 0) {
+                if (!anytime) {
+                    throw new CannotDrawException("spider feet left on legs");
+                }
+                logger.info("spider feet left on legs; returning the layout degraded");
+                degraded = true;
+                return;
+            }
+        }
+    }
+
+    private void queueFootOnLegs(ConcreteSpiderFoot foot, SpiderLegIndex index, double tol,
+            IdentityHashMap<ConcreteSpiderFoot, Integer> foot_numbers,
+            IdentityHashMap<ConcreteSpiderLeg, Integer> leg_numbers,
+            long num_legs, TreeSet<Long> worklist) {
+        for (ConcreteSpiderLeg leg : index.legsNear(foot)) {
+            if (leg.from != foot && leg.to != foot && foot_is_on_leg(foot, leg, tol)) {
+                worklist.add(foot_numbers.get(foot) * num_legs + leg_numbers.get(leg));
+            }
         }
+    }
+
+    private ConcreteZone footZone(ConcreteSpiderFoot foot,
+            HashMap<ConcreteSpiderFoot, AbstractBasicRegion> feet_and_zones,
+            HashMap<AbstractBasicRegion, ConcreteZone> zones) {
+        AbstractBasicRegion abr = feet_and_zones.get(foot);
+        ConcreteZone cz = zones.get(abr);
+        if (cz == null) {
+            cz = makeConcreteZone(abr);
+            zones.put(abr, cz);
+        }
+        return cz;
+    }
+
+    /**
+     * Tries moving a foot up, then diagonally down left, down right and up
+     * left, by five times tol, to get it off a leg.
+     *
+     * @return true if the foot was moved.
+     */
+    private boolean nudgeFoot(ConcreteSpiderFoot foot, ConcreteSpiderLeg leg,
+            ConcreteZone cz, Area a, double tol) {
+        double old_x = foot.getX();
+        double old_y = foot.getY();
+        double[][] steps = {{0, 5}, {-5, -5}, {5, -5}, {-5, 5}};
+        for (double[] step : steps) {
+            double new_x = old_x + step[0] * tol;
+            double new_y = old_y + step[1] * tol;
+            CircleContour test = new CircleContour(new_x, new_y, tol, null);
+            if (containedIn(test, cz, a)) {
+                foot.setX(new_x);
+                foot.setY(new_y);
+                if (!foot_is_on_leg(foot, leg, tol)) {
+                    return true;
+                }
+                foot.setX(old_x);
+                foot.setY(old_y);
+            }
         }
+        return false;
+    }
 
+    /**
+     * @return the number of legs which do not end at the foot but which it
+     *         is on, plus the number of other feet on legs which do end at
+     *         it.
+     */
+    private int countCollisions(ConcreteSpiderFoot foot, SpiderLegIndex index, double tol) {
+        int result = 0;
+        for (ConcreteSpiderLeg leg : index.legsNear(foot)) {
+            if (leg.from != foot && leg.to != foot && foot_is_on_leg(foot, leg, tol)) {
+                result++;
+            }
+        }
+        for (ConcreteSpiderLeg leg : index.legsOf(foot)) {
+            for (ConcreteSpiderFoot other : index.feetNear(leg)) {
+                if (leg.from != other && leg.to != other && foot_is_on_leg(other, leg, tol)) {
+                    result++;
+                }
+            }
+        }
         return result;
     }
 
+    /**
+     * Tries a foot at points on rings around it, each ring twice tol
+     * further out and with points about twice tol apart, as far as the
+     * edges of box.  The foot goes to the first point in its zone with no
+     * {@link #countCollisions collisions}, or else to the point with the
+     * fewest, if fewer than it has now.
+     *
+     * @return true if the foot was moved.
+     */
+    private boolean moveFootClear(ConcreteSpiderFoot foot, int collisions,
+            SpiderLegIndex index, ConcreteZone cz, Area a, Rectangle2D.Double box, double tol) {
+        double old_x = foot.getX();
+        double old_y = foot.getY();
+        double best_x = old_x;
+        double best_y = old_y;
+        int best = collisions;
+        double max_dist = Math.max(Math.max(old_x - box.getMinX(), box.getMaxX() - old_x),
+                Math.max(old_y - box.getMinY(), box.getMaxY() - old_y));
+        search:
+        for (double dist = 2 * tol; dist <= max_dist; dist += 2 * tol) {
+            int num_points = Math.max(MIN_FOOT_RING_POINTS, (int) (Math.PI * dist / tol));
+            for (int i = 0; i < num_points; i++) {
+                double angle = Math.PI * 2 * i / num_points;
+                double new_x = old_x + Math.cos(angle) * dist;
+                double new_y = old_y + Math.sin(angle) * dist;
+                if (!box.contains(new_x, new_y)
+                        || !containedIn(new CircleContour(new_x, new_y, tol, null), cz, a)) {
+                    continue;
+                }
+                foot.setX(new_x);
+                foot.setY(new_y);
+                index.moveFoot(foot);
+                int found = countCollisions(foot, index, tol);
+                if (found < best) {
+                    best = found;
+                    best_x = new_x;
+                    best_y = new_y;
+                    if (found == 0) {
+                        break search;
+                    }
+                }
+            }
+        }
+        foot.setX(best_x);
+        foot.setY(best_y);
+        index.moveFoot(foot);
+        return best < collisions;
+    }
+
     private void make_guide_sizes() {
         guide_sizes = new HashMap<AbstractCurve, Double>();
         if (r_steps.size() == 0) {
@@ -441,11 +707,12 @@ public class DiagramCreator {
         Iterator<AbstractCurve> cIt = last_diag.getContourIterator();
         while (cIt.hasNext()) {
             AbstractCurve ac = cIt.next();
+            int ci = last_diag.getContourIndex(ac);
             double cScore = 0;
             Iterator<AbstractBasicRegion> zIt = last_diag.getZoneIterator();
             while (zIt.hasNext()) {
                 AbstractBasicRegion abr = zIt.next();
-                if (abr.isIn(ac)) {
+                if (last_diag.getZoneBits(abr).isIn(ci)) {
                     cScore += zoneScores.get(abr);
                 }
             }
@@ -500,14 +767,54 @@ public class DiagramCreator {
     }
 
     private ConcreteZone makeConcreteZone(AbstractBasicRegion z) {
+        return makeMergedConcreteZone(z, null, null);
+    }
+
+    /**
+     * Makes the union of the zones which differ from z only in whether they
+     * are inside ignored1 and ignored2: the zone with those curves dropped
+     * from both its containing and its excluding circles.
+     *
+     * A zone inside some circles only excludes the circles which come near
+     * all of those, found through the circle index; the others cannot meet
+     * it, and subtracting them from its shape would change nothing.  A zone
+     * outside every circle excludes them all.
+     */
+    private ConcreteZone makeMergedConcreteZone(AbstractBasicRegion z,
+            AbstractCurve ignored1, AbstractCurve ignored2) {
         ArrayList<CircleContour> includingCircles = new ArrayList<CircleContour>();
-        ArrayList<CircleContour> excludingCircles = new ArrayList<CircleContour>(circles);
+        double minX = Double.NEGATIVE_INFINITY;
+        double minY = Double.NEGATIVE_INFINITY;
+        double maxX = Double.POSITIVE_INFINITY;
+        double maxY = Double.POSITIVE_INFINITY;
         Iterator<AbstractCurve> acIt = z.getContourIterator();
         while (acIt.hasNext()) {
             AbstractCurve ac = acIt.next();
+            if (ac == ignored1 || ac == ignored2) {
+                continue;
+            }
             CircleContour containingCC = map.get(ac);
-            excludingCircles.remove(containingCC);
             includingCircles.add(containingCC);
+            double reach = containingCC.radius + containingCC.nudge;
+            minX = Math.max(minX, containingCC.cx - reach);
+            minY = Math.max(minY, containingCC.cy - reach);
+            maxX = Math.min(maxX, containingCC.cx + reach);
+            maxY = Math.min(maxY, containingCC.cy + reach);
+        }
+        ArrayList<CircleContour> excludingCircles;
+        if (includingCircles.isEmpty()) {
+            excludingCircles = new ArrayList<CircleContour>(circles);
+        } else if (minX > maxX || minY > maxY) {
+            // the containing circles do not all meet
+            excludingCircles = new ArrayList<CircleContour>();
+        } else {
+            excludingCircles = circle_index.overlapping(minX, minY, maxX, maxY);
+        }
+        excludingCircles.removeAll(includingCircles);
+        for (AbstractCurve ac : new AbstractCurve[]{ignored1, ignored2}) {
+            if (ac != null) {
+                excludingCircles.remove(map.get(ac));
+            }
         }
         ConcreteZone cz = new ConcreteZone(z, includingCircles, excludingCircles);
         return cz;
@@ -516,31 +823,23 @@ public class DiagramCreator {
     private boolean createCircles(int deb_size) throws CannotDrawException {
         debug_size = deb_size;
         debug_image_number = 0;
-        BuildStep bs = null;
-        BuildStep tail = null;
+        ArrayList<RecompData> additions = new ArrayList<RecompData>();
         for (RecompositionStep rs : r_steps) {
             // we need to add the new curves with regard to their placement
             // relative to the existing ones in the map
             Iterator<RecompData> it = rs.getRecompIterator();
             while (it.hasNext()) {
-                RecompData rd = it.next();
-                BuildStep newOne = new BuildStep(rd);
-                if (bs == null) {
-                    bs = newOne;
-                    tail = newOne;
-                } else {
-                    tail.next = newOne;
-                    tail = newOne;
-                }
+                additions.add(it.next());
             }
         }
 
-        shuffle_and_combine(bs);
+        ArrayList<BuildStep> plan = BuildPlan.combine(additions, contScores);
+        HashMap<AbstractCurve, ArrayList<RecompData>> pierced_by = findPiercings(plan);
 
-        BuildStep step = bs;
         stepLoop:
-        while (step != null) {
+        for (BuildStep step : plan) {
             logger.debug("new build step");
+            checkCancelled();
             Rectangle2D.Double outerBox = CircleContour.makeBigOuterBox(circles);
 
             // we need to add the new curves with regard to their placement
@@ -577,7 +876,6 @@ public class DiagramCreator {
                             map.put(ac, c);
                             addCircle(c);
                         }
-                        step = step.next;
                         continue stepLoop;
                     }
                 } else if (step.recomp_data.get(0).split_zones.size() == 2) {
@@ -596,6 +894,7 @@ public class DiagramCreator {
                     ConcreteZone cz1 = makeConcreteZone(abr1);
                     Area a = new Area(cz0.getShape(outerBox));
                     a.add(cz1.getShape(outerBox));
+                    ConcreteZone czBoth = makeMergedConcreteZone(abr0, pierced_ac, null);
 
                     double suggested_rad = guide_sizes.get(piercingCurve);
 
@@ -644,17 +943,35 @@ public class DiagramCreator {
                     double guide_rad = guide_sizes.get(step.recomp_data.get(0).added_curve);
                     int sampleSize = (int) (Math.PI / Math.asin(guide_rad / pierced_cc.radius));
                     if (sampleSize >= step.recomp_data.size()) {
-                        int num_ok = 0;
+                        // the samples whose centres lie in a
+                        final double[] sample_x = new double[sampleSize];
+                        final double[] sample_y = new double[sampleSize];
+                        int num_samples = 0;
                         for (int i = 0; i < sampleSize; i++) {
                             double angle = i * Math.PI * 2.0 / sampleSize;
                             double x = pierced_cc.cx + Math.cos(angle) * center_of_circle_lies_on_rad;
                             double y = pierced_cc.cy + Math.sin(angle) * center_of_circle_lies_on_rad;
                             if (a.contains(x, y)) {
-                                CircleContour sample = new CircleContour(x, y, guide_rad,
-                                        step.recomp_data.get(0).added_curve);
-                                if (containedIn(sample, a)) {
-                                    num_ok++;
-                                }
+                                sample_x[num_samples] = x;
+                                sample_y[num_samples] = y;
+                                num_samples++;
+                            }
+                        }
+                        final double sample_rad = guide_rad;
+                        final AbstractCurve sample_ac = piercingCurve;
+                        final ConcreteZone sample_cz = czBoth;
+                        final Area sample_a = a;
+                        double[] fits = scoreCandidates(num_samples, czBoth, new CandidateEvaluator.Scorer() {
+                            public double score(int i) {
+                                CircleContour sample = new CircleContour(sample_x[i], sample_y[i],
+                                        sample_rad, sample_ac);
+                                return containedIn(sample, sample_cz, sample_a) ? 1.0 : 0.0;
+                            }
+                        });
+                        int num_ok = 0;
+                        for (double fit : fits) {
+                            if (fit > 0.0) {
+                                num_ok++;
                             }
                         }
                         if (num_ok >= step.recomp_data.size()) {
@@ -674,7 +991,6 @@ public class DiagramCreator {
                                         addCircle(c);
                                     }
                                 }
-                                step = step.next;
                                 continue stepLoop;
                             } else if (num_ok > sampleSize) {  // BUG?  Doesn't make sense
                                 num_ok = 0;
@@ -685,7 +1001,7 @@ public class DiagramCreator {
                                     if (a.contains(x, y)) {
                                         AbstractCurve added_curve = step.recomp_data.get(i).added_curve;
                                         CircleContour c = new CircleContour(x, y, guide_rad, added_curve);
-                                        if (containedIn(c, a)) {
+                                        if (containedIn(c, czBoth, a)) {
                                             abr0 = step.recomp_data.get(num_ok).split_zones.get(0);
                                             abr1 = step.recomp_data.get(num_ok).split_zones.get(1);
                                             map.put(added_curve, c);
@@ -697,7 +1013,6 @@ public class DiagramCreator {
                                         }
                                     }
                                 }
-                                step = step.next;
                                 continue stepLoop;
                             }
                         }
@@ -715,19 +1030,9 @@ public class DiagramCreator {
 
                     // look ahead - are we going to add a piercing to this?
                     // if so, push it to one side to make space
-                    boolean will_pierce = false;
-                    BuildStep future_bs = bs.next;
-                    while (future_bs != null) {
-                        if (future_bs.recomp_data.get(0).split_zones.size() == 2) {
-                            AbstractBasicRegion abr0 = future_bs.recomp_data.get(0).split_zones.get(0);
-                            AbstractBasicRegion abr1 = future_bs.recomp_data.get(0).split_zones.get(1);
-                            AbstractCurve ac_future = abr0.getStraddledContour(abr1);
-                            if (ac_future == ac) {
-                                will_pierce = true;
-                                break;
-                            }
-                        }
-                        future_bs = future_bs.next;
+                    boolean will_pierce = pierced_by.containsKey(ac);
+                    if (will_pierce && logger.isDebugEnabled()) {
+                        logger.debug(ac.debug() + " will be pierced by " + pierced_by.get(ac).size() + " curves");
                     }
 
                     logger.debug("make a nested contour");
@@ -753,7 +1058,7 @@ public class DiagramCreator {
 
                         ConcreteZone cz = makeConcreteZone(rd.split_zones.get(0));
                         Area a = new Area(cz.getShape(outerBox));
-                        if (!containedIn(c, a)) {
+                        if (!containedIn(c, cz, a)) {
                             c.cx += c.radius * 0.25;
                             c.radius *= 0.75;
                         }
@@ -774,6 +1079,7 @@ public class DiagramCreator {
                     ConcreteZone cz0 = makeConcreteZone(abr0);
                     ConcreteZone cz1 = makeConcreteZone(abr1);
                     Area a = new Area(cz0.getShape(outerBox));
+                    ConcreteZone czBoth = makeMergedConcreteZone(abr0, c, null);
 
                     // TODO: DEB.show(4, a, "for single piercing first half " + debug_image_number);
                     // TODO: DEB.show(4, new Area(cz1.getShape(outerBox)), "for single piercing second half " + debug_image_number);
@@ -826,31 +1132,36 @@ public class DiagramCreator {
 
                     // now place circles around cc, checking whether they fit into a
                     CircleContour solution = null;
-                    for (AngleIterator ai = new AngleIterator(); ai.hasNext();) {
-                        double angle = ai.next_angle();
-                        double x = cc.cx + Math.cos(angle) * center_of_circle_lies_on_rad;
-                        double y = cc.cy + Math.sin(angle) * center_of_circle_lies_on_rad;
-                        if (a.contains(x, y)) {
-                            // how big a circle can we make?
-                            double start_rad;
-                            if (solution != null) {
-                                start_rad = solution.radius + smallest_rad;
-                            } else {
-                                start_rad = smallest_rad;
-                            }
-                            CircleContour attempt = growCircleContour(a, rd.added_curve,
-                                    x, y, suggested_rad,
-                                    start_rad,
-                                    smallest_allowed_rad);
-                            if (attempt != null) {
-                                solution = attempt;
-                                if (solution.radius == guide_sizes.get(ac)) {
-                                    break; // no need to try any more
+                    if (containment_mode == CONTAINMENT_ANALYTIC) {
+                        solution = bestPiercingCircle(czBoth, a, rd.added_curve, cc,
+                                center_of_circle_lies_on_rad, suggested_rad);
+                    } else {
+                        for (AngleIterator ai = new AngleIterator(); ai.hasNext();) {
+                            double angle = ai.next_angle();
+                            double x = cc.cx + Math.cos(angle) * center_of_circle_lies_on_rad;
+                            double y = cc.cy + Math.sin(angle) * center_of_circle_lies_on_rad;
+                            if (a.contains(x, y)) {
+                                // how big a circle can we make?
+                                double start_rad;
+                                if (solution != null) {
+                                    start_rad = solution.radius + smallest_rad;
+                                } else {
+                                    start_rad = smallest_rad;
+                                }
+                                CircleContour attempt = growCircleContour(czBoth, a, rd.added_curve,
+                                        x, y, suggested_rad,
+                                        start_rad,
+                                        smallest_allowed_rad);
+                                if (attempt != null) {
+                                    solution = attempt;
+                                    if (solution.radius == guide_sizes.get(ac)) {
+                                        break; // no need to try any more
+                                    }
                                 }
-                            }
 
-                        }//check that the centre is ok
-                    }// loop for different centre placement
+                            }//check that the centre is ok
+                        }// loop for different centre placement
+                    }
                     if (solution == null) // no single piercing found which was OK
                     {
                         throw new CannotDrawException("1-peircing no fit");
@@ -885,6 +1196,7 @@ public class DiagramCreator {
                     a.add(cz1.getShape(outerBox));
                     a.add(cz2.getShape(outerBox));
                     a.add(cz3.getShape(outerBox));
+                    ConcreteZone czAll = makeMergedConcreteZone(abr0, c1, c2);
 
                     // TODO: DEB.show(4, a, "for double piercing " + debug_image_number);
 
@@ -905,7 +1217,7 @@ public class DiagramCreator {
                         throw new CannotDrawException("2peircing + disjoint");
                     }
 
-                    CircleContour solution = growCircleContour(a, rd.added_curve, cx, cy,
+                    CircleContour solution = growCircleContour(czAll, a, rd.added_curve, cx, cy,
                             suggested_rad, smallest_rad, smallest_rad);
                     if (solution == null) // no double piercing found which was OK
                     {
@@ -917,88 +1229,40 @@ public class DiagramCreator {
                     }
                 }// if/else/else about piercing type
             }// next RecompData in the BuildStep
-            step = step.next;
         }// go to next BuildStep
 
         return true;
     }
 
-    private void shuffle_and_combine(BuildStep steplist) {
-        // collect together additions which are
-        //  (i) nested in the same zone
-        //  (ii) single-piercings with the same zones
-        //  (iii) will have the same radius (have the same "score")
-
-        BuildStep bs = steplist;
-        while (bs != null) {
-            assert (bs.recomp_data.size() == 1); // "not ready for multistep");
-            if (bs.recomp_data.get(0).split_zones.size() == 1) {
-                RecompData rd = bs.recomp_data.get(0);
-                AbstractBasicRegion abr = rd.split_zones.get(0);
-                // look ahead - are there other similar nested additions?
-                BuildStep beforefuturebs = bs;
-                while (beforefuturebs != null && beforefuturebs.next != null) {
-                    RecompData rd2 = beforefuturebs.next.recomp_data.get(0);
-                    if (rd2.split_zones.size() == 1) {
-                        AbstractBasicRegion abr2 = rd2.split_zones.get(0);
-                        if (abr.isLabelEquivalent(abr2)) {
-                            logger.debug("found matching abrs " + abr.debug() + ", " + abr2.debug());
-                            // check scores match
-
-                            double abrScore = contScores.get(rd.added_curve);
-                            double abrScore2 = contScores.get(rd2.added_curve);
-                            assert (abrScore > 0 && abrScore2 > 0); //"zones must have score");
-                            logger.debug("matched nestings " + abr.debug() + " and " + abr2.debug()
-                                         + "\n with scores " + abrScore + " and " + abrScore2);
-                            if (abrScore == abrScore2) {
-                                // unhook futurebs and insert into list after bs
-                                BuildStep to_move = beforefuturebs.next;
-                                beforefuturebs.next = to_move.next;
-
-                                bs.recomp_data.add(to_move.recomp_data.get(0));
-                            }
-                        }
-                    }
-                    beforefuturebs = beforefuturebs.next;
-                }// loop through futurebs's to see if we insert another
-            }// check - are we adding a nested contour?
-            else if (bs.recomp_data.get(0).split_zones.size() == 2) {// we are adding a 1-piercing
-                RecompData rd = bs.recomp_data.get(0);
-                AbstractBasicRegion abr1 = rd.split_zones.get(0);
-                AbstractBasicRegion abr2 = rd.split_zones.get(1);
-                // look ahead - are there other similar 1-piercings?
-                BuildStep beforefuturebs = bs;
-                while (beforefuturebs != null && beforefuturebs.next != null) {
-                    RecompData rd2 = beforefuturebs.next.recomp_data.get(0);
-                    if (rd2.split_zones.size() == 2) {
-                        AbstractBasicRegion abr3 = rd2.split_zones.get(0);
-                        AbstractBasicRegion abr4 = rd2.split_zones.get(1);
-                        if ((abr1.isLabelEquivalent(abr3) && abr2.isLabelEquivalent(abr4))
-                                || (abr1.isLabelEquivalent(abr4) && abr2.isLabelEquivalent(abr3))) {
-
-                            logger.debug("found matching abrs " + abr1.debug() + ", " + abr2.debug());
-                            // check scores match
-                            double abrScore = contScores.get(rd.added_curve);
-                            double abrScore2 = contScores.get(rd2.added_curve);
-                            assert (abrScore > 0 && abrScore2 > 0); // "zones must have score");
-                            logger.debug("matched piercings " + abr1.debug() + " and " + abr2.debug()
-                                         + "\n with scores " + abrScore + " and " + abrScore2);
-                            if (abrScore == abrScore2) {
-                                // unhook futurebs and insert into list after bs
-                                BuildStep to_move = beforefuturebs.next;
-                                beforefuturebs.next = to_move.next;
-
-                                bs.recomp_data.add(to_move.recomp_data.get(0));
-                                continue;
-                            }
-                        }
-                    }
-                    beforefuturebs = beforefuturebs.next;
-                }// loop through futurebs's to see if we insert another
+    /**
+     * Which curves will be pierced once by curves added later, and by which
+     * additions, in the order of the plan.  A curve is always placed before
+     * any curve piercing it, so every entry lies ahead of the step which
+     * places its curve.
+     *
+     * The placement of nested contours only asks whether a curve is here;
+     * it does not yet use how many piercings are coming.
+     */
+    private static HashMap<AbstractCurve, ArrayList<RecompData>> findPiercings(
+            ArrayList<BuildStep> plan) {
+        HashMap<AbstractCurve, ArrayList<RecompData>> result =
+                new HashMap<AbstractCurve, ArrayList<RecompData>>();
+        for (BuildStep step : plan) {
+            for (RecompData rd : step.recomp_data) {
+                if (rd.split_zones.size() != 2) {
+                    continue;
+                }
+                AbstractCurve pierced = rd.split_zones.get(0).getStraddledContour(
+                        rd.split_zones.get(1));
+                ArrayList<RecompData> piercings = result.get(pierced);
+                if (piercings == null) {
+                    piercings = new ArrayList<RecompData>();
+                    result.put(pierced, piercings);
+                }
+                piercings.add(rd);
             }
-
-            bs = bs.next;
-        }// bsloop
+        }
+        return result;
     }
 
     void addCircle(CircleContour c) {
@@ -1006,6 +1270,7 @@ public class DiagramCreator {
 
         set_colour(c);
         circles.add(c);
+        circle_index.add(c);
 
         //        DEB_show_frame(3, debug_image_number, debug_size);
         debug_image_number++;
@@ -1018,7 +1283,7 @@ public class DiagramCreator {
         new Color(0, 50, 150),
         new Color(100, 0, 100)};
 
-    private void set_colour(CircleContour cc) {
+    static void set_colour(CircleContour cc) {
         String s = cc.ac.getLabel();
         if (s == null || s.length() < 1) {
             return;
@@ -1032,12 +1297,32 @@ public class DiagramCreator {
         cc.setColor(colors[col_index]);
     }
 
-    private CircleContour growCircleContour(Area a, AbstractCurve ac,
+    /**
+     * Makes the largest circle centred at (cx, cy) which fits in a zone, no
+     * bigger than suggested_rad.
+     *
+     * With the analytic containment test the largest radius which fits is
+     * found directly, by {@link #fitRadius}.  With the Area tests, radii
+     * growing from start_rad by half each time are tried until one fails.
+     *
+     * @return the circle, or null if one of start_rad does not fit.
+     */
+    private CircleContour growCircleContour(ConcreteZone cz, Area a, AbstractCurve ac,
             double cx, double cy,
             double suggested_rad, double start_rad,
             double smallest_rad) {
+        if (containment_mode == CONTAINMENT_ANALYTIC) {
+            double rad = fitRadius(cz, cx, cy);
+            if (rad >= suggested_rad) {
+                return new CircleContour(cx, cy, suggested_rad, ac);
+            } else if (rad >= start_rad) {
+                return new CircleContour(cx, cy, rad, ac);
+            }
+            return null;
+        }
+
         CircleContour attempt = new CircleContour(cx, cy, suggested_rad, ac);
-        if (containedIn(attempt, a)) {
+        if (containedIn(attempt, cz, a)) {
             return new CircleContour(cx, cy, suggested_rad, ac);
         }
 
@@ -1046,7 +1331,7 @@ public class DiagramCreator {
         double rad = start_rad;
         while (ok) {
             attempt = new CircleContour(cx, cy, rad, ac);
-            if (containedIn(attempt, a)) {
+            if (containedIn(attempt, cz, a)) {
                 good_rad = rad;
                 rad *= 1.5;
             } else {
@@ -1079,17 +1364,162 @@ public class DiagramCreator {
         }
     }
 
-    private boolean all_ok_in(int lowi, int highi, int lowj, int highj,
-            PotentialCentre[][] ok_array, int Ni, int Nj) {
-        boolean all_ok = true;
-        for (int i = lowi; all_ok && i < highi + 1; i++) {
-            for (int j = lowj; all_ok && j < highj + 1; j++) {
-                if (i >= Ni || j >= Nj || !ok_array[i][j].ok) {
-                    all_ok = false;
+    /**
+     * @return true if the layout should stop: its thread has been
+     *         interrupted (as a portfolio does once another layout has won),
+     *         or its token cancelled.
+     */
+    private boolean isCancelled() {
+        return Thread.currentThread().isInterrupted()
+                || (cancellation != null && cancellation.isCancelled());
+    }
+
+    private CannotDrawException cancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            return new CannotDrawException("layout interrupted");
+        }
+        return new CannotDrawException("layout cancelled");
+    }
+
+    private void checkCancelled() throws CannotDrawException {
+        if (isCancelled()) {
+            throw cancelled();
+        }
+    }
+
+    /**
+     * Asks whether work which only improves the layout should stop.
+     *
+     * @return true, marking the layout degraded, if the token is cancelled
+     *         in anytime mode.
+     * @throws CannotDrawException if the layout is cancelled otherwise.
+     */
+    private boolean stopEarly() throws CannotDrawException {
+        if (!isCancelled()) {
+            return false;
+        }
+        if (!anytime || Thread.currentThread().isInterrupted()) {
+            throw cancelled();
+        }
+        if (!degraded) {
+            logger.info("layout cancelled; returning it degraded");
+        }
+        degraded = true;
+        return true;
+    }
+
+    /**
+     * Samples which points of a grid over bounds lie in a.  If a grid of
+     * twice the spacing over the same bounds is given, its points are copied
+     * rather than tested again.
+     *
+     * @return the samples, or null if the layout was cancelled first.
+     */
+    private boolean[][] sampleGrid(Area a, Rectangle bounds, double step,
+            boolean[][] coarser) {
+        int ni = (int) (bounds.getWidth() / step) + 1;
+        int nj = (int) (bounds.getHeight() / step) + 1;
+        boolean ok[][] = new boolean[ni][nj];
+        double basex = bounds.getMinX();
+        double basey = bounds.getMinY();
+        for (int i = 0; i < ni; i++) {
+            if (isCancelled()) {
+                return null;
+            }
+            double cx = basex + i * step;
+            for (int j = 0; j < nj; j++) {
+                if (coarser != null && i % 2 == 0 && j % 2 == 0
+                        && i / 2 < coarser.length && j / 2 < coarser[i / 2].length) {
+                    ok[i][j] = coarser[i / 2][j / 2];
+                } else {
+                    ok[i][j] = a.contains(cx, basey + j * step);
+                }
+            }
+        }
+        if (logger.isTraceEnabled()) {
+            for (int j = 0; j < nj; j++) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 0; i < ni; i++) {
+                    row.append(ok[i][j] ? 'o' : 'x');
+                }
+                logger.trace(row);
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Looks in the grid for the biggest run of squares, side by side (wide)
+     * or one above the other (tall), one square per contour.  A box of size
+     * sq for k contours spans sq*k+2 by sq+2 grid points, all of which must
+     * be in the zone.
+     *
+     * Each box is checked in constant time with a summed-area table.  Each
+     * corner only tries sizes bigger than the best so far, and stops at the
+     * first failure, so the whole search is linear in the number of grid
+     * points.  The first corner (in i, then j order) to reach the biggest
+     * size wins, with wide boxes preferred to tall ones.
+     *
+     * @return the box, or null if there is no box of positive size.
+     */
+    private GridBox findGridBox(boolean[][] ok, Rectangle bounds, double step,
+            int k) {
+        int ni = ok.length;
+        int nj = ni == 0 ? 0 : ok[0].length;
+        // sat[i][j] counts the points in the zone with indices below (i, j)
+        int sat[][] = new int[ni + 1][nj + 1];
+        for (int i = 0; i < ni; i++) {
+            int row = 0;
+            for (int j = 0; j < nj; j++) {
+                if (ok[i][j]) {
+                    row++;
                 }
+                sat[i + 1][j + 1] = sat[i][j + 1] + row;
             }
         }
-        return all_ok;
+
+        int corneri = -1, cornerj = -1, size = -1;
+        boolean isTall = true; // or isWide
+        for (int i = 0; i < ni; i++) {
+            for (int j = 0; j < nj; j++) {
+                // biggest possible square?
+                int max_sq = Math.min(ni - i, nj - j);
+                for (int sq = size + 1; sq < max_sq + 1; sq++) {
+                    if (all_ok_in(i, i + (sq * k) + 1, j, j + sq + 1, sat, ni, nj)) {
+                        corneri = i;
+                        cornerj = j;
+                        size = sq;
+                        isTall = false;
+                    } else if (k > 1
+                            && all_ok_in(i, i + sq + 1, j, j + (sq * k) + 1, sat, ni, nj)) {
+                        corneri = i;
+                        cornerj = j;
+                        size = sq;
+                        isTall = true;
+                    } else {
+                        break; // neither wide nor tall worked - move onto next (x, y)
+                    }
+                }// loop for increasing sizes
+            }// loop for j corner
+        }// loop for i corner
+        logger.debug("best box at grid step " + step + " is at corner ("
+                + corneri + "," + cornerj + "), size " + size
+                + (isTall ? ", tall" : ", wide"));
+        if (size <= 0) {
+            return null;
+        }
+        return new GridBox(bounds.getMinX() + corneri * step,
+                bounds.getMinY() + cornerj * step, step, size, isTall);
+    }
+
+    private static boolean all_ok_in(int lowi, int highi, int lowj, int highj,
+            int[][] sat, int Ni, int Nj) {
+        if (highi >= Ni || highj >= Nj) {
+            return false;
+        }
+        int count = sat[highi + 1][highj + 1] - sat[lowi][highj + 1]
+                - sat[highi + 1][lowj] + sat[lowi][lowj];
+        return count == (highi - lowi + 1) * (highj - lowj + 1);
     }
 
     private ArrayList<CircleContour> findCircleContours(Rectangle2D.Double outerBox,
@@ -1205,18 +1635,11 @@ public class DiagramCreator {
         if (zone.getNumContours() > 0 && acs.size() == 1) {
             //System.out.println("look for "+zone.debug()+" in "+last_diag.debug());
             // not the outside zone - locate the zone in the last diag
-            AbstractBasicRegion zoneInLast = null;
-            Iterator<AbstractBasicRegion> abrIt = last_diag.getZoneIterator();
-            while (abrIt.hasNext() && zoneInLast == null) {
-                AbstractBasicRegion abrInLast = abrIt.next();
-                if (abrInLast.isLabelEquivalent(zone)) {
-                    zoneInLast = abrInLast;
-                }
-            }
+            AbstractBasicRegion zoneInLast = last_diag.getLabelEquivalentZone(zone);
             assert (zoneInLast != null); // "failed to locate zone in final diagram");
 
             // how many neighbouring abrs?
-            abrIt = last_diag.getZoneIterator();
+            Iterator<AbstractBasicRegion> abrIt = last_diag.getZoneIterator();
             ArrayList<AbstractCurve> nbring_curves = new ArrayList<AbstractCurve>();
             while (abrIt.hasNext()) {
                 AbstractBasicRegion abrInLast = abrIt.next();
@@ -1242,7 +1665,7 @@ public class DiagramCreator {
                         // build a co-centric contour
                         CircleContour attempt = new CircleContour(
                                 ccOutside.cx, ccOutside.cy, rad, acs.get(0));
-                        if (containedIn(attempt, a)) {
+                        if (containedIn(attempt, cz, a)) {
                             if (rad > 2 * smallest_rad) // shrink the co-centric contour a bit
                             {
                                 attempt = new CircleContour(
@@ -1293,7 +1716,7 @@ public class DiagramCreator {
                     CircleContour attempt = new CircleContour(
                             cx, cy, max_rad - smallest_rad, acs.get(0));
                     //DEB.show(3, attempt.getBigInterior());
-                    if (containedIn(attempt, a)) {
+                    if (containedIn(attempt, cz, a)) {
                         if (max_rad > 3 * smallest_rad) // shrink the co-centric contour a bit
                         {
                             attempt = new CircleContour(
@@ -1330,66 +1753,40 @@ public class DiagramCreator {
         }
 
         // Use a grid approach to search for a space for the contour(s)
-        int ni = (int) (bounds.getWidth() / smallest_rad) + 1;
-        int nj = (int) (bounds.getHeight() / smallest_rad) + 1;
-        PotentialCentre contained[][] = new PotentialCentre[ni][nj];
-        double basex = bounds.getMinX();
-        double basey = bounds.getMinY();
-        logger.trace("--------");
-
-        for (int i = 0; i < ni; i++) {
-            double cx = basex + i * smallest_rad;
-
-            for (int j = 0; j < nj; j++) {
-                double cy = basey + j * smallest_rad;
-                //System.out.println("check for ("+cx+","+cy+") in region");
-                contained[i][j] = new PotentialCentre(cx, cy, a.contains(cx, cy));
-
-                if (contained[i][j].ok) {
-                    logger.debug("o");
-                } else {
-                    logger.debug("x");
+        GridBox box = null;
+        if (grid_mode == GRID_COARSE_TO_FINE) {
+            // refine only while the best box is too small for the guide size
+            boolean[][] coarser = null;
+            for (double step = smallest_rad * COARSEST_GRID_FACTOR;
+                    step >= smallest_rad * FINEST_GRID_FACTOR; step *= 0.5) {
+                boolean[][] ok = sampleGrid(a, bounds, step, coarser);
+                if (ok == null) {
+                    // cancelled part way through this grid
+                    if (box != null && stopEarly()) {
+                        break;
+                    }
+                    throw cancelled();
+                }
+                GridBox attempt = findGridBox(ok, bounds, step, acs.size());
+                if (attempt != null && (box == null || attempt.radius() > box.radius())) {
+                    box = attempt;
+                }
+                if (box != null && box.radius() - smallest_rad >= guide_rad) {
+                    break;
                 }
+                coarser = ok;
             }
-
+        } else {
+            boolean[][] ok = sampleGrid(a, bounds, smallest_rad, null);
+            if (ok == null) {
+                throw cancelled();
+            }
+            box = findGridBox(ok, bounds, smallest_rad, acs.size());
         }
-        logger.debug("--------");
-
-        // look in contained[] for a large square
-
-        int corneri = -1, cornerj = -1, size = -1;
-        boolean isTall = true; // or isWide
-        for (int i = 0; i < ni; i++) {
-            for (int j = 0; j < nj; j++) {
-                // biggest possible square?
-                int max_sq = Math.min(ni - i, nj - j);
-                for (int sq = size + 1; sq < max_sq + 1; sq++) {
-                    // scan a square from i, j
-                    logger.debug("look for a box from (" + i + "," + j + ") size " + sq);
-
-                    if (all_ok_in(i, i + (sq * acs.size()) + 1, j, j + sq + 1, contained, ni, nj)) {
-                        logger.debug("found a wide box, corner at (" + i + "," + j + "), size " + sq);
-                        corneri = i;
-                        cornerj = j;
-                        size = sq;
-                        isTall = false;
-                    } else if (acs.size() > 1
-                            && all_ok_in(i, i + sq + 1, j, j + (sq * acs.size()) + 1, contained, ni, nj)) {
-                        logger.debug("found a tall box, corner at (" + i + "," + j + "), size " + sq);
-                        corneri = i;
-                        cornerj = j;
-                        size = sq;
-                        isTall = true;
-                    } else {
-                        break; // neither wide nor tall worked - move onto next (x, y)
-                    }
-                }// loop for increasing sizes
-            }// loop for j corner
-        }// loop for i corner
-        //System.out.println("best square is at corner ("+corneri+","+cornerj+"), of size "+size);
-        if (size > 0) {
-            PotentialCentre pc = contained[corneri][cornerj];
-            double radius = size * smallest_rad * 0.5;
+        if (box != null) {
+            int size = box.size;
+            boolean isTall = box.isTall;
+            double radius = box.radius();
             double actualRad = radius;
             if (actualRad > 2 * smallest_rad) {
                 actualRad -= smallest_rad;
@@ -1398,7 +1795,7 @@ public class DiagramCreator {
             }
 
             // have size, cx, cy
-            logger.debug("corner at " + pc.x + "," + pc.y + ", size " + size);
+            logger.debug("corner at " + box.x + "," + box.y + ", size " + size);
 
             ArrayList<CircleContour> centredCircles = new ArrayList<CircleContour>();
 
@@ -1424,7 +1821,7 @@ public class DiagramCreator {
                 CircleContour attempt = new CircleContour(x, y,
                         Math.min(guide_rad, actualRad), ac);
                 //DEB.show(3, attempt.getBigInterior());
-                if (containedIn(attempt, a)) {
+                if (containedIn(attempt, cz, a)) {
                     centredCircles.add(attempt);
                 } else {
                     centredCircles = null;
@@ -1438,8 +1835,8 @@ public class DiagramCreator {
 
             for (int labelIndex = 0; labelIndex < acs.size(); labelIndex++) {
                 AbstractCurve ac = acs.get(labelIndex);
-                double x = pc.x + radius;
-                double y = pc.y + radius;
+                double x = box.x + radius;
+                double y = box.y + radius;
                 if (isTall) {
                     y += 2 * radius * labelIndex;
                 } else {
@@ -1448,7 +1845,7 @@ public class DiagramCreator {
 
                 CircleContour attempt = new CircleContour(x, y,
                         Math.min(guide_rad, actualRad + smallest_rad), ac);
-                if (containedIn(attempt, a)) {
+                if (containedIn(attempt, cz, a)) {
                     result.add(attempt);
                 } else {
                     result.add(new CircleContour(x, y, actualRad, ac));
@@ -1492,7 +1889,177 @@ public class DiagramCreator {
         return ret;
     }
 
-    private boolean containedIn(CircleContour c, Area a) {
+    /**
+     * The radius of the largest circle centred at (x, y) which passes the
+     * analytic containment test for cz: the distance to its nearest edge,
+     * less the margin {@link #containedIn} keeps around every circle.
+     */
+    private static double fitRadius(ConcreteZone cz, double x, double y) {
+        return cz.largestDiscRadius(x, y) - smallest_rad;
+    }
+
+    /**
+     * Places a single piercing of cc: the largest circle, no bigger than
+     * suggested_rad, which fits in cz with its centre on the circle of
+     * radius ring_rad about the centre of cc, and in a.
+     *
+     * The angles of an {@link AngleIterator} are tried in turn, stopping at
+     * the first where a circle of suggested_rad fits.  Without a candidate
+     * pool each angle is scored as it comes; with one, all the angles are
+     * scored on the pool before the first fit is looked for.  If none does, the
+     * best angle is refined by golden section search as far as the angles
+     * either side of it.
+     *
+     * @return the circle, or null if none of radius smallest_rad fits.
+     */
+    private CircleContour bestPiercingCircle(ConcreteZone cz, Area a, AbstractCurve ac,
+            CircleContour cc, double ring_rad, double suggested_rad) {
+        double best_angle = 0.0;
+        double best_rad = Double.NEGATIVE_INFINITY;
+        int num_angles = 0;
+        CandidateEvaluator e = candidateEvaluator();
+        if (e.isSerial()) {
+            // score each angle as it comes, so as to stop at the first fit
+            for (AngleIterator ai = new AngleIterator(); ai.hasNext();) {
+                double angle = ai.next_angle();
+                num_angles++;
+                double rad = piercingRadius(cz, a, cc, ring_rad, angle);
+                if (rad > best_rad) {
+                    best_rad = rad;
+                    best_angle = angle;
+                    if (rad >= suggested_rad) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            // the angles whose centres lie in a, all scored at once
+            ArrayList<Double> angles = new ArrayList<Double>();
+            for (AngleIterator ai = new AngleIterator(); ai.hasNext();) {
+                double angle = ai.next_angle();
+                num_angles++;
+                if (a.contains(cc.cx + Math.cos(angle) * ring_rad, cc.cy + Math.sin(angle) * ring_rad)) {
+                    angles.add(angle);
+                }
+            }
+            int num_candidates = angles.size();
+            final double[] xs = new double[num_candidates];
+            final double[] ys = new double[num_candidates];
+            for (int i = 0; i < num_candidates; i++) {
+                xs[i] = cc.cx + Math.cos(angles.get(i)) * ring_rad;
+                ys[i] = cc.cy + Math.sin(angles.get(i)) * ring_rad;
+            }
+            final ConcreteZone zone = cz;
+            double[] rads = e.evaluate(num_candidates,
+                    cz.containingCircles.size() + cz.excludingCircles.size(),
+                    new CandidateEvaluator.Scorer() {
+                        public double score(int i) {
+                            return fitRadius(zone, xs[i], ys[i]);
+                        }
+                    });
+            for (int i = 0; i < num_candidates; i++) {
+                if (rads[i] > best_rad) {
+                    best_rad = rads[i];
+                    best_angle = angles.get(i);
+                    if (best_rad >= suggested_rad) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (best_rad < smallest_rad) {
+            return null;
+        }
+        if (best_rad < suggested_rad) {
+            double spacing = Math.PI * 2 / Math.max(num_angles, 1);
+            double low = best_angle - spacing;
+            double high = best_angle + spacing;
+            double m1 = high - GOLDEN_RATIO * (high - low);
+            double m2 = low + GOLDEN_RATIO * (high - low);
+            double r1 = piercingRadius(cz, a, cc, ring_rad, m1);
+            double r2 = piercingRadius(cz, a, cc, ring_rad, m2);
+            for (int i = 0; i < GOLDEN_SECTION_STEPS && best_rad < suggested_rad; i++) {
+                if (r1 > best_rad) {
+                    best_rad = r1;
+                    best_angle = m1;
+                }
+                if (r2 > best_rad) {
+                    best_rad = r2;
+                    best_angle = m2;
+                }
+                if (r1 >= r2) {
+                    high = m2;
+                    m2 = m1;
+                    r2 = r1;
+                    m1 = high - GOLDEN_RATIO * (high - low);
+                    r1 = piercingRadius(cz, a, cc, ring_rad, m1);
+                } else {
+                    low = m1;
+                    m1 = m2;
+                    r1 = r2;
+                    m2 = low + GOLDEN_RATIO * (high - low);
+                    r2 = piercingRadius(cz, a, cc, ring_rad, m2);
+                }
+            }
+        }
+        return new CircleContour(cc.cx + Math.cos(best_angle) * ring_rad,
+                cc.cy + Math.sin(best_angle) * ring_rad,
+                Math.min(best_rad, suggested_rad), ac);
+    }
+
+    /**
+     * Scores candidate circles for cz with the evaluator, on its pool only
+     * with the analytic containment test, which reads nothing but the
+     * circles.
+     */
+    private double[] scoreCandidates(int n, ConcreteZone cz, CandidateEvaluator.Scorer scorer) {
+        return candidateEvaluator().evaluate(n,
+                cz.containingCircles.size() + cz.excludingCircles.size(), scorer);
+    }
+
+    private CandidateEvaluator candidateEvaluator() {
+        return containment_mode == CONTAINMENT_ANALYTIC ? evaluator : CandidateEvaluator.SERIAL;
+    }
+
+    /**
+     * The radius of the largest circle which fits in cz with its centre at
+     * the given angle on the circle of radius ring_rad about cc, or negative
+     * infinity if that centre is not in a.
+     */
+    private static double piercingRadius(ConcreteZone cz, Area a, CircleContour cc,
+            double ring_rad, double angle) {
+        double x = cc.cx + Math.cos(angle) * ring_rad;
+        double y = cc.cy + Math.sin(angle) * ring_rad;
+        if (!a.contains(x, y)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return fitRadius(cz, x, y);
+    }
+
+    /**
+     * Does c, grown by smallest_rad, fit inside the zone?
+     *
+     * @param c the circle to test.
+     * @param cz the zone, used for the analytic test.
+     * @param a the shape of the same zone, used for the Area test.
+     * @return true if c fits.
+     */
+    private boolean containedIn(CircleContour c, ConcreteZone cz, Area a) {
+        if (containment_mode == CONTAINMENT_AREA) {
+            return areaContainedIn(c, a);
+        }
+        boolean result = cz.containsDisc(c.cx, c.cy, c.radius + smallest_rad);
+        if (containment_mode == CONTAINMENT_VERIFY) {
+            boolean areaResult = areaContainedIn(c, a);
+            if (areaResult != result) {
+                logger.warn("containment tests disagree for " + c.debug()
+                        + ": analytic " + result + ", area " + areaResult);
+            }
+        }
+        return result;
+    }
+
+    private boolean areaContainedIn(CircleContour c, Area a) {
         Area test = new Area(c.getFatInterior(smallest_rad));
         test.subtract(a);
         return test.isEmpty();
@@ -1526,15 +2093,24 @@ public class DiagramCreator {
     */
 }
 
-class PotentialCentre {
+class GridBox {
 
-    double x;
-    double y;
-    boolean ok;
+    final double x; // corner of the box
+    final double y;
+    final double step; // grid spacing
+    final int size;
+    final boolean isTall;
 
-    PotentialCentre(double x, double y, boolean ok) {
+    GridBox(double x, double y, double step, int size, boolean isTall) {
         this.x = x;
         this.y = y;
-        this.ok = ok;
+        this.step = step;
+        this.size = size;
+        this.isTall = isTall;
+    }
+
+    /** The radius of the circles which fit the squares of this box. */
+    double radius() {
+        return size * step * 0.5;
     }
 }
@@ -0,0 +1,75 @@
+package icircles.concreteDiagram;
+
+import icircles.util.CannotDrawException;
+
+import java.util.ArrayList;
+
+/**
+ * The placement of a diagram's circles, worked out once and independent of
+ * the size at which the diagram is drawn.
+ *
+ * The circles are kept in the units in which {@link DiagramCreator} placed
+ * them.  {@link #makeDiagram} copies them, maps their bounding square onto a
+ * canvas of the requested size, and only then derives the zones and spiders
+ * for that size.  Zone shapes are worked out on demand by the zones
+ * themselves.
+ *
+ * Decomposition, recomposition and circle placement - the bulk of the work -
+ * are therefore not repeated when the same diagram is wanted as a thumbnail
+ * and at full size.
+ */
+public class DiagramLayout {
+
+    private final DiagramCreator creator;
+    private final ArrayList<CircleContour> circles;
+    private final boolean degraded;
+
+    DiagramLayout(DiagramCreator creator, ArrayList<CircleContour> circles, boolean degraded) {
+        this.creator = creator;
+        this.degraded = degraded;
+        this.circles = new ArrayList<CircleContour>(circles.size());
+        for (CircleContour c : circles) {
+            this.circles.add(new CircleContour(c));
+        }
+    }
+
+    /**
+     * @return the number of circles in the layout.
+     */
+    public int getNumCircles() {
+        return circles.size();
+    }
+
+    /**
+     * @return true if the layout was cut short in anytime mode, so that its
+     *         circles may be smaller than they would otherwise be.
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * @return fresh copies of the layout's circles, fitted to a square canvas
+     *         of the given size.
+     */
+    public ArrayList<CircleContour> getCircles(int size) {
+        ArrayList<CircleContour> result = new ArrayList<CircleContour>(circles.size());
+        for (CircleContour c : circles) {
+            result.add(new CircleContour(c));
+        }
+        CircleContour.fitCirclesToSize(result, size);
+        return result;
+    }
+
+    /**
+     * Draws the layout on a square canvas.  Each call returns a new diagram
+     * which shares nothing mutable with other diagrams from this layout.
+     *
+     * @param size the width and height of the canvas.
+     * @return the diagram at that size.
+     * @throws CannotDrawException if the spiders cannot be placed.
+     */
+    public ConcreteDiagram makeDiagram(int size) throws CannotDrawException {
+        return creator.createDiagram(this, size);
+    }
+}
@@ -0,0 +1,170 @@
+package icircles.concreteDiagram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * An ArrayList which refuses to be changed.  Frozen diagrams hand these out
+ * from getters which are declared to return ArrayLists, so that a diagram
+ * shared through a {@link DiagramCache} cannot be altered by one of its users.
+ */
+class FrozenList<E> extends ArrayList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    FrozenList(Collection<? extends E> contents) {
+        super(contents);
+    }
+
+    private static void refuse() {
+        throw new UnsupportedOperationException("diagram is frozen");
+    }
+
+    @Override
+    public boolean add(E e) {
+        refuse();
+        return super.add(e);
+    }
+
+    @Override
+    public void add(int index, E e) {
+        refuse();
+        super.add(index, e);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        refuse();
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+        refuse();
+        return super.addAll(index, c);
+    }
+
+    @Override
+    public E set(int index, E e) {
+        refuse();
+        return super.set(index, e);
+    }
+
+    @Override
+    public E remove(int index) {
+        refuse();
+        return super.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        refuse();
+        return super.remove(o);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        refuse();
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        refuse();
+        return super.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        refuse();
+        return super.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        refuse();
+        super.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(Comparator<? super E> c) {
+        refuse();
+        super.sort(c);
+    }
+
+    @Override
+    public void clear() {
+        refuse();
+        super.clear();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        refuse();
+        super.removeRange(fromIndex, toIndex);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        final ListIterator<E> it = super.listIterator(index);
+        return new ListIterator<E>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public E next() {
+                return it.next();
+            }
+
+            public boolean hasPrevious() {
+                return it.hasPrevious();
+            }
+
+            public E previous() {
+                return it.previous();
+            }
+
+            public int nextIndex() {
+                return it.nextIndex();
+            }
+
+            public int previousIndex() {
+                return it.previousIndex();
+            }
+
+            public void remove() {
+                refuse();
+            }
+
+            public void set(E e) {
+                refuse();
+            }
+
+            public void add(E e) {
+                refuse();
+            }
+        };
+    }
+
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+    }
+}
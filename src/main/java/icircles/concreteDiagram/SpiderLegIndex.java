@@ -0,0 +1,157 @@
+package icircles.concreteDiagram;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Finds the spider legs which pass near a foot, and the feet near a leg,
+ * without looking at every leg or foot.
+ *
+ * Feet and legs are held in a uniform grid: a foot in the cell holding it,
+ * and a leg in every cell which meets its bounding box grown by the
+ * tolerance within which a foot counts as on it.  When a foot moves, it and
+ * its legs must be {@link #moveFoot moved} in the index too.
+ */
+class SpiderLegIndex {
+
+    private final double m_cell;
+    private final double m_tol;
+    private final HashMap<Long, ArrayList<ConcreteSpiderFoot>> m_feet =
+            new HashMap<Long, ArrayList<ConcreteSpiderFoot>>();
+    private final HashMap<Long, ArrayList<ConcreteSpiderLeg>> m_legs =
+            new HashMap<Long, ArrayList<ConcreteSpiderLeg>>();
+    // the cells each leg is in, as {minX, minY, maxX, maxY}
+    private final IdentityHashMap<ConcreteSpiderLeg, long[]> m_leg_cells =
+            new IdentityHashMap<ConcreteSpiderLeg, long[]>();
+    private final IdentityHashMap<ConcreteSpiderFoot, Long> m_foot_cells =
+            new IdentityHashMap<ConcreteSpiderFoot, Long>();
+    private final IdentityHashMap<ConcreteSpiderFoot, ArrayList<ConcreteSpiderLeg>> m_attached =
+            new IdentityHashMap<ConcreteSpiderFoot, ArrayList<ConcreteSpiderLeg>>();
+
+    /**
+     * @param cell the width of the cells.
+     * @param tol how far from a leg a foot may be and still be on it.
+     */
+    SpiderLegIndex(double cell, double tol) {
+        m_cell = cell;
+        m_tol = tol;
+    }
+
+    void addFoot(ConcreteSpiderFoot foot) {
+        Long key = key(cell(foot.getX()), cell(foot.getY()));
+        m_foot_cells.put(foot, key);
+        add(m_feet, key, foot);
+    }
+
+    void addLeg(ConcreteSpiderLeg leg) {
+        long[] cells = legCells(leg);
+        m_leg_cells.put(leg, cells);
+        for (long x = cells[0]; x <= cells[2]; x++) {
+            for (long y = cells[1]; y <= cells[3]; y++) {
+                add(m_legs, key(x, y), leg);
+            }
+        }
+        attach(leg.from, leg);
+        attach(leg.to, leg);
+    }
+
+    /**
+     * @return the legs with one end at the given foot.
+     */
+    ArrayList<ConcreteSpiderLeg> legsOf(ConcreteSpiderFoot foot) {
+        ArrayList<ConcreteSpiderLeg> result = m_attached.get(foot);
+        return result == null ? new ArrayList<ConcreteSpiderLeg>() : result;
+    }
+
+    /**
+     * Moves a foot and the legs attached to it within the index, after the
+     * foot itself has moved.
+     */
+    void moveFoot(ConcreteSpiderFoot foot) {
+        Long old_key = m_foot_cells.get(foot);
+        if (old_key != null) {
+            m_feet.get(old_key).remove(foot);
+        }
+        addFoot(foot);
+        for (ConcreteSpiderLeg leg : legsOf(foot)) {
+            long[] cells = m_leg_cells.get(leg);
+            for (long x = cells[0]; x <= cells[2]; x++) {
+                for (long y = cells[1]; y <= cells[3]; y++) {
+                    m_legs.get(key(x, y)).remove(leg);
+                }
+            }
+            cells = legCells(leg);
+            m_leg_cells.put(leg, cells);
+            for (long x = cells[0]; x <= cells[2]; x++) {
+                for (long y = cells[1]; y <= cells[3]; y++) {
+                    add(m_legs, key(x, y), leg);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the legs which might have the foot on them, each once.
+     */
+    ArrayList<ConcreteSpiderLeg> legsNear(ConcreteSpiderFoot foot) {
+        ArrayList<ConcreteSpiderLeg> in_cell = m_legs.get(key(cell(foot.getX()), cell(foot.getY())));
+        return in_cell == null
+                ? new ArrayList<ConcreteSpiderLeg>() : new ArrayList<ConcreteSpiderLeg>(in_cell);
+    }
+
+    /**
+     * @return the feet which might lie on the leg, each once.
+     */
+    ArrayList<ConcreteSpiderFoot> feetNear(ConcreteSpiderLeg leg) {
+        ArrayList<ConcreteSpiderFoot> result = new ArrayList<ConcreteSpiderFoot>();
+        long[] cells = m_leg_cells.get(leg);
+        for (long x = cells[0]; x <= cells[2]; x++) {
+            for (long y = cells[1]; y <= cells[3]; y++) {
+                ArrayList<ConcreteSpiderFoot> in_cell = m_feet.get(key(x, y));
+                if (in_cell != null) {
+                    result.addAll(in_cell);
+                }
+            }
+        }
+        return result;
+    }
+
+    private long[] legCells(ConcreteSpiderLeg leg) {
+        double x0 = leg.from.getX();
+        double y0 = leg.from.getY();
+        double x1 = leg.to.getX();
+        double y1 = leg.to.getY();
+        return new long[]{
+            cell(Math.min(x0, x1) - m_tol), cell(Math.min(y0, y1) - m_tol),
+            cell(Math.max(x0, x1) + m_tol), cell(Math.max(y0, y1) + m_tol)};
+    }
+
+    private void attach(ConcreteSpiderFoot foot, ConcreteSpiderLeg leg) {
+        ArrayList<ConcreteSpiderLeg> legs = m_attached.get(foot);
+        if (legs == null) {
+            legs = new ArrayList<ConcreteSpiderLeg>(2);
+            m_attached.put(foot, legs);
+        }
+        if (!legs.contains(leg)) {
+            legs.add(leg);
+        }
+    }
+
+    private static <T> void add(HashMap<Long, ArrayList<T>> cells, Long key, T t) {
+        ArrayList<T> in_cell = cells.get(key);
+        if (in_cell == null) {
+            in_cell = new ArrayList<T>(2);
+            cells.put(key, in_cell);
+        }
+        in_cell.add(t);
+    }
+
+    private long cell(double v) {
+        return (long) Math.floor(v / m_cell);
+    }
+
+    private static Long key(long x, long y) {
+        return Long.valueOf((x << 32) ^ (y & 0xffffffffL));
+    }
+}
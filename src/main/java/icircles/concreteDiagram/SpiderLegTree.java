@@ -0,0 +1,244 @@
+package icircles.concreteDiagram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Joins the feet of a spider with the shortest set of straight legs: a
+ * Euclidean minimum spanning tree over the feet.
+ *
+ * Rather than look at every pair of feet, the tree is found among the
+ * edges from each foot to its nearest neighbour in each of eight cones of
+ * directions around it (the Yao graph).  Some minimum spanning tree always
+ * lies among those edges, since a longer edge to a foot in a cone of at
+ * most 60 degrees can be replaced by the shorter edges through the nearest
+ * foot in that cone.  The nearest feet are found by searching a grid
+ * outwards, ring by ring, and the tree by Kruskal's algorithm over the at
+ * most eight edges per foot, so for spread out feet the work grows as
+ * f log f rather than f squared.
+ */
+public final class SpiderLegTree {
+
+    static final int CONES = 8;
+
+    private SpiderLegTree() {
+    }
+
+    /**
+     * @param feet the feet to join.
+     * @return legs joining all the feet, with the least total length.  Each
+     *         leg runs from the foot earlier in the list to the later one.
+     */
+    public static ArrayList<ConcreteSpiderLeg> minimumSpanningTree(List<ConcreteSpiderFoot> feet) {
+        int n = feet.size();
+        ArrayList<ConcreteSpiderLeg> result = new ArrayList<ConcreteSpiderLeg>();
+        if (n < 2) {
+            return result;
+        }
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            xs[i] = feet.get(i).getX();
+            ys[i] = feet.get(i).getY();
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+
+        // a grid of about one foot per cell, its cells listed in order
+        double cell = Math.sqrt(Math.max((maxX - minX) * (maxY - minY), 0) / n);
+        cell = Math.max(cell, Math.max(maxX - minX, maxY - minY) / n);
+        if (!(cell > 0)) {
+            cell = 1;
+        }
+        int width = (int) ((maxX - minX) / cell) + 1;
+        int height = (int) ((maxY - minY) / cell) + 1;
+        int[] cellOf = new int[n];
+        int[] cellStart = new int[width * height + 1];
+        for (int i = 0; i < n; i++) {
+            int cx = Math.min(width - 1, (int) ((xs[i] - minX) / cell));
+            int cy = Math.min(height - 1, (int) ((ys[i] - minY) / cell));
+            cellOf[i] = cy * width + cx;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < width * height; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] inCell = new int[n];
+        int[] filled = Arrays.copyOf(cellStart, width * height);
+        for (int i = 0; i < n; i++) {
+            inCell[filled[cellOf[i]]++] = i;
+        }
+
+        // the edges to the nearest foot in each cone
+        final int[] from = new int[CONES * n];
+        final int[] to = new int[CONES * n];
+        final double[] length2 = new double[CONES * n];
+        int numEdges = 0;
+        int[] nearest = new int[CONES];
+        double[] nearest2 = new double[CONES];
+        int[] lastRing = new int[CONES];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(nearest, -1);
+            Arrays.fill(nearest2, Double.POSITIVE_INFINITY);
+            int cx = cellOf[i] % width;
+            int cy = cellOf[i] / width;
+            int maxRing = Math.max(Math.max(cx, width - 1 - cx), Math.max(cy, height - 1 - cy));
+            // beyond these rings there are no more cells in each cone
+            for (int cone = 0; cone < CONES; cone++) {
+                lastRing[cone] = Math.min(maxRing, 1 + (int) (coneReach(xs[i], ys[i], cone,
+                        minX, minY, maxX, maxY) / cell));
+            }
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int y = cy - ring; y <= cy + ring; y++) {
+                    if (y < 0 || y >= height) {
+                        continue;
+                    }
+                    // the whole row at the top and bottom of the ring, else its two ends
+                    int step = (y == cy - ring || y == cy + ring) ? 1 : Math.max(1, 2 * ring);
+                    for (int x = cx - ring; x <= cx + ring; x += step) {
+                        if (x < 0 || x >= width) {
+                            continue;
+                        }
+                        int c = y * width + x;
+                        for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                            int j = inCell[k];
+                            if (j == i) {
+                                continue;
+                            }
+                            double dx = xs[j] - xs[i];
+                            double dy = ys[j] - ys[i];
+                            double d2 = dx * dx + dy * dy;
+                            int cone = cone(dx, dy);
+                            if (d2 < nearest2[cone] || (d2 == nearest2[cone] && j < nearest[cone])) {
+                                nearest2[cone] = d2;
+                                nearest[cone] = j;
+                            }
+                        }
+                    }
+                }
+                // feet beyond this ring are at least ring cells away
+                double reach = ring * cell;
+                boolean done = true;
+                for (int cone = 0; cone < CONES; cone++) {
+                    if (nearest2[cone] >= reach * reach && ring < lastRing[cone]) {
+                        done = false;
+                        break;
+                    }
+                }
+                if (done) {
+                    break;
+                }
+            }
+            for (int cone = 0; cone < CONES; cone++) {
+                if (nearest[cone] >= 0) {
+                    from[numEdges] = Math.min(i, nearest[cone]);
+                    to[numEdges] = Math.max(i, nearest[cone]);
+                    length2[numEdges] = nearest2[cone];
+                    numEdges++;
+                }
+            }
+        }
+
+        // Kruskal's algorithm, shortest edges first, ties by feet
+        Integer[] order = new Integer[numEdges];
+        for (int e = 0; e < numEdges; e++) {
+            order[e] = e;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int result = Double.compare(length2[a], length2[b]);
+                if (result == 0) {
+                    result = from[a] - from[b];
+                }
+                if (result == 0) {
+                    result = to[a] - to[b];
+                }
+                return result;
+            }
+        });
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (int k = 0; k < numEdges && result.size() < n - 1; k++) {
+            int e = order[k];
+            int a = root(parent, from[e]);
+            int b = root(parent, to[e]);
+            if (a == b) {
+                continue;
+            }
+            parent[Math.max(a, b)] = Math.min(a, b);
+            result.add(new ConcreteSpiderLeg(feet.get(from[e]), feet.get(to[e])));
+        }
+        return result;
+    }
+
+    /**
+     * @return which of the CONES equal cones of directions, counted
+     *         anticlockwise from the positive x axis, holds (dx, dy).
+     */
+    private static int cone(double dx, double dy) {
+        double angle = Math.atan2(dy, dx);
+        if (angle < 0) {
+            angle += 2 * Math.PI;
+        }
+        int result = (int) (angle * CONES / (2 * Math.PI));
+        return Math.min(result, CONES - 1);
+    }
+
+    /**
+     * @return how far, in x or y, a cone of directions from (x, y) reaches
+     *         before it leaves the box around the feet.
+     */
+    private static double coneReach(double x, double y, int cone,
+            double minX, double minY, double maxX, double maxY) {
+        // the farthest corner of the part of the box in the cone: the end of
+        // one of its sides, or a corner of the box
+        double result = 0;
+        for (int side = 0; side <= 1; side++) {
+            double angle = (cone + side) * 2 * Math.PI / CONES;
+            double dx = Math.cos(angle);
+            double dy = Math.sin(angle);
+            double t = Double.POSITIVE_INFINITY;
+            if (dx > 0) {
+                t = Math.min(t, (maxX - x) / dx);
+            } else if (dx < 0) {
+                t = Math.min(t, (minX - x) / dx);
+            }
+            if (dy > 0) {
+                t = Math.min(t, (maxY - y) / dy);
+            } else if (dy < 0) {
+                t = Math.min(t, (minY - y) / dy);
+            }
+            result = Math.max(result, t * Math.max(Math.abs(dx), Math.abs(dy)));
+        }
+        double[] cornerXs = {minX, maxX};
+        double[] cornerYs = {minY, maxY};
+        for (double cornerX : cornerXs) {
+            for (double cornerY : cornerYs) {
+                double dx = cornerX - x;
+                double dy = cornerY - y;
+                if ((dx != 0 || dy != 0) && cone(dx, dy) == cone) {
+                    result = Math.max(result, Math.max(Math.abs(dx), Math.abs(dy)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
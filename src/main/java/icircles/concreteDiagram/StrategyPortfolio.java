@@ -0,0 +1,421 @@
+package icircles.concreteDiagram;
+
+import icircles.abstractDescription.AbstractDescription;
+import icircles.decomposition.DecompositionStrategy;
+import icircles.recomposition.RecompositionStrategy;
+import icircles.util.CannotDrawException;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Lays out a description with every pairing of decomposition and
+ * recomposition strategy at once, rather than trying the pairings one after
+ * another until one works.
+ *
+ * The attempts run on a bounded pool of threads.  Depending on the mode, the
+ * first layout found is returned, or all attempts are given until a deadline
+ * and the best layout among those finished is returned.  Attempts still
+ * running are then interrupted, and give up at their next build step.
+ *
+ * A layout is better than another if it needs fewer circles, and otherwise
+ * if its smallest circle is larger relative to the whole diagram.  Equally
+ * good layouts go to the pairing which comes first in {@link #DECOMP_STRATEGIES}
+ * then {@link #RECOMP_STRATEGIES} order, so the best layout does not depend on
+ * the order in which the attempts happen to finish.
+ *
+ * The portfolio counts, for each pairing, how often it was tried, how often
+ * it succeeded, failed, was interrupted or won, and how long it took.
+ */
+public class StrategyPortfolio {
+
+    static Logger logger = Logger.getLogger(StrategyPortfolio.class.getName());
+
+    /** Return the first layout found. */
+    public static final int FIRST_SUCCESS = 0;
+    /** Return the best layout found before the deadline. */
+    public static final int BEST_BY_DEADLINE = 1;
+
+    static final int[] DECOMP_STRATEGIES = {
+        DecompositionStrategy.SORT_ORDER,
+        DecompositionStrategy.SORT_ORDER_REV,
+        DecompositionStrategy.INNERMOST,
+        DecompositionStrategy.PIERCEDFIRST};
+    static final int[] RECOMP_STRATEGIES = {
+        RecompositionStrategy.RECOMPOSE_NESTED,
+        RecompositionStrategy.RECOMPOSE_SINGLY_PIERCED,
+        RecompositionStrategy.RECOMPOSE_DOUBLY_PIERCED};
+    // layouts are compared at this canvas size
+    static final int SCORING_SIZE = 1000;
+
+    private final ExecutorService m_executor;
+    private final boolean m_own_executor;
+    private final Statistics[][] m_stats;
+
+    /**
+     * @param threads the number of attempts to run at once.
+     */
+    public StrategyPortfolio(int threads) {
+        this(Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "layout strategy");
+                t.setDaemon(true);
+                return t;
+            }
+        }), true);
+    }
+
+    /**
+     * Runs the attempts on the given executor, which the caller shuts down.
+     */
+    public StrategyPortfolio(ExecutorService executor) {
+        this(executor, false);
+    }
+
+    private StrategyPortfolio(ExecutorService executor, boolean own_executor) {
+        m_executor = executor;
+        m_own_executor = own_executor;
+        m_stats = new Statistics[DECOMP_STRATEGIES.length][RECOMP_STRATEGIES.length];
+        for (int d = 0; d < DECOMP_STRATEGIES.length; d++) {
+            for (int r = 0; r < RECOMP_STRATEGIES.length; r++) {
+                m_stats[d][r] = new Statistics();
+            }
+        }
+    }
+
+    /**
+     * Lays out the description with all pairings of strategies.
+     *
+     * @param mode {@link #FIRST_SUCCESS} or {@link #BEST_BY_DEADLINE}.
+     * @param timeout_ms how long to wait for layouts, or 0 to wait until
+     *        every attempt has finished (in {@link #BEST_BY_DEADLINE} mode) or
+     *        one has succeeded (in {@link #FIRST_SUCCESS} mode).
+     * @return the layout, or null if no pairing could place the circles.
+     * @throws CannotDrawException if every pairing finds the description
+     *         cannot be drawn, or none succeeds before the deadline.
+     */
+    public DiagramLayout createLayout(AbstractDescription ad, int mode, long timeout_ms)
+            throws CannotDrawException {
+        Attempt best = race(ad, 0, mode, timeout_ms);
+        return best == null ? null : best.m_layout;
+    }
+
+    /**
+     * As {@link #createLayout}, but each pairing also draws its layout at the
+     * given size, and only a pairing which both lays out and draws the
+     * diagram counts as a success.  Spiders are placed when the diagram is
+     * drawn, and a layout which one pairing cannot fit its spiders into may
+     * be drawn by another.
+     *
+     * @return the diagram, or null if no pairing could place the circles.
+     * @throws CannotDrawException if every pairing finds the description
+     *         cannot be drawn, or none succeeds before the deadline.
+     */
+    public ConcreteDiagram createDiagram(AbstractDescription ad, int size, int mode, long timeout_ms)
+            throws CannotDrawException {
+        Attempt best = race(ad, size, mode, timeout_ms);
+        return best == null ? null : best.m_diagram;
+    }
+
+    /**
+     * Runs every pairing, drawing at the given size unless it is 0.
+     *
+     * @return the winning attempt, or null if no pairing could place the
+     *         circles.
+     */
+    private Attempt race(AbstractDescription ad, int size, int mode, long timeout_ms)
+            throws CannotDrawException {
+        if (mode != FIRST_SUCCESS && mode != BEST_BY_DEADLINE) {
+            throw new IllegalArgumentException("unknown portfolio mode " + mode);
+        }
+        if (!ad.checksOk()) {
+            // not drawable
+            throw new CannotDrawException("badly formed diagram spec");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout_ms);
+
+        CompletionService<Attempt> done = new ExecutorCompletionService<Attempt>(m_executor);
+        ArrayList<Future<Attempt>> futures = new ArrayList<Future<Attempt>>();
+        for (int d = 0; d < DECOMP_STRATEGIES.length; d++) {
+            for (int r = 0; r < RECOMP_STRATEGIES.length; r++) {
+                futures.add(done.submit(new Attempt(ad, d, r, size)));
+            }
+        }
+
+        Attempt best = null;
+        String failure = null;
+        int failure_index = Integer.MAX_VALUE;
+        boolean any_null = false;
+        try {
+            for (int finished = 0; finished < futures.size(); finished++) {
+                Future<Attempt> f;
+                if (timeout_ms > 0) {
+                    f = done.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (f == null) {
+                        logger.debug("portfolio deadline passed");
+                        break;
+                    }
+                } else {
+                    f = done.take();
+                }
+                Attempt a;
+                try {
+                    a = f.get();
+                } catch (ExecutionException x) {
+                    // a bug rather than an undrawable diagram; keep going
+                    logger.error("layout strategy failed", x.getCause());
+                    continue;
+                }
+                if (a.m_failure != null) {
+                    if (a.index() < failure_index) {
+                        failure = a.m_failure;
+                        failure_index = a.index();
+                    }
+                } else if (a.m_layout == null) {
+                    any_null = true;
+                } else if (best == null || a.isBetterThan(best)) {
+                    best = a;
+                    if (mode == FIRST_SUCCESS) {
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new CannotDrawException("layout interrupted");
+        } finally {
+            for (Future<Attempt> f : futures) {
+                f.cancel(true);
+            }
+        }
+
+        if (best != null) {
+            m_stats[best.m_decomp][best.m_recomp].won();
+            return best;
+        }
+        if (failure != null && !any_null) {
+            throw new CannotDrawException(failure);
+        }
+        if (!any_null) {
+            throw new CannotDrawException("no layout strategy succeeded in time");
+        }
+        return null;
+    }
+
+    /**
+     * The counts for one pairing of strategies.
+     *
+     * @param decomp_strategy one of the DecompositionStrategy constants.
+     * @param recomp_strategy one of the RecompositionStrategy constants.
+     */
+    public Statistics getStatistics(int decomp_strategy, int recomp_strategy) {
+        for (int d = 0; d < DECOMP_STRATEGIES.length; d++) {
+            for (int r = 0; r < RECOMP_STRATEGIES.length; r++) {
+                if (DECOMP_STRATEGIES[d] == decomp_strategy
+                        && RECOMP_STRATEGIES[r] == recomp_strategy) {
+                    return m_stats[d][r];
+                }
+            }
+        }
+        throw new IllegalArgumentException("unknown strategies "
+                + decomp_strategy + ", " + recomp_strategy);
+    }
+
+    public void resetStatistics() {
+        for (Statistics[] row : m_stats) {
+            for (Statistics s : row) {
+                s.reset();
+            }
+        }
+    }
+
+    /**
+     * Stops the pool of threads, if the portfolio made it.
+     */
+    public void shutdown() {
+        if (m_own_executor) {
+            m_executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (int d = 0; d < DECOMP_STRATEGIES.length; d++) {
+            for (int r = 0; r < RECOMP_STRATEGIES.length; r++) {
+                b.append(DecompositionStrategy.text_for(DECOMP_STRATEGIES[d]));
+                b.append(" / ");
+                b.append(RecompositionStrategy.text_for(RECOMP_STRATEGIES[r]));
+                b.append(" : ");
+                b.append(m_stats[d][r]);
+                b.append("\n");
+            }
+        }
+        return b.toString();
+    }
+
+    private final class Attempt implements Callable<Attempt> {
+
+        final AbstractDescription m_ad;
+        final int m_decomp;
+        final int m_recomp;
+        // the size to draw at, or 0 for the layout alone
+        final int m_size;
+        DiagramLayout m_layout;
+        ConcreteDiagram m_diagram;
+        String m_failure;
+        int m_num_circles;
+        double m_smallest_radius;
+
+        Attempt(AbstractDescription ad, int decomp, int recomp, int size) {
+            m_ad = ad;
+            m_decomp = decomp;
+            m_recomp = recomp;
+            m_size = size;
+        }
+
+        int index() {
+            return m_decomp * RECOMP_STRATEGIES.length + m_recomp;
+        }
+
+        public Attempt call() {
+            Statistics stats = m_stats[m_decomp][m_recomp];
+            stats.started();
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                DiagramCreator dc = new DiagramCreator(m_ad,
+                        DecompositionStrategy.getStrategy(DECOMP_STRATEGIES[m_decomp]),
+                        RecompositionStrategy.getStrategy(RECOMP_STRATEGIES[m_recomp]));
+                m_layout = dc.createLayout();
+                if (m_layout != null) {
+                    if (m_size > 0) {
+                        m_diagram = m_layout.makeDiagram(m_size);
+                    }
+                    score();
+                }
+                ok = true;
+            } catch (CannotDrawException x) {
+                m_failure = x.message;
+                ok = true;
+            } finally {
+                if (Thread.currentThread().isInterrupted()) {
+                    stats.interrupted();
+                } else {
+                    stats.finished(ok && m_failure == null && m_layout != null,
+                            System.nanoTime() - start);
+                }
+            }
+            return this;
+        }
+
+        private void score() {
+            ArrayList<CircleContour> circles = m_layout.getCircles(SCORING_SIZE);
+            m_num_circles = circles.size();
+            m_smallest_radius = Double.MAX_VALUE;
+            for (CircleContour c : circles) {
+                m_smallest_radius = Math.min(m_smallest_radius, c.get_radius());
+            }
+        }
+
+        boolean isBetterThan(Attempt other) {
+            if (m_num_circles != other.m_num_circles) {
+                return m_num_circles < other.m_num_circles;
+            }
+            if (m_smallest_radius != other.m_smallest_radius) {
+                return m_smallest_radius > other.m_smallest_radius;
+            }
+            return index() < other.index();
+        }
+    }
+
+    /**
+     * How one pairing of strategies has fared.  Interrupted attempts are not
+     * counted as failures, and their time is not included.
+     */
+    public static final class Statistics {
+
+        private long m_attempts;
+        private long m_successes;
+        private long m_failures;
+        private long m_interrupted;
+        private long m_wins;
+        private long m_nanos;
+
+        synchronized void started() {
+            m_attempts++;
+        }
+
+        synchronized void finished(boolean success, long nanos) {
+            if (success) {
+                m_successes++;
+            } else {
+                m_failures++;
+            }
+            m_nanos += nanos;
+        }
+
+        synchronized void interrupted() {
+            m_interrupted++;
+        }
+
+        synchronized void won() {
+            m_wins++;
+        }
+
+        synchronized void reset() {
+            m_attempts = 0;
+            m_successes = 0;
+            m_failures = 0;
+            m_interrupted = 0;
+            m_wins = 0;
+            m_nanos = 0;
+        }
+
+        public synchronized long getAttempts() {
+            return m_attempts;
+        }
+
+        public synchronized long getSuccesses() {
+            return m_successes;
+        }
+
+        public synchronized long getFailures() {
+            return m_failures;
+        }
+
+        public synchronized long getInterrupted() {
+            return m_interrupted;
+        }
+
+        public synchronized long getWins() {
+            return m_wins;
+        }
+
+        /**
+         * @return the mean time of the attempts which ran to completion, in
+         *         milliseconds, or 0 if there were none.
+         */
+        public synchronized double getMeanMillis() {
+            long completed = m_successes + m_failures;
+            return completed == 0 ? 0 : m_nanos / 1e6 / completed;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "attempts " + m_attempts + ", successes " + m_successes
+                    + ", failures " + m_failures + ", interrupted " + m_interrupted
+                    + ", wins " + m_wins + ", mean " + getMeanMillis() + " ms";
+        }
+    }
+}
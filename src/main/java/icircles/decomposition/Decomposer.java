@@ -39,6 +39,7 @@ import java.util.TreeSet;
 import icircles.abstractDescription.AbstractDescription;
 import icircles.abstractDescription.AbstractCurve;
 import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.PersistentSortedSet;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.Level;
@@ -58,23 +59,25 @@ public class Decomposer {
         s = DecompositionStrategy.getStrategy();
     }
 
-    private DecompositionStep take_step(AbstractDescription ad, AbstractCurve c) {
+    private DecompositionStep take_step(AbstractDescription ad, AbstractCurve c,
+            ZoneIncidence incidence) {
         if (c == null) {
             return null;
         }
+        incidence.remove(c);
 
         // otherwise, make a new AbstractDescription
-        TreeSet<AbstractCurve> contours = ad.getCopyOfContours();
-        contours.remove(c);
+        // sharing all but the zones which move with the description before
+        PersistentSortedSet<AbstractCurve> contours = ad.getContourSet().without(c);
 
         Iterator<AbstractBasicRegion> zoneIt = ad.getZoneIterator();
-        TreeSet<AbstractBasicRegion> zones = new TreeSet<AbstractBasicRegion>();
+        PersistentSortedSet<AbstractBasicRegion> zones = ad.getZoneSet();
         TreeMap<AbstractBasicRegion, AbstractBasicRegion> zones_moved = new TreeMap<AbstractBasicRegion, AbstractBasicRegion>();
         while (zoneIt.hasNext()) {
             AbstractBasicRegion z = zoneIt.next();
             AbstractBasicRegion znew = z.moveOutside(c);
-            zones.add(znew);
             if (z != znew) {
+                zones = zones.without(z).with(znew);
                 zones_moved.put(z, znew);
             }
         }
@@ -90,16 +93,17 @@ public class Decomposer {
         }
 
         ArrayList<DecompositionStep> result = new ArrayList<DecompositionStep>();
+        ZoneIncidence incidence = new ZoneIncidence(ad);
         while_loop:
         while (true) {
-            s.getContoursToRemove(ad, toRemove);
+            s.getContoursToRemove(ad, incidence, toRemove);
 
             if (toRemove.size() == 0) {
                 break while_loop;
             }
 
             for (AbstractCurve c : toRemove) {
-                DecompositionStep step = take_step(ad, c);
+                DecompositionStep step = take_step(ad, c, incidence);
                 if (step == null) {
                     break while_loop;
                 }
@@ -108,11 +112,14 @@ public class Decomposer {
             }
         }
 
-        logger.debug("decomposition begin : ");
-        for (DecompositionStep step : result) {
+        if (logger.isDebugEnabled()) {
+            // the step descriptions are costly to build
+            logger.debug("decomposition begin : ");
+            for (DecompositionStep step : result) {
                 logger.debug("step : " + step.debug());
+            }
+            logger.debug("decomposition end ");
         }
-        logger.debug("decomposition end ");
 
         return result;
     }
@@ -48,9 +48,22 @@ public abstract class DecompositionStrategy {
         "decompose in reverse alphabetic order",
         "decompose using fewest-zone contours first",
         "decompose using piercing curves first"};
-    public static int strategy = PIERCEDFIRST;
+    /**
+     * The strategy used by a {@link Decomposer} made without one.  Each
+     * Decomposer reads this once, when it is made, so changing it does not
+     * affect decompositions already under way on other threads.
+     */
+    public static volatile int strategy = PIERCEDFIRST;
 
-    abstract void getContoursToRemove(AbstractDescription ad, ArrayList<AbstractCurve> toRemove);
+    /**
+     * Chooses the next contours to take out of ad.
+     *
+     * @param zones the zones inside each contour of ad, kept up to date by
+     *        the {@link Decomposer}.
+     * @param toRemove cleared, then filled with the contours to remove.
+     */
+    abstract void getContoursToRemove(AbstractDescription ad, ZoneIncidence zones,
+            ArrayList<AbstractCurve> toRemove);
 
     public static DecompositionStrategy getStrategy() {
         return getStrategy(strategy);
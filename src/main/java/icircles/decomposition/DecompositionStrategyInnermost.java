@@ -36,7 +36,6 @@ import java.util.Iterator;
 
 import icircles.abstractDescription.AbstractDescription;
 import icircles.abstractDescription.AbstractCurve;
-import icircles.abstractDescription.AbstractBasicRegion;
 
 import org.apache.log4j.Logger;
 
@@ -44,7 +43,8 @@ public class DecompositionStrategyInnermost extends DecompositionStrategy {
 
     static Logger logger = Logger.getLogger(DecompositionStrategyInnermost.class.getName());
 
-    void getContoursToRemove(AbstractDescription ad, ArrayList<AbstractCurve> toRemove) {
+    void getContoursToRemove(AbstractDescription ad, ZoneIncidence zones,
+            ArrayList<AbstractCurve> toRemove) {
         toRemove.clear();
         logger.debug("recomposition stratgey is innermost");
 
@@ -54,14 +54,7 @@ public class DecompositionStrategyInnermost extends DecompositionStrategy {
         Iterator<AbstractCurve> c_it = ad.getContourIterator();
         while (c_it.hasNext()) {
             AbstractCurve c = c_it.next();
-            int num_zones = 0;
-            Iterator<AbstractBasicRegion> z_it = ad.getZoneIterator();
-            while (z_it.hasNext()) {
-                AbstractBasicRegion z = z_it.next();
-                if (z.isIn(c)) {
-                    num_zones++;
-                }
-            }
+            int num_zones = zones.getNumZonesInside(c);
             if (num_zones < best_num_zones) {
                 best_num_zones = num_zones;
                 best_contour = c;
@@ -47,7 +47,8 @@ public class DecompositionStrategyUseSortOrder extends DecompositionStrategy {
         logger.debug ("recomposition stratgey is alphabetic: " + (m_natural_order? "natural order":"reversed order"));
     }
 
-    void getContoursToRemove(AbstractDescription ad, ArrayList<AbstractCurve> toRemove) {
+    void getContoursToRemove(AbstractDescription ad, ZoneIncidence zones,
+            ArrayList<AbstractCurve> toRemove) {
         toRemove.clear();
         if (m_natural_order) {
             toRemove.add(ad.getFirstContour());
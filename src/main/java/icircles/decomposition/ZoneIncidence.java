@@ -0,0 +1,169 @@
+package icircles.decomposition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.abstractDescription.AbstractDescription;
+import icircles.abstractDescription.ZoneBits;
+
+/**
+ * Which zones lie inside each contour of a description being decomposed.
+ *
+ * A {@link Decomposer} builds this once for the description it starts from,
+ * then updates it as each contour is removed.  Only the zones inside the
+ * removed contour move, so only the entries for the contours around those
+ * zones change.  Strategies can then ask how many zones a contour holds, or
+ * whether it is a piercing curve, without scanning every zone again at every
+ * step.
+ *
+ * Zones are held as {@link ZoneBits} relative to the starting description,
+ * in hash sets, so the zone a contour's removal moves a zone to - and the
+ * partner a piercing curve needs for each zone inside it - is a single hash
+ * probe away.
+ */
+class ZoneIncidence {
+
+    private final AbstractDescription m_initial;
+    private final HashSet<ZoneBits> m_zones = new HashSet<ZoneBits>();
+    // by contour index in m_initial; null once the contour is removed
+    private final HashSet<ZoneBits>[] m_inside;
+    // worked out on demand, and forgotten when a contour's zones change
+    private final Boolean[] m_piercing;
+    // contours found not to be piercing for want of the zone used as key
+    private final HashMap<ZoneBits, ArrayList<Integer>> m_awaiting =
+            new HashMap<ZoneBits, ArrayList<Integer>>();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ZoneIncidence(AbstractDescription ad) {
+        m_initial = ad;
+        int numContours = ad.getNumContours();
+        m_inside = new HashSet[numContours];
+        m_piercing = new Boolean[numContours];
+        for (int i = 0; i < numContours; i++) {
+            m_inside[i] = new HashSet<ZoneBits>();
+        }
+        Iterator<AbstractBasicRegion> z_it = ad.getZoneIterator();
+        while (z_it.hasNext()) {
+            ZoneBits z = ad.getZoneBits(z_it.next());
+            m_zones.add(z);
+            for (int i = z.nextContour(0); i >= 0; i = z.nextContour(i + 1)) {
+                m_inside[i].add(z);
+            }
+        }
+    }
+
+    int getNumZonesInside(AbstractCurve c) {
+        return m_inside[m_initial.getContourIndex(c)].size();
+    }
+
+    /**
+     * A piercing curve splits 2^n zones, which all lie inside some zone z
+     * and between them use at most n contours beyond those of z.  Removing
+     * it leaves every zone it held in place.
+     */
+    boolean isPiercing(AbstractCurve c) {
+        int ci = m_initial.getContourIndex(c);
+        Boolean result = m_piercing[ci];
+        if (result == null) {
+            result = Boolean.valueOf(computePiercing(ci));
+            m_piercing[ci] = result;
+        }
+        return result.booleanValue();
+    }
+
+    private boolean computePiercing(int ci) {
+        HashSet<ZoneBits> zonesInContour = m_inside[ci];
+        // every zone in c must have a partner just outside c
+        for (ZoneBits z : zonesInContour) {
+            ZoneBits partner = z.without(ci);
+            if (!m_zones.contains(partner)) {
+                ArrayList<Integer> awaiting = m_awaiting.get(partner);
+                if (awaiting == null) {
+                    awaiting = new ArrayList<Integer>();
+                    m_awaiting.put(partner, awaiting);
+                }
+                awaiting.add(ci);
+                return false;
+            }
+        }
+        // check that the zones in c form a cluster - we need 2^n zones
+        int power = powerOfTwo(zonesInContour.size());
+        if (power < 0) {
+            return false;
+        }
+
+        // find the smallest zone (one in fewest contours)
+        ZoneBits smallestZone = null;
+        for (ZoneBits z : zonesInContour) {
+            if (smallestZone == null || z.getNumContours() < smallestZone.getNumContours()) {
+                smallestZone = z;
+            }
+        }
+        // every other zone in c must be a superset of that zone, and between
+        // them they must add no more than n contours
+        boolean[] addedContours = new boolean[m_inside.length];
+        int numAdded = 0;
+        for (ZoneBits z : zonesInContour) {
+            if (!smallestZone.isSubsetOf(z)) {
+                return false;
+            }
+            for (int i = z.nextContour(0); i >= 0; i = z.nextContour(i + 1)) {
+                if (!smallestZone.isIn(i) && !addedContours[i]) {
+                    addedContours[i] = true;
+                    numAdded++;
+                    if (numAdded > power) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes c out of the description, moving each zone inside it outside.
+     * A moved zone either merges with the zone already there or takes its
+     * place in the entries of the other contours around it.
+     */
+    void remove(AbstractCurve c) {
+        int ci = m_initial.getContourIndex(c);
+        HashSet<ZoneBits> moving = m_inside[ci];
+        m_inside[ci] = null;
+        m_piercing[ci] = null;
+        for (ZoneBits z : moving) {
+            ZoneBits moved = z.without(ci);
+            m_zones.remove(z);
+            boolean merged = !m_zones.add(moved);
+            if (!merged) {
+                // this may be the missing partner of a zone in some contour
+                ArrayList<Integer> awaiting = m_awaiting.remove(moved);
+                if (awaiting != null) {
+                    for (int d : awaiting) {
+                        m_piercing[d] = null;
+                    }
+                }
+            }
+            for (int d = moved.nextContour(0); d >= 0; d = moved.nextContour(d + 1)) {
+                HashSet<ZoneBits> inside = m_inside[d];
+                inside.remove(z);
+                if (!merged) {
+                    // when merged, the zone already there is inside d too
+                    inside.add(moved);
+                }
+                m_piercing[d] = null;
+            }
+        }
+    }
+
+    private static int powerOfTwo(int n) // return result where  n = 2^(result)
+    {
+        if (n <= 0 || (n & (n - 1)) != 0) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(n);
+    }
+}
@@ -288,11 +288,11 @@ public class CirclesPanel extends JPanel {
             }
             g.setColor(Color.black);
             for (ConcreteSpider s : diagram.getSpiders()) {
-                for (ConcreteSpiderFoot foot : s.feet) {
+                for (ConcreteSpiderFoot foot : s.getFeet()) {
                     Ellipse2D.Double blob = foot.getBlob();
                     ((Graphics2D) g).fill(transformCircle(trans, blob));
                 }
-                for (ConcreteSpiderLeg leg : s.legs) {
+                for (ConcreteSpiderLeg leg : s.getLegs()) {
 
                     ((Graphics2D) g).drawLine(
                             (int) (leg.from.getX() * scaleFactor),
@@ -300,14 +300,14 @@ public class CirclesPanel extends JPanel {
                             (int) (leg.to.getX() * scaleFactor),
                             (int) (leg.to.getY() * scaleFactor));
                 }
-                if (s.as.getName() == null) {
+                if (s.getAbstractSpider().getName() == null) {
                     continue;
                 }
                 // TODO a proper way to place labels - it can't be a method in ConcreteSpider,
                 // we need the context in the ConcreteDiagram
-                ((Graphics2D) g).drawString(s.as.getName(),
-                        (int) ((s.feet.get(0).getX() - 5) * trans.getScaleX()),
-                        (int) ((s.feet.get(0).getY() + 18) * trans.getScaleY()));
+                ((Graphics2D) g).drawString(s.getAbstractSpider().getName(),
+                        (int) ((s.getFeet().get(0).getX() - 5) * trans.getScaleX()),
+                        (int) ((s.getFeet().get(0).getY() + 18) * trans.getScaleY()));
             }
         }
 
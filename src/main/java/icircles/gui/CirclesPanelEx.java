@@ -264,7 +264,7 @@ public class CirclesPanelEx extends JPanel {
                     g2d.setStroke(HIGHLIGHT_STROKE);
                 }
 
-                for (ConcreteSpiderLeg leg : s.legs) {
+                for (ConcreteSpiderLeg leg : s.getLegs()) {
 
                     g2d.drawLine(
                             (int) (leg.from.getX() * scaleFactor),
@@ -273,7 +273,7 @@ public class CirclesPanelEx extends JPanel {
                             (int) (leg.to.getY() * scaleFactor));
                 }
 
-                for (ConcreteSpiderFoot foot : s.feet) {
+                for (ConcreteSpiderFoot foot : s.getFeet()) {
                     foot.getBlob(tmpCircle);
                     Color oldColor2 = g2d.getColor();
                     translateCircleCentre(scaleFactor, tmpCircle, tmpCircle);
@@ -287,14 +287,14 @@ public class CirclesPanelEx extends JPanel {
                         g2d.setColor(oldColor2);
                     }
                 }
-                if (s.as.getName() == null) {
+                if (s.getAbstractSpider().getName() == null) {
                     continue;
                 }
                 // TODO a proper way to place labels - it can't be a method in ConcreteSpider,
                 // we need the context in the ConcreteDiagram
-                g2d.drawString(s.as.getName(),
-                               (int) ((s.feet.get(0).getX()) * trans.getScaleX()) - 5,
-                               (int) ((s.feet.get(0).getY()) * trans.getScaleY()) - 10);
+                g2d.drawString(s.getAbstractSpider().getName(),
+                               (int) ((s.getFeet().get(0).getX()) * trans.getScaleX()) - 5,
+                               (int) ((s.getFeet().get(0).getY()) * trans.getScaleY()) - 10);
 
                 // Reset the stroke and colour appropriatelly.
                 if (highlightedSpider == s) {
@@ -31,7 +31,7 @@ public class ConcreteDiagramPointQuery {
         }
         boolean done = false;
         for (ConcreteSpider s : cd.getSpiders()) {
-            for (ConcreteSpiderFoot f : s.feet) {
+            for (ConcreteSpiderFoot f : s.getFeet()) {
                 double dist = Math.sqrt((p.x - f.getX()) * (p.x - f.getX())
                         + (p.y - f.getY()) * (p.y - f.getY()));
                 if (dist < ConcreteSpiderFoot.FOOT_RADIUS + tol) {
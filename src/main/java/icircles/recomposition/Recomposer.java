@@ -41,6 +41,7 @@ import java.util.TreeSet;
 import icircles.abstractDescription.AbstractDescription;
 import icircles.abstractDescription.AbstractCurve;
 import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.PersistentSortedSet;
 
 import icircles.decomposition.DecompositionStep;
 
@@ -51,6 +52,9 @@ public class Recomposer {
     static Logger logger = Logger.getLogger(Recomposer.class.getName());
 
     RecompositionStrategy strategy;
+    // ids for the copies of removed contours, counted per recomposition so
+    // that the same decomposition always recomposes to the same curves
+    int next_curve_id;
 
     public Recomposer(RecompositionStrategy recompStrategy) {
         strategy = recompStrategy;
@@ -65,6 +69,13 @@ public class Recomposer {
         TreeMap<AbstractBasicRegion, AbstractBasicRegion> matched_zones =
                 new TreeMap<AbstractBasicRegion, AbstractBasicRegion>(new ABRComparator());
         int n = decomp_steps.size();
+        next_curve_id = 1;
+        if (n > 0) {
+            Iterator<AbstractCurve> it = decomp_steps.get(0).from().getContourIterator();
+            while (it.hasNext()) {
+                next_curve_id = Math.max(next_curve_id, it.next().getId() + 1);
+            }
+        }
         ArrayList<RecompositionStep> result =
                 new ArrayList<RecompositionStep>(n);
         for (int i = n - 1; i >= 0; i--) {
@@ -77,11 +88,13 @@ public class Recomposer {
             }
         }
 
-        logger.info("recomposition begin : ");
-        for (RecompositionStep step : result) {
-            logger.info("step : " + step.debug());
+        if (logger.isInfoEnabled()) {
+            logger.info("recomposition begin : ");
+            for (RecompositionStep step : result) {
+                logger.info("step : " + step.debug());
+            }
+            logger.info("recomposition end ");
         }
-        logger.info("recomposition end ");
 
         return result;
     }
@@ -123,23 +136,26 @@ public class Recomposer {
             // Partition zones_to_split
             ArrayList<Cluster> clusters = strategy.make_clusters(zones_to_split);
 
-            for (Cluster c : clusters) {
-                logger.info("cluster for recomposition is " + c.debug());
+            if (logger.isInfoEnabled()) {
+                for (Cluster c : clusters) {
+                    logger.info("cluster for recomposition is " + c.debug());
+                }
             }
 
-            TreeSet<AbstractBasicRegion> new_zone_set = from.getCopyOfZones();
-            TreeSet<AbstractCurve> new_cont_set = from.getCopyOfContours();
+            // sharing all but the added zones with the description before
+            PersistentSortedSet<AbstractBasicRegion> new_zone_set = from.getZoneSet();
+            PersistentSortedSet<AbstractCurve> new_cont_set = from.getContourSet();
             // for each cluster, make a Contour with label
             for (Cluster cluster : clusters) {
-                AbstractCurve new_cont = was_removed.clone();
+                AbstractCurve new_cont = was_removed.clone(next_curve_id++);
                 ArrayList<AbstractBasicRegion> split_zones = new ArrayList<AbstractBasicRegion>();
                 ArrayList<AbstractBasicRegion> added_zones = new ArrayList<AbstractBasicRegion>();
-                new_cont_set.add(new_cont);
+                new_cont_set = new_cont_set.with(new_cont);
                 ArrayList<AbstractBasicRegion> cluster_zones = cluster.zones();
                 for (AbstractBasicRegion z : cluster_zones) {
                     split_zones.add(z);
                     AbstractBasicRegion new_zone = z.movedIn(new_cont);
-                    new_zone_set.add(new_zone);
+                    new_zone_set = new_zone_set.with(new_zone);
                     added_zones.add(new_zone);
                     AbstractBasicRegion decomp_z = matched_inverse.get(z);
                     //System.out.println("zone "+z.debug()+" has matched inverse "+decomp_z.debug());
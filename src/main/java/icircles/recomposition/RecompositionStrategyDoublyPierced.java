@@ -73,14 +73,18 @@ public class RecompositionStrategyDoublyPierced extends RecompositionStrategy {
             result.add(c);
 
             logger.debug("made cluster " + (c.debug()) + "\n");
-            logger.debug("graph before trimming for cluster " + (adg.debug()) + "\n");
+            if (logger.isDebugEnabled()) {
+                logger.debug("graph before trimming for cluster " + (adg.debug()) + "\n");
+            }
 
             adg.remove(nodes.get(0));
             adg.remove(nodes.get(1));
             adg.remove(nodes.get(2));
             adg.remove(nodes.get(3));
 
-            logger.debug("graph after trimming for cluster " + adg.debug() + "\n");
+            if (logger.isDebugEnabled()) {
+                logger.debug("graph after trimming for cluster " + adg.debug() + "\n");
+            }
         }
 
         result.addAll(RecompositionStrategySinglyPierced.seekSinglePiercings(adg));
@@ -66,12 +66,16 @@ public class RecompositionStrategySinglyPierced extends RecompositionStrategy {
             result.add(c);
 
             logger.debug("made single-peirced cluster " + (c.debug()) + "\n");
-            logger.debug("graph before trimming for cluster " + (adg.debug()) + "\n");
+            if (logger.isDebugEnabled()) {
+                logger.debug("graph before trimming for cluster " + (adg.debug()) + "\n");
+            }
 
             adg.remove(e.from);
             adg.remove(e.to);
 
-            logger.debug("graph after trimming for cluster " + adg.debug() + "\n");
+            if (logger.isDebugEnabled()) {
+                logger.debug("graph after trimming for cluster " + adg.debug() + "\n");
+            }
 
         }
         assert (adg.getNumEdges() == 0) : "non-empty adg edge set";
@@ -0,0 +1,122 @@
+package icircles.test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+import icircles.abstractDescription.AbstractDescription;
+import icircles.decomposition.Decomposer;
+import icircles.decomposition.DecompositionStep;
+import icircles.decomposition.DecompositionStrategy;
+import icircles.recomposition.Recomposer;
+import icircles.recomposition.RecompositionStrategy;
+
+/**
+ * Measures the memory allocated, and the garbage collection it causes, while
+ * decomposing and recomposing random descriptions of 10 to 40 contours.
+ *
+ * Each step of a decomposition or recomposition makes a new description.
+ * Those descriptions share their contour and zone sets with the description
+ * of the step before, apart from the zones which the step moves or adds, so
+ * the bytes allocated per step should grow with the zones moved rather than
+ * with the size of the description.
+ *
+ * Allocation is counted by the HotSpot thread MXBean; on other virtual
+ * machines only the collection counts and times are reported.
+ *
+ * Arguments: the number of descriptions of each size, and the number of
+ * zones per contour.
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties).
+ */
+public class AllocationBenchmark {
+
+    static final int MIN_CONTOURS = 10;
+    static final int MAX_CONTOURS = 40;
+    static final int STEP = 10;
+    static final int ZONES_PER_CONTOUR = 8;
+    static final int REPEATS = 50;
+
+    public static void main(String args[]) {
+        int repeats = REPEATS;
+        int zonesPerContour = ZONES_PER_CONTOUR;
+        if (args.length > 0) {
+            repeats = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            zonesPerContour = Integer.parseInt(args[1]);
+        }
+        Random random = new Random(0);
+
+        // warm up
+        for (int i = 0; i < repeats; i++) {
+            decomposeAndRecompose(DecompositionBenchmark.makeDescription(
+                    MAX_CONTOURS, zonesPerContour, random));
+        }
+
+        for (int n = MIN_CONTOURS; n <= MAX_CONTOURS; n += STEP) {
+            ArrayList<AbstractDescription> ads = new ArrayList<AbstractDescription>();
+            for (int i = 0; i < repeats; i++) {
+                ads.add(DecompositionBenchmark.makeDescription(n, zonesPerContour, random));
+            }
+            long gcCount = gcCount();
+            long gcTime = gcTime();
+            long bytes = allocatedBytes();
+            long steps = 0;
+            long start = System.nanoTime();
+            for (AbstractDescription ad : ads) {
+                steps += decomposeAndRecompose(ad);
+            }
+            long elapsed = System.nanoTime() - start;
+            bytes = allocatedBytes() - bytes;
+
+            StringBuilder line = new StringBuilder("contours " + n);
+            line.append(" : " + (elapsed / 1000 / repeats) + " us");
+            if (bytes >= 0) {
+                line.append(", " + (bytes / steps) + " bytes per step, "
+                        + (bytes * 1000 / Math.max(1, elapsed)) + " MB/s");
+            }
+            line.append(", " + (gcCount() - gcCount) + " collections in "
+                    + (gcTime() - gcTime) + " ms");
+            System.out.println(line);
+        }
+    }
+
+    private static int decomposeAndRecompose(AbstractDescription ad) {
+        ArrayList<DecompositionStep> d_steps = new Decomposer(
+                DecompositionStrategy.getStrategy(DecompositionStrategy.PIERCEDFIRST)).decompose(ad);
+        new Recomposer(RecompositionStrategy.getStrategy(
+                RecompositionStrategy.RECOMPOSE_DOUBLY_PIERCED)).recompose(d_steps);
+        return 2 * d_steps.size();
+    }
+
+    /**
+     * @return the bytes allocated so far by this thread, or -1 if the
+     * virtual machine cannot say.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gc.getCollectionCount());
+        }
+        return result;
+    }
+
+    private static long gcTime() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gc.getCollectionTime());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,221 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.concreteDiagram.BuildPlan;
+import icircles.concreteDiagram.BuildStep;
+import icircles.recomposition.RecompData;
+
+/**
+ * Makes random lists of contour additions, over a few labels so that zones
+ * often match and sometimes lie inside two contours with the same label,
+ * and reports any list which {@link BuildPlan} groups into different steps
+ * from the walk along a linked list of steps that DiagramCreator used to
+ * make, comparing each step with every later one.
+ *
+ * Arguments: the number of lists.
+ */
+public class BuildPlanTest {
+
+    static final int LISTS = 20000;
+    static final int MAX_ADDITIONS = 12;
+    static final String[] LABELS = {"a", "b", "c"};
+    static final int CURVES = 5;
+
+    public static void main(String args[]) {
+        int lists = LISTS;
+        if (args.length > 0) {
+            lists = Integer.parseInt(args[0]);
+        }
+        Random random = new Random(0);
+        int failures = 0;
+        int combined = 0;
+        for (int l = 0; l < lists; l++) {
+            AbstractCurve[] curves = new AbstractCurve[CURVES];
+            for (int i = 0; i < CURVES; i++) {
+                curves[i] = new AbstractCurve(LABELS[random.nextInt(LABELS.length)]);
+            }
+            ArrayList<RecompData> additions = new ArrayList<RecompData>();
+            HashMap<AbstractCurve, Double> scores = new HashMap<AbstractCurve, Double>();
+            int count = 1 + random.nextInt(MAX_ADDITIONS);
+            for (int i = 0; i < count; i++) {
+                AbstractCurve added = new AbstractCurve(LABELS[random.nextInt(LABELS.length)]);
+                scores.put(added, Double.valueOf(1 + random.nextInt(2)));
+                additions.add(new RecompData(added, splitZones(curves, random),
+                        new ArrayList<AbstractBasicRegion>()));
+            }
+
+            ArrayList<BuildStep> plan = BuildPlan.combine(additions, scores);
+            ArrayList<ArrayList<RecompData>> expected = walk(additions, scores);
+            if (!same(plan, expected)) {
+                failures++;
+                System.out.println("list " + l + " : " + describe(plan) + " but " + describeSteps(expected));
+            }
+            if (expected.size() < additions.size()) {
+                combined++;
+            }
+        }
+
+        System.out.println(lists + " lists, " + combined + " with additions put together");
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+
+    /**
+     * One zone for a nested contour, two for a single piercing, or four for
+     * a double piercing.
+     */
+    private static ArrayList<AbstractBasicRegion> splitZones(AbstractCurve[] curves, Random random) {
+        ArrayList<AbstractBasicRegion> result = new ArrayList<AbstractBasicRegion>();
+        TreeSet<AbstractCurve> in = new TreeSet<AbstractCurve>();
+        for (AbstractCurve c : curves) {
+            if (random.nextInt(3) == 0) {
+                in.add(c);
+            }
+        }
+        AbstractBasicRegion zone = AbstractBasicRegion.get(in);
+        result.add(zone);
+        int kind = random.nextInt(3);
+        if (kind == 0) {
+            return result;
+        }
+        AbstractCurve pierced = curves[random.nextInt(CURVES)];
+        if (zone.isIn(pierced)) {
+            zone = zone.moveOutside(pierced);
+            result.set(0, zone);
+        }
+        if (random.nextBoolean()) {
+            result.add(zone.movedIn(pierced));
+        } else {
+            result.add(0, zone.movedIn(pierced));
+        }
+        if (kind == 2) {
+            AbstractCurve other = curves[random.nextInt(CURVES)];
+            if (other != pierced && !zone.isIn(other)) {
+                result.add(zone.movedIn(other));
+                result.add(zone.movedIn(pierced).movedIn(other));
+            }
+        }
+        return result;
+    }
+
+    private static final class Step {
+        final ArrayList<RecompData> recomp_data = new ArrayList<RecompData>();
+        Step next;
+
+        Step(RecompData rd) {
+            recomp_data.add(rd);
+        }
+    }
+
+    /**
+     * The steps as the walk along a linked list of additions made them.
+     */
+    private static ArrayList<ArrayList<RecompData>> walk(ArrayList<RecompData> additions,
+            HashMap<AbstractCurve, Double> scores) {
+        Step head = null;
+        Step tail = null;
+        for (RecompData rd : additions) {
+            Step step = new Step(rd);
+            if (head == null) {
+                head = step;
+            } else {
+                tail.next = step;
+            }
+            tail = step;
+        }
+
+        for (Step bs = head; bs != null; bs = bs.next) {
+            RecompData rd = bs.recomp_data.get(0);
+            if (rd.split_zones.size() == 1) {
+                AbstractBasicRegion abr = rd.split_zones.get(0);
+                Step before = bs;
+                while (before != null && before.next != null) {
+                    RecompData rd2 = before.next.recomp_data.get(0);
+                    if (rd2.split_zones.size() == 1 && abr.isLabelEquivalent(rd2.split_zones.get(0))
+                            && scores.get(rd.added_curve).equals(scores.get(rd2.added_curve))) {
+                        Step to_move = before.next;
+                        before.next = to_move.next;
+                        bs.recomp_data.add(to_move.recomp_data.get(0));
+                    }
+                    before = before.next;
+                }
+            } else if (rd.split_zones.size() == 2) {
+                AbstractBasicRegion abr1 = rd.split_zones.get(0);
+                AbstractBasicRegion abr2 = rd.split_zones.get(1);
+                Step before = bs;
+                while (before != null && before.next != null) {
+                    RecompData rd2 = before.next.recomp_data.get(0);
+                    if (rd2.split_zones.size() == 2) {
+                        AbstractBasicRegion abr3 = rd2.split_zones.get(0);
+                        AbstractBasicRegion abr4 = rd2.split_zones.get(1);
+                        if (((abr1.isLabelEquivalent(abr3) && abr2.isLabelEquivalent(abr4))
+                                || (abr1.isLabelEquivalent(abr4) && abr2.isLabelEquivalent(abr3)))
+                                && scores.get(rd.added_curve).equals(scores.get(rd2.added_curve))) {
+                            Step to_move = before.next;
+                            before.next = to_move.next;
+                            bs.recomp_data.add(to_move.recomp_data.get(0));
+                            continue;
+                        }
+                    }
+                    before = before.next;
+                }
+            }
+        }
+
+        ArrayList<ArrayList<RecompData>> result = new ArrayList<ArrayList<RecompData>>();
+        for (Step bs = head; bs != null; bs = bs.next) {
+            result.add(bs.recomp_data);
+        }
+        return result;
+    }
+
+    private static boolean same(ArrayList<BuildStep> plan, ArrayList<ArrayList<RecompData>> expected) {
+        if (plan.size() != expected.size()) {
+            return false;
+        }
+        for (int i = 0; i < plan.size(); i++) {
+            ArrayList<RecompData> got = plan.get(i).recomp_data;
+            ArrayList<RecompData> want = expected.get(i);
+            if (got.size() != want.size()) {
+                return false;
+            }
+            for (int j = 0; j < got.size(); j++) {
+                if (got.get(j) != want.get(j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String describe(ArrayList<BuildStep> plan) {
+        ArrayList<ArrayList<RecompData>> steps = new ArrayList<ArrayList<RecompData>>();
+        for (BuildStep bs : plan) {
+            steps.add(bs.recomp_data);
+        }
+        return describeSteps(steps);
+    }
+
+    private static String describeSteps(ArrayList<ArrayList<RecompData>> steps) {
+        StringBuilder sb = new StringBuilder();
+        for (ArrayList<RecompData> step : steps) {
+            sb.append('[');
+            for (RecompData rd : step) {
+                sb.append(' ').append(rd.added_curve.debugWithId());
+            }
+            sb.append(" ]");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package icircles.test;
+
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.DiagramCreator;
+import icircles.util.CancellationToken;
+import icircles.util.CannotDrawException;
+
+/**
+ * Lays out every diagram in {@link TestData} with a generous deadline, and
+ * reports any diagram which differs from its layout without one.  Then lays
+ * out each diagram again and again, cancelling it after 0, 1, 2 ... checks
+ * of its token, and reports any cancelled layout which returns a diagram
+ * without saying so: without anytime mode a cancelled layout must give up,
+ * and with it, it must either give up or return a degraded diagram with all
+ * its circles and spiders.
+ *
+ * Arguments: the most checks to cancel after.
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties).
+ */
+public class CancellationTest {
+
+    static final int SIZE = TestData.TEST_PANEL_SIZE;
+    static final long GENEROUS_TIMEOUT_MS = 60000;
+    static final int MAX_CHECKS = 40;
+
+    /** A token cancelled once it has been checked a given number of times. */
+    static class CountingToken extends CancellationToken {
+
+        private int m_checks_left;
+
+        CountingToken(int checks) {
+            m_checks_left = checks;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            if (m_checks_left == 0) {
+                return true;
+            }
+            m_checks_left--;
+            return false;
+        }
+    }
+
+    public static void main(String args[]) {
+        int maxChecks = MAX_CHECKS;
+        if (args.length > 0) {
+            maxChecks = Integer.parseInt(args[0]);
+        }
+        int failures = 0;
+        int degraded = 0;
+        int gave_up = 0;
+        for (int i = 0; i < TestData.test_data.length; i++) {
+            String description = TestData.test_data[i].description;
+            ConcreteDiagram full;
+            try {
+                full = new DiagramCreator(TestDescriptions.makeForTesting(description)).createDiagram(SIZE);
+            } catch (CannotDrawException x) {
+                continue;
+            }
+            if (full == null) {
+                continue;
+            }
+            try {
+                ConcreteDiagram timed = new DiagramCreator(TestDescriptions.makeForTesting(
+                        description)).createDiagram(SIZE, GENEROUS_TIMEOUT_MS);
+                if (timed.checksum() != full.checksum() || timed.isDegraded()) {
+                    failures++;
+                    System.out.println("test " + i + " : differs with a deadline");
+                }
+            } catch (CannotDrawException x) {
+                failures++;
+                System.out.println("test " + i + " : gave up with a deadline: " + x.message);
+            }
+
+            for (int checks = 0; checks <= maxChecks; checks++) {
+                for (boolean anytime : new boolean[]{false, true}) {
+                    DiagramCreator dc = new DiagramCreator(TestDescriptions.makeForTesting(description));
+                    dc.setAnytime(anytime);
+                    CountingToken token = new CountingToken(checks);
+                    ConcreteDiagram cd;
+                    try {
+                        cd = dc.createDiagram(SIZE, token);
+                    } catch (CannotDrawException x) {
+                        gave_up++;
+                        continue;
+                    }
+                    if (!token.isCancelled()) {
+                        // finished before being cancelled
+                        if (cd.checksum() != full.checksum() || cd.isDegraded()) {
+                            failures++;
+                            System.out.println("test " + i + " : differs when not cancelled");
+                        }
+                    } else if (!anytime) {
+                        // only possible if no check came after the last one allowed
+                        if (cd.checksum() != full.checksum() || cd.isDegraded()) {
+                            failures++;
+                            System.out.println("test " + i + " : cancelled after " + checks
+                                    + " checks but returned a diagram");
+                        }
+                    } else if (cd.isDegraded()) {
+                        degraded++;
+                        if (cd.getCircles().size() != full.getCircles().size()
+                                || cd.getSpiders().size() != full.getSpiders().size()) {
+                            failures++;
+                            System.out.println("test " + i + " : degraded after " + checks
+                                    + " checks but incomplete");
+                        }
+                    } else if (cd.checksum() != full.checksum()) {
+                        failures++;
+                        System.out.println("test " + i + " : cancelled after " + checks
+                                + " checks, differs but not degraded");
+                    }
+                }
+            }
+        }
+
+        System.out.println("cancelled layouts : " + gave_up + " gave up, " + degraded + " degraded");
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+}
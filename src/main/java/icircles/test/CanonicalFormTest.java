@@ -0,0 +1,354 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import icircles.abstractDescription.AbstractDescription;
+import icircles.abstractDescription.CanonicalForm;
+
+/**
+ * Checks {@link CanonicalForm}: that random relabellings of a description,
+ * with their zones listed in another order, get the same key, and that two
+ * descriptions get the same key just when some matching of their labels
+ * turns one into the other.  The second of each pair is random, or the
+ * first with its contours renumbered, or that with the shading of one zone
+ * changed, so that both answers come up often.  The random descriptions
+ * have up to MAX_CONTOURS contours, some shading and a spider or two.
+ *
+ * Then checks that highly symmetric descriptions - Venn diagrams, disjoint
+ * contours and a ring of contours - get an exact form, and the same key once
+ * relabelled, and prints how long each takes.
+ *
+ * Arguments: the number of random descriptions.
+ */
+public class CanonicalFormTest {
+
+    static final int DESCRIPTIONS = 5000;
+    static final int MAX_CONTOURS = 4;
+    static final int MAX_ZONES = 6;
+    static final int MAX_SPIDERS = 2;
+    static final int RELABELLINGS = 5;
+    static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    private static int failures = 0;
+
+    public static void main(String args[]) {
+        int descriptions = DESCRIPTIONS;
+        if (args.length > 0) {
+            descriptions = Integer.parseInt(args[0]);
+        }
+        Random random = new Random(0);
+        int isomorphic = 0;
+        for (int d = 0; d < descriptions; d++) {
+            Description first = Description.random(random);
+            checkRelabellings(first.render(identity(first.m_n), random), first, random);
+
+            Description second;
+            switch (random.nextInt(3)) {
+                case 0:
+                    second = Description.random(random);
+                    break;
+                case 1:
+                    second = first.renumbered(random);
+                    break;
+                default:
+                    second = first.renumbered(random);
+                    second.toggleShading(random);
+                    break;
+            }
+            String firstString = first.render(identity(first.m_n), null);
+            String secondString = second.render(identity(second.m_n), null);
+            boolean same = isomorphic(first, second);
+            if (same) {
+                isomorphic++;
+            }
+            if (key(firstString) != null && same != key(firstString).equals(key(secondString))) {
+                fail("\"" + firstString + "\" and \"" + secondString + "\" are "
+                        + (same ? "" : "not ") + "isomorphic, but their keys "
+                        + (same ? "differ" : "match"));
+            }
+        }
+        System.out.println(descriptions + " pairs of descriptions, " + isomorphic + " isomorphic");
+
+        for (int n = 2; n <= 8; n++) {
+            checkSymmetric("Venn diagram of " + n, venn(n), random);
+        }
+        checkSymmetric("20 disjoint contours", disjoint(20), random);
+        checkSymmetric("ring of 12 contours", ring(12), random);
+
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+
+    private static void checkRelabellings(String original, Description desc, Random random) {
+        CanonicalForm form = CanonicalForm.of(TestDescriptions.makeForTesting(original));
+        if (form == null) {
+            fail("\"" + original + "\" has no canonical form");
+            return;
+        }
+        if (!form.isExact()) {
+            fail("\"" + original + "\" has no exact canonical form");
+        }
+        for (int r = 0; r < RELABELLINGS; r++) {
+            String relabelled = desc.render(randomLabels(desc.m_n, random), random);
+            CanonicalForm other = CanonicalForm.of(TestDescriptions.makeForTesting(relabelled));
+            if (other == null || !other.getKey().equals(form.getKey())) {
+                fail("\"" + original + "\" and its relabelling \"" + relabelled + "\" have different keys");
+            }
+        }
+    }
+
+    private static void checkSymmetric(String name, Description desc, Random random) {
+        long start = System.nanoTime();
+        String original = desc.render(identity(desc.m_n), null);
+        CanonicalForm form = CanonicalForm.of(TestDescriptions.makeForTesting(original));
+        long time = System.nanoTime() - start;
+        if (form == null || !form.isExact()) {
+            fail(name + " has no exact canonical form");
+            return;
+        }
+        String relabelled = desc.render(randomLabels(desc.m_n, random), random);
+        CanonicalForm other = CanonicalForm.of(TestDescriptions.makeForTesting(relabelled));
+        if (other == null || !other.isExact() || !other.getKey().equals(form.getKey())) {
+            fail(name + " and its relabelling have different keys");
+        }
+        System.out.println(name + " : " + time / 1000000 + " ms");
+    }
+
+    private static String key(String desc) {
+        CanonicalForm form = CanonicalForm.of(TestDescriptions.makeForTesting(desc));
+        return form == null ? null : form.getKey();
+    }
+
+    /**
+     * Tries every matching of the labels of a with those of b.
+     */
+    private static boolean isomorphic(Description a, Description b) {
+        if (a.m_n != b.m_n) {
+            return false;
+        }
+        String target = TestDescriptions.makeForTesting(b.render(identity(b.m_n), null)).getCanonicalKey();
+        return tryLabels(a, identity(a.m_n), 0, target);
+    }
+
+    private static boolean tryLabels(Description a, char[] labels, int from, String target) {
+        if (from == labels.length) {
+            AbstractDescription ad = TestDescriptions.makeForTesting(a.render(labels, null));
+            return ad.getCanonicalKey().equals(target);
+        }
+        for (int i = from; i < labels.length; i++) {
+            swap(labels, from, i);
+            boolean found = tryLabels(a, labels, from + 1, target);
+            swap(labels, from, i);
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void swap(char[] labels, int i, int j) {
+        char tmp = labels[i];
+        labels[i] = labels[j];
+        labels[j] = tmp;
+    }
+
+    private static char[] identity(int n) {
+        char[] result = new char[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = LETTERS.charAt(i);
+        }
+        return result;
+    }
+
+    private static char[] randomLabels(int n, Random random) {
+        ArrayList<Character> letters = new ArrayList<Character>();
+        for (int i = 0; i < LETTERS.length(); i++) {
+            letters.add(LETTERS.charAt(i));
+        }
+        Collections.shuffle(letters, random);
+        char[] result = new char[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = letters.get(i);
+        }
+        return result;
+    }
+
+    private static Description venn(int n) {
+        Description result = new Description(n);
+        for (int mask = 1; mask < (1 << n); mask++) {
+            result.m_zones.add(mask);
+        }
+        return result;
+    }
+
+    private static Description disjoint(int n) {
+        Description result = new Description(n);
+        for (int i = 0; i < n; i++) {
+            result.m_zones.add(1 << i);
+        }
+        return result;
+    }
+
+    private static Description ring(int n) {
+        Description result = new Description(n);
+        for (int i = 0; i < n; i++) {
+            result.m_zones.add(1 << i);
+            result.m_zones.add((1 << i) | (1 << ((i + 1) % n)));
+        }
+        return result;
+    }
+
+    /**
+     * A description over contours 0 to n-1, with zones as bit masks and the
+     * outside zone as 0, which can be written out under any labels.
+     */
+    private static final class Description {
+        final int m_n;
+        final ArrayList<Integer> m_zones = new ArrayList<Integer>();
+        final ArrayList<Integer> m_shaded = new ArrayList<Integer>();
+        final ArrayList<ArrayList<Integer>> m_spiders = new ArrayList<ArrayList<Integer>>();
+
+        Description(int n) {
+            m_n = n;
+        }
+
+        /**
+         * A random description in which every contour is in some zone.
+         */
+        static Description random(Random random) {
+            while (true) {
+                Description result = new Description(1 + random.nextInt(MAX_CONTOURS));
+                int numZones = 1 + random.nextInt(MAX_ZONES);
+                int used = 0;
+                for (int z = 0; z < numZones; z++) {
+                    int mask = 1 + random.nextInt((1 << result.m_n) - 1);
+                    if (!result.m_zones.contains(mask)) {
+                        result.m_zones.add(mask);
+                        used |= mask;
+                    }
+                }
+                if (used != (1 << result.m_n) - 1) {
+                    continue;
+                }
+                ArrayList<Integer> all = new ArrayList<Integer>(result.m_zones);
+                all.add(0);
+                for (Integer zone : all) {
+                    if (random.nextInt(3) == 0) {
+                        result.m_shaded.add(zone);
+                    }
+                }
+                int numSpiders = random.nextInt(MAX_SPIDERS + 1);
+                for (int s = 0; s < numSpiders; s++) {
+                    ArrayList<Integer> habitat = new ArrayList<Integer>();
+                    for (Integer zone : all) {
+                        if (random.nextInt(2) == 0) {
+                            habitat.add(zone);
+                        }
+                    }
+                    if (habitat.isEmpty()) {
+                        habitat.add(all.get(random.nextInt(all.size())));
+                    }
+                    result.m_spiders.add(habitat);
+                }
+                return result;
+            }
+        }
+
+        /**
+         * The same description with its contours numbered in a random order.
+         */
+        Description renumbered(Random random) {
+            ArrayList<Integer> order = new ArrayList<Integer>();
+            for (int c = 0; c < m_n; c++) {
+                order.add(c);
+            }
+            Collections.shuffle(order, random);
+            Description result = new Description(m_n);
+            renumber(m_zones, order, result.m_zones);
+            renumber(m_shaded, order, result.m_shaded);
+            for (ArrayList<Integer> habitat : m_spiders) {
+                ArrayList<Integer> feet = new ArrayList<Integer>();
+                renumber(habitat, order, feet);
+                result.m_spiders.add(feet);
+            }
+            return result;
+        }
+
+        private void renumber(ArrayList<Integer> masks, ArrayList<Integer> order, ArrayList<Integer> result) {
+            for (Integer mask : masks) {
+                int renumbered = 0;
+                for (int c = 0; c < m_n; c++) {
+                    if ((mask.intValue() & (1 << c)) != 0) {
+                        renumbered |= 1 << order.get(c);
+                    }
+                }
+                result.add(renumbered);
+            }
+        }
+
+        /**
+         * Shades a random unshaded zone, or unshades a random shaded one.
+         */
+        void toggleShading(Random random) {
+            ArrayList<Integer> all = new ArrayList<Integer>(m_zones);
+            all.add(0);
+            Integer zone = all.get(random.nextInt(all.size()));
+            if (!m_shaded.remove(zone)) {
+                m_shaded.add(zone);
+            }
+        }
+
+        /**
+         * Writes the description out as TestDescriptions reads it.
+         *
+         * @param labels the label of each contour.
+         * @param random if not null, shuffles the zones into another order.
+         */
+        String render(char[] labels, Random random) {
+            StringBuilder b = new StringBuilder();
+            b.append(zones(m_zones, labels, random)).append(',');
+            b.append(zones(m_shaded, labels, random));
+            for (int s = 0; s < m_spiders.size(); s++) {
+                b.append(',').append(zones(m_spiders.get(s), labels, random));
+                b.append(" 's").append(s);
+            }
+            return b.toString();
+        }
+
+        private String zones(ArrayList<Integer> masks, char[] labels, Random random) {
+            ArrayList<String> words = new ArrayList<String>();
+            for (Integer mask : masks) {
+                StringBuilder word = new StringBuilder();
+                for (int c = 0; c < m_n; c++) {
+                    if ((mask.intValue() & (1 << c)) != 0) {
+                        word.append(labels[c]);
+                    }
+                }
+                words.add(word.length() == 0 ? "." : word.toString());
+            }
+            if (random != null) {
+                Collections.shuffle(words, random);
+            }
+            StringBuilder b = new StringBuilder();
+            for (String word : words) {
+                if (b.length() > 0) {
+                    b.append(' ');
+                }
+                b.append(word);
+            }
+            return b.toString();
+        }
+    }
+
+    private static void fail(String message) {
+        failures++;
+        System.out.println(message);
+    }
+}
@@ -0,0 +1,109 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import icircles.abstractDescription.AbstractDescription;
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.util.CannotDrawException;
+
+/**
+ * Lays out every diagram in {@link TestData} on one thread, then again many
+ * times over on a pool of threads, and reports any diagram whose checksum on
+ * the pool differs from its checksum on the single thread.  Each task parses
+ * its own description, as a server drawing diagrams for many users would.
+ *
+ * Arguments: the number of threads and the number of rounds.
+ */
+public class ConcurrentLayoutTest {
+
+    static final int NUM_THREADS = 8;
+    static final int NUM_ROUNDS = 4;
+    static final int SIZE = TestData.TEST_PANEL_SIZE;
+
+    public static void main(String args[]) throws Exception {
+        int numThreads = NUM_THREADS;
+        int numRounds = NUM_ROUNDS;
+        if (args.length > 0) {
+            numThreads = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            numRounds = Integer.parseInt(args[1]);
+        }
+
+        int num_tests = TestData.test_data.length;
+        String[] serial = new String[num_tests];
+        long start = System.nanoTime();
+        for (int i = 0; i < num_tests; i++) {
+            serial[i] = layOut(i);
+        }
+        System.out.println("serial : " + num_tests + " diagrams in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        int mismatches = 0;
+        try {
+            for (int round = 0; round < numRounds; round++) {
+                List<Integer> order = new ArrayList<Integer>();
+                for (int i = 0; i < num_tests; i++) {
+                    order.add(i);
+                }
+                // a different interleaving each round
+                Collections.rotate(order, round * num_tests / numRounds);
+
+                List<Future<String>> results = new ArrayList<Future<String>>();
+                start = System.nanoTime();
+                for (final int i : order) {
+                    results.add(pool.submit(new Callable<String>() {
+                        public String call() {
+                            return layOut(i);
+                        }
+                    }));
+                }
+                for (int j = 0; j < num_tests; j++) {
+                    int i = order.get(j);
+                    String found = results.get(j).get();
+                    if (!found.equals(serial[i])) {
+                        mismatches++;
+                        System.out.println("test " + i + " : serial " + serial[i]
+                                + ", parallel " + found);
+                    }
+                }
+                System.out.println("round " + round + " on " + numThreads + " threads : "
+                        + num_tests + " diagrams in "
+                        + (System.nanoTime() - start) / 1000000 + " ms");
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.println("******************");
+        if (mismatches == 0) {
+            System.out.println("**** all match ****");
+        } else {
+            System.out.println("**** " + mismatches + " mismatches ****");
+        }
+        System.out.println("******************");
+    }
+
+    private static String layOut(int test_num) {
+        try {
+            AbstractDescription ad = TestDescriptions.makeForTesting(
+                    TestData.test_data[test_num].description);
+            ConcreteDiagram cd = ConcreteDiagram.makeConcreteDiagram(ad, SIZE);
+            if (cd == null) {
+                return "no layout";
+            }
+            return "" + cd.checksum();
+        } catch (CannotDrawException x) {
+            return "cannot draw : " + x.message;
+        } catch (RuntimeException x) {
+            return "failed : " + x;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.abstractDescription.AbstractDescription;
+import icircles.decomposition.Decomposer;
+import icircles.decomposition.DecompositionStrategy;
+
+/**
+ * Times {@link Decomposer#decompose} with the strategies which count zones,
+ * on random descriptions of 5 to 40 contours with 4 zones per contour.
+ *
+ * The decomposer keeps the zones inside each contour up to date as it
+ * removes contours, so choosing a contour should cost little more than
+ * with SORT_ORDER, which counts nothing and is timed for comparison.  What
+ * remains is building the description left after each step.
+ *
+ * Arguments: the number of descriptions of each size, and the number of
+ * zones per contour (fewer for small descriptions, which have too few
+ * possible zones).
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties), or the
+ * debug output of the decomposer dominates.
+ */
+public class DecompositionBenchmark {
+
+    static final int MIN_CONTOURS = 5;
+    static final int MAX_CONTOURS = 40;
+    static final int STEP = 5;
+    static final int ZONES_PER_CONTOUR = 4;
+    static final int REPEATS = 50;
+    static final int[] STRATEGIES = {
+        DecompositionStrategy.SORT_ORDER,
+        DecompositionStrategy.INNERMOST,
+        DecompositionStrategy.PIERCEDFIRST};
+
+    public static void main(String args[]) {
+        int repeats = REPEATS;
+        int zonesPerContour = ZONES_PER_CONTOUR;
+        if (args.length > 0) {
+            repeats = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            zonesPerContour = Integer.parseInt(args[1]);
+        }
+        Random random = new Random(0);
+
+        // warm up
+        for (int i = 0; i < repeats; i++) {
+            decomposeAll(makeDescription(MAX_CONTOURS, zonesPerContour, random));
+        }
+
+        for (int n = MIN_CONTOURS; n <= MAX_CONTOURS; n += STEP) {
+            ArrayList<AbstractDescription> ads = new ArrayList<AbstractDescription>();
+            for (int i = 0; i < repeats; i++) {
+                ads.add(makeDescription(n, zonesPerContour, random));
+            }
+            StringBuilder line = new StringBuilder("contours " + n);
+            for (int strategy : STRATEGIES) {
+                long start = System.nanoTime();
+                for (AbstractDescription ad : ads) {
+                    new Decomposer(DecompositionStrategy.getStrategy(strategy)).decompose(ad);
+                }
+                long elapsed = System.nanoTime() - start;
+                line.append(" : " + DecompositionStrategy.text_for(strategy)
+                        + " " + (elapsed / 1000 / repeats) + " us");
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static void decomposeAll(AbstractDescription ad) {
+        for (int strategy : STRATEGIES) {
+            new Decomposer(DecompositionStrategy.getStrategy(strategy)).decompose(ad);
+        }
+    }
+
+    /**
+     * Each contour alone, then random zones of one to three contours, some
+     * of them also split by a further contour, until there are
+     * zonesPerContour zones per contour.
+     */
+    static AbstractDescription makeDescription(int numContours, int zonesPerContour,
+            Random random) {
+        AbstractCurve[] curves = new AbstractCurve[numContours];
+        for (int i = 0; i < numContours; i++) {
+            curves[i] = new AbstractCurve(("c" + i).intern());
+        }
+        TreeSet<AbstractBasicRegion> zones = new TreeSet<AbstractBasicRegion>();
+        zones.add(AbstractBasicRegion.get(new TreeSet<AbstractCurve>()));
+        for (int i = 0; i < numContours; i++) {
+            TreeSet<AbstractCurve> in_set = new TreeSet<AbstractCurve>();
+            in_set.add(curves[i]);
+            zones.add(AbstractBasicRegion.get(in_set));
+        }
+        // no more than half the zones of up to three contours, so that
+        // random picks soon find new ones
+        long n = numContours;
+        long target = Math.min(numContours * zonesPerContour,
+                (1 + n + n * (n - 1) / 2 + n * (n - 1) * (n - 2) / 6) / 2);
+        while (zones.size() < target) {
+            TreeSet<AbstractCurve> in_set = new TreeSet<AbstractCurve>();
+            int size = 1 + random.nextInt(3);
+            while (in_set.size() < size) {
+                in_set.add(curves[random.nextInt(numContours)]);
+            }
+            AbstractBasicRegion zone = AbstractBasicRegion.get(in_set);
+            zones.add(zone);
+            if (random.nextBoolean()) {
+                // pierce it with a contour it is not in
+                AbstractCurve c = curves[random.nextInt(numContours)];
+                if (!zone.isIn(c)) {
+                    zones.add(zone.movedIn(c));
+                }
+            }
+        }
+        TreeSet<AbstractCurve> contours = new TreeSet<AbstractCurve>();
+        for (AbstractCurve c : curves) {
+            contours.add(c);
+        }
+        return new AbstractDescription(contours, zones);
+    }
+}
@@ -0,0 +1,223 @@
+package icircles.test;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+
+import icircles.abstractDescription.AbstractDescription;
+import icircles.concreteDiagram.CircleContour;
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.ConcreteSpider;
+import icircles.concreteDiagram.ConcreteZone;
+import icircles.concreteDiagram.DiagramCache;
+import icircles.concreteDiagram.DiagramCreator;
+import icircles.util.CannotDrawException;
+
+/**
+ * Checks a {@link DiagramCache}: which entry goes when it is full under each
+ * eviction policy, its counts of hits, misses and evictions, that a
+ * description which cannot be drawn fails again from the cache, and that
+ * every diagram in {@link TestData} comes from the cache frozen and with the
+ * checksum of a fresh layout.  Frozen means that changing its lists, its
+ * box, its circles or the shapes of its zones does not change the diagram.
+ */
+public class DiagramCacheTest {
+
+    static final int SIZE = TestData.TEST_PANEL_SIZE;
+
+    private static int failures = 0;
+
+    public static void main(String args[]) {
+        checkLru();
+        checkLfu();
+        checkTestData();
+
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+
+    private static void checkLru() {
+        DiagramCache cache = new DiagramCache(2, DiagramCache.EVICT_LRU);
+        use(cache, "a");
+        use(cache, "b");
+        use(cache, "a");
+        use(cache, "c"); // b was used least recently
+        expect("LRU after filling", cache, 1, 3, 1);
+        use(cache, "a");
+        use(cache, "c");
+        expect("LRU keeps a and c", cache, 3, 3, 1);
+        use(cache, "b"); // a was used least recently
+        expect("LRU brings back b", cache, 3, 4, 2);
+        use(cache, "c");
+        use(cache, "a");
+        expect("LRU brings back a", cache, 4, 5, 3);
+        if (cache.getSize() != 2) {
+            fail("LRU holds " + cache.getSize() + " entries");
+        }
+    }
+
+    private static void checkLfu() {
+        DiagramCache cache = new DiagramCache(2, DiagramCache.EVICT_LFU);
+        use(cache, "a");
+        use(cache, "a");
+        use(cache, "a");
+        use(cache, "b");
+        use(cache, "c"); // b and c are used once; b less recently
+        expect("LFU after filling", cache, 2, 3, 1);
+        use(cache, "a");
+        use(cache, "c");
+        expect("LFU keeps a and c", cache, 4, 3, 1);
+        use(cache, "b"); // b is new, so used less than a or c
+        expect("LFU drops b at once", cache, 4, 4, 2);
+        use(cache, "b");
+        use(cache, "a");
+        use(cache, "c");
+        expect("LFU keeps a and c still", cache, 6, 5, 3);
+
+        cache.resetStatistics();
+        expect("LFU after reset", cache, 0, 0, 0);
+        cache.clear();
+        if (cache.getSize() != 0) {
+            fail("LFU holds " + cache.getSize() + " entries after clear");
+        }
+    }
+
+    private static void checkTestData() {
+        int num_failed = 0;
+        for (int i = 0; i < TestData.test_data.length; i++) {
+            String desc = TestData.test_data[i].description;
+            DiagramCache cache = new DiagramCache(4);
+
+            String fresh_failure = null;
+            double fresh_checksum = 0.0;
+            try {
+                ConcreteDiagram cd = new DiagramCreator(TestDescriptions.makeForTesting(desc)).createDiagram(SIZE);
+                fresh_checksum = cd == null ? 0.0 : cd.checksum();
+            } catch (CannotDrawException x) {
+                fresh_failure = x.message;
+            }
+
+            ConcreteDiagram first = null;
+            for (int pass = 0; pass < 2; pass++) {
+                AbstractDescription ad = TestDescriptions.makeForTesting(desc);
+                try {
+                    ConcreteDiagram cd = cache.makeConcreteDiagram(ad, SIZE);
+                    if (fresh_failure != null) {
+                        fail("test " + i + " : cached layout drew what a fresh one could not");
+                    } else if (cd == null) {
+                        if (fresh_checksum != 0.0) {
+                            fail("test " + i + " : no cached diagram");
+                        }
+                    } else {
+                        if (pass == 1 && cd != first) {
+                            fail("test " + i + " : hit gave a different diagram");
+                        }
+                        if (cd.checksum() != fresh_checksum) {
+                            fail("test " + i + " : checksum " + cd.checksum()
+                                    + " but fresh layout " + fresh_checksum);
+                        }
+                        checkFrozen(i, cd);
+                    }
+                    first = cd;
+                } catch (CannotDrawException x) {
+                    if (fresh_failure == null) {
+                        fail("test " + i + " : cached layout failed with " + x.message);
+                    } else if (!fresh_failure.equals(x.message)) {
+                        fail("test " + i + " : cached failure " + x.message + " but " + fresh_failure);
+                    }
+                }
+            }
+            if (fresh_failure != null) {
+                num_failed++;
+            }
+            // the failure is remembered like any layout
+            expect("test " + i, cache, 1, 1, 0);
+        }
+        System.out.println(TestData.test_data.length + " diagrams, " + num_failed + " cannot be drawn");
+    }
+
+    private static void checkFrozen(int test, ConcreteDiagram cd) {
+        if (!cd.isFrozen()) {
+            fail("test " + test + " : diagram is not frozen");
+        }
+        Rectangle2D.Double box = cd.getBox();
+        Rectangle2D.Double expected_box = (Rectangle2D.Double) box.clone();
+        box.x += 10;
+        box.width = 0;
+        if (!cd.getBox().equals(expected_box)) {
+            fail("test " + test + " : box can be changed");
+        }
+        for (ConcreteZone z : cd.getShadedZones()) {
+            checkFrozenShape(test, cd, z);
+        }
+        for (ConcreteZone z : cd.getUnshadedZones()) {
+            checkFrozenShape(test, cd, z);
+        }
+        for (CircleContour c : cd.getCircles()) {
+            Ellipse2D.Double circle = c.getCircle();
+            Rectangle2D expected_bounds = circle.getBounds2D();
+            circle.x += 10;
+            if (!c.getCircle().getBounds2D().equals(expected_bounds)) {
+                fail("test " + test + " : circle " + c.debug() + " can be changed");
+            }
+        }
+        try {
+            cd.getCircles().clear();
+            fail("test " + test + " : circles can be changed");
+        } catch (UnsupportedOperationException x) {
+            // as expected
+        }
+        if (cd.getSpiders() != null) {
+            for (ConcreteSpider s : cd.getSpiders()) {
+                try {
+                    s.getFeet().clear();
+                    fail("test " + test + " : spider feet can be changed");
+                } catch (UnsupportedOperationException x) {
+                    // as expected
+                }
+                try {
+                    s.getLegs().clear();
+                    fail("test " + test + " : spider legs can be changed");
+                } catch (UnsupportedOperationException x) {
+                    // as expected
+                }
+            }
+        }
+    }
+
+    private static void checkFrozenShape(int test, ConcreteDiagram cd, ConcreteZone z) {
+        Area shape = z.getShape(cd.getBox());
+        Rectangle2D expected_bounds = shape.getBounds2D();
+        shape.transform(AffineTransform.getTranslateInstance(10, 10));
+        shape.intersect(new Area(new Rectangle2D.Double(0, 0, 1, 1)));
+        if (!z.getShape(cd.getBox()).getBounds2D().equals(expected_bounds)) {
+            fail("test " + test + " : shape of zone " + z.getAbstractBasicRegion().debug() + " can be changed");
+        }
+    }
+
+    private static void use(DiagramCache cache, String desc) {
+        try {
+            cache.makeConcreteDiagram(TestDescriptions.makeForTesting(desc), SIZE);
+        } catch (CannotDrawException x) {
+            fail(desc + " : " + x.message);
+        }
+    }
+
+    private static void expect(String what, DiagramCache cache, long hits, long misses, long evictions) {
+        if (cache.getHits() != hits || cache.getMisses() != misses || cache.getEvictions() != evictions) {
+            fail(what + " : " + cache + " but expected hits " + hits + ", misses " + misses
+                    + ", evictions " + evictions);
+        }
+    }
+
+    private static void fail(String message) {
+        failures++;
+        System.out.println(message);
+    }
+}
@@ -0,0 +1,111 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.recomposition.Cluster;
+import icircles.recomposition.RecompositionStrategy;
+
+/**
+ * Times make_clusters for the singly and doubly pierced recomposition
+ * strategies, on random sets of 250 to 4000 zones to split.
+ *
+ * Both strategies build an AbstractDualGraph of the zones and pick off edges
+ * at a node of lowest degree until none are left.  The graph keeps its nodes
+ * in buckets by degree, so each pick and each removal costs about the same
+ * however many zones there are, and the time should grow roughly in
+ * proportion to the number of edges.
+ *
+ * Arguments: the number of contours the zones are made from, and the number
+ * of zone sets of each size.
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties), or the
+ * trace output of the graph dominates.
+ */
+public class DualGraphBenchmark {
+
+    static final int NUM_CONTOURS = 16;
+    static final int MIN_ZONES = 250;
+    static final int MAX_ZONES = 4000;
+    static final int REPEATS = 5;
+    static final int[] STRATEGIES = {
+        RecompositionStrategy.RECOMPOSE_SINGLY_PIERCED,
+        RecompositionStrategy.RECOMPOSE_DOUBLY_PIERCED};
+
+    public static void main(String args[]) {
+        int numContours = NUM_CONTOURS;
+        int repeats = REPEATS;
+        if (args.length > 0) {
+            numContours = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            repeats = Integer.parseInt(args[1]);
+        }
+        int maxZones = (int) Math.min(MAX_ZONES, (1L << numContours) / 2);
+        Random random = new Random(0);
+
+        // warm up
+        for (int i = 0; i < repeats; i++) {
+            makeAllClusters(makeZones(numContours, MIN_ZONES, random));
+        }
+
+        for (int numZones = MIN_ZONES; numZones <= maxZones; numZones *= 2) {
+            ArrayList<ArrayList<AbstractBasicRegion>> zoneSets =
+                    new ArrayList<ArrayList<AbstractBasicRegion>>();
+            for (int i = 0; i < repeats; i++) {
+                zoneSets.add(makeZones(numContours, numZones, random));
+            }
+            StringBuilder line = new StringBuilder("zones " + numZones);
+            for (int strategy : STRATEGIES) {
+                int numClusters = 0;
+                long start = System.nanoTime();
+                for (ArrayList<AbstractBasicRegion> zones : zoneSets) {
+                    numClusters += RecompositionStrategy.getStrategy(strategy)
+                            .make_clusters(zones).size();
+                }
+                long elapsed = System.nanoTime() - start;
+                line.append(" : " + RecompositionStrategy.text_for(strategy)
+                        + " " + (elapsed / 1000 / repeats) + " us, "
+                        + (numClusters / repeats) + " clusters");
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static void makeAllClusters(ArrayList<AbstractBasicRegion> zones) {
+        for (int strategy : STRATEGIES) {
+            ArrayList<Cluster> clusters = RecompositionStrategy.getStrategy(strategy)
+                    .make_clusters(zones);
+            if (clusters == null) {
+                throw new Error("no clusters");
+            }
+        }
+    }
+
+    /**
+     * Random zones, each in about half the contours, so that many of them
+     * are neighbours across a single contour.
+     */
+    static ArrayList<AbstractBasicRegion> makeZones(int numContours, int numZones,
+            Random random) {
+        AbstractCurve[] curves = new AbstractCurve[numContours];
+        for (int i = 0; i < numContours; i++) {
+            curves[i] = new AbstractCurve(("c" + i).intern());
+        }
+        LinkedHashSet<AbstractBasicRegion> zones = new LinkedHashSet<AbstractBasicRegion>();
+        while (zones.size() < numZones) {
+            TreeSet<AbstractCurve> in_set = new TreeSet<AbstractCurve>();
+            for (AbstractCurve c : curves) {
+                if (random.nextBoolean()) {
+                    in_set.add(c);
+                }
+            }
+            zones.add(AbstractBasicRegion.get(in_set));
+        }
+        return new ArrayList<AbstractBasicRegion>(zones);
+    }
+}
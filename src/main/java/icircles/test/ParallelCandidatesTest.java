@@ -0,0 +1,103 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import icircles.abstractDescription.AbstractDescription;
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.DiagramCreator;
+import icircles.util.CannotDrawException;
+
+/**
+ * Lays out every diagram in {@link TestData} scoring candidate circles one
+ * after another, then again scoring every set of candidates on a fork-join
+ * pool, and reports any diagram whose checksum differs.  Then times both
+ * ways, with the usual threshold for the pool, on larger diagrams made as
+ * for {@link ZoneShapeBenchmark}.
+ *
+ * Arguments: the number of threads in the pool.
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties).
+ */
+public class ParallelCandidatesTest {
+
+    static final int NUM_THREADS = 4;
+    static final int SIZE = TestData.TEST_PANEL_SIZE;
+    static final int LARGE_CONTOURS = 60;
+    static final int LARGE_REPEATS = 5;
+
+    public static void main(String args[]) {
+        int numThreads = NUM_THREADS;
+        if (args.length > 0) {
+            numThreads = Integer.parseInt(args[0]);
+        }
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        int mismatches = 0;
+        for (int i = 0; i < TestData.test_data.length; i++) {
+            String serial = layOut(TestDescriptions.makeForTesting(
+                    TestData.test_data[i].description), null, 0);
+            String parallel = layOut(TestDescriptions.makeForTesting(
+                    TestData.test_data[i].description), pool, 0);
+            if (!serial.equals(parallel)) {
+                mismatches++;
+                System.out.println("test " + i + " : serial " + serial + ", parallel " + parallel);
+            }
+        }
+
+        Random random = new Random(0);
+        ArrayList<AbstractDescription> ads = new ArrayList<AbstractDescription>();
+        for (int i = 0; i < LARGE_REPEATS; i++) {
+            ads.add(ZoneShapeBenchmark.makeDescription(LARGE_CONTOURS, random));
+        }
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up
+            long serialTime = 0;
+            long parallelTime = 0;
+            for (AbstractDescription ad : ads) {
+                long start = System.nanoTime();
+                String serial = layOut(ad, null, 0);
+                serialTime += System.nanoTime() - start;
+                start = System.nanoTime();
+                String parallel = layOut(ad, pool, DiagramCreator.PARALLEL_MIN_WORK);
+                parallelTime += System.nanoTime() - start;
+                if (round == 1 && !serial.equals(parallel)) {
+                    mismatches++;
+                    System.out.println(LARGE_CONTOURS + " contours : serial " + serial
+                            + ", parallel " + parallel);
+                }
+            }
+            if (round == 1) {
+                System.out.println(LARGE_CONTOURS + " contours : serial "
+                        + (serialTime / 1000000 / LARGE_REPEATS) + " ms, parallel "
+                        + (parallelTime / 1000000 / LARGE_REPEATS) + " ms");
+            }
+        }
+        pool.shutdown();
+
+        System.out.println("******************");
+        if (mismatches == 0) {
+            System.out.println("**** all match ****");
+        } else {
+            System.out.println("**** " + mismatches + " mismatches ****");
+        }
+        System.out.println("******************");
+    }
+
+    private static String layOut(AbstractDescription ad, ForkJoinPool pool, int minWork) {
+        DiagramCreator dc = new DiagramCreator(ad);
+        if (pool != null) {
+            dc.setCandidatePool(pool, minWork);
+        }
+        try {
+            ConcreteDiagram cd = dc.createDiagram(SIZE);
+            if (cd == null) {
+                return "null";
+            }
+            return "" + cd.checksum();
+        } catch (CannotDrawException x) {
+            return "cannot draw: " + x.message;
+        }
+    }
+}
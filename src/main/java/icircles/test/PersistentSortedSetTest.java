@@ -0,0 +1,128 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.PersistentSortedSet;
+
+/**
+ * Makes random runs of with and without on a PersistentSortedSet and on a
+ * TreeSet side by side, and reports any step after which the two differ in
+ * size, contains, first, last or the order of iteration.  Every set made
+ * along the way is kept and checked again at the end, so that a change
+ * which leaked into an earlier set would show.
+ *
+ * Arguments: the number of runs.
+ */
+public class PersistentSortedSetTest {
+
+    static final int RUNS = 200;
+    static final int STEPS = 400;
+    static final int RANGE = 100;
+
+    public static void main(String args[]) {
+        int runs = RUNS;
+        if (args.length > 0) {
+            runs = Integer.parseInt(args[0]);
+        }
+        Random random = new Random(0);
+        int failures = 0;
+        for (int run = 0; run < runs; run++) {
+            // small ranges make for many repeated and missing elements
+            int range = 1 + random.nextInt(RANGE);
+            PersistentSortedSet<Integer> set = PersistentSortedSet.empty();
+            TreeSet<Integer> expected = new TreeSet<Integer>();
+            ArrayList<PersistentSortedSet<Integer>> sets = new ArrayList<PersistentSortedSet<Integer>>();
+            ArrayList<TreeSet<Integer>> expecteds = new ArrayList<TreeSet<Integer>>();
+            for (int step = 0; step < STEPS; step++) {
+                Integer e = Integer.valueOf(random.nextInt(range));
+                PersistentSortedSet<Integer> next;
+                if (random.nextInt(3) == 0) {
+                    next = set.without(e);
+                    if (expected.remove(e) != (next != set)) {
+                        failures++;
+                        System.out.println("run " + run + ", step " + step + " : without " + e
+                                + " changed the set wrongly");
+                    }
+                } else {
+                    next = set.with(e);
+                    if (expected.add(e) != (next != set)) {
+                        failures++;
+                        System.out.println("run " + run + ", step " + step + " : with " + e
+                                + " changed the set wrongly");
+                    }
+                }
+                set = next;
+                if (!same(set, expected, range)) {
+                    failures++;
+                    System.out.println("run " + run + ", step " + step + " : " + set + " but " + expected);
+                }
+                sets.add(set);
+                expecteds.add(new TreeSet<Integer>(expected));
+            }
+            for (int i = 0; i < sets.size(); i++) {
+                if (!same(sets.get(i), expecteds.get(i), range)) {
+                    failures++;
+                    System.out.println("run " + run + ", step " + i + " : changed by a later step");
+                }
+            }
+            if (!same(PersistentSortedSet.copyOf(expected), expected, range)) {
+                failures++;
+                System.out.println("run " + run + " : copyOf a TreeSet differs");
+            }
+            ArrayList<Integer> shuffled = new ArrayList<Integer>(expected);
+            shuffled.addAll(expected);
+            Collections.shuffle(shuffled, random);
+            if (!same(PersistentSortedSet.copyOf(shuffled), expected, range)) {
+                failures++;
+                System.out.println("run " + run + " : copyOf a list differs");
+            }
+        }
+
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+
+    private static boolean same(PersistentSortedSet<Integer> set, TreeSet<Integer> expected, int range) {
+        if (set.size() != expected.size() || set.isEmpty() != expected.isEmpty()) {
+            return false;
+        }
+        for (int i = -1; i <= range; i++) {
+            if (set.contains(Integer.valueOf(i)) != expected.contains(Integer.valueOf(i))) {
+                return false;
+            }
+        }
+        if (set.contains(null) || set.contains("0")) {
+            return false;
+        }
+        if (!expected.isEmpty()
+                && (!set.first().equals(expected.first()) || !set.last().equals(expected.last()))) {
+            return false;
+        }
+        Iterator<Integer> it = set.iterator();
+        for (Integer e : expected) {
+            if (!it.hasNext() || !it.next().equals(e)) {
+                return false;
+            }
+        }
+        if (it.hasNext()) {
+            return false;
+        }
+        try {
+            it.next();
+            return false;
+        } catch (NoSuchElementException x) {
+            // as expected
+        }
+        return set.equals(expected) && set.hashCode() == expected.hashCode();
+    }
+}
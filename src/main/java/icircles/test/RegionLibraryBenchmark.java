@@ -0,0 +1,78 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+
+/**
+ * Measures the cost of {@link AbstractBasicRegion#get} as more and more
+ * diagrams pass through the region library.
+ *
+ * Each "diagram" makes a fresh set of curves (as a decomposition and
+ * recomposition would), builds every zone over them and then moves each
+ * zone in and out of each curve.  The time per lookup is reported for each
+ * block of diagrams; it should stay flat rather than grow with the number of
+ * diagrams drawn so far.
+ */
+public class RegionLibraryBenchmark {
+
+    static final int NUM_DIAGRAMS = 100000;
+    static final int REPORT_EVERY = 10000;
+    static final int CURVES_PER_DIAGRAM = 4;
+    static final String[] LABELS = {"a", "b", "c", "d", "e", "f", "g", "h"};
+
+    public static void main(String args[]) {
+        int numDiagrams = NUM_DIAGRAMS;
+        if (args.length > 0) {
+            numDiagrams = Integer.parseInt(args[0]);
+        }
+
+        long lookups = 0;
+        long blockStart = System.nanoTime();
+        for (int d = 1; d <= numDiagrams; d++) {
+            lookups += drawOneDiagram();
+            if (d % REPORT_EVERY == 0) {
+                long elapsed = System.nanoTime() - blockStart;
+                System.out.println("diagrams " + d
+                        + " : " + (elapsed / lookups) + " ns per lookup"
+                        + ", library size " + AbstractBasicRegion.getLibrarySize());
+                lookups = 0;
+                blockStart = System.nanoTime();
+            }
+        }
+    }
+
+    private static int drawOneDiagram() {
+        int lookups = 0;
+        ArrayList<AbstractCurve> curves = new ArrayList<AbstractCurve>();
+        for (int i = 0; i < CURVES_PER_DIAGRAM; i++) {
+            curves.add(new AbstractCurve(LABELS[i]));
+        }
+
+        ArrayList<AbstractBasicRegion> zones = new ArrayList<AbstractBasicRegion>();
+        for (int mask = 0; mask < (1 << CURVES_PER_DIAGRAM); mask++) {
+            TreeSet<AbstractCurve> in_set = new TreeSet<AbstractCurve>();
+            for (int i = 0; i < CURVES_PER_DIAGRAM; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    in_set.add(curves.get(i));
+                }
+            }
+            zones.add(AbstractBasicRegion.get(in_set));
+            lookups++;
+        }
+
+        for (AbstractBasicRegion z : zones) {
+            for (AbstractCurve c : curves) {
+                if (z.isIn(c)) {
+                    z.moveOutside(c);
+                } else {
+                    z.movedIn(c);
+                }
+                lookups++;
+            }
+        }
+        return lookups;
+    }
+}
@@ -0,0 +1,116 @@
+package icircles.test;
+
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import icircles.concreteDiagram.CircleContour;
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.ConcreteZone;
+import icircles.util.CannotDrawException;
+
+/**
+ * Lays out every diagram in {@link TestData}, and checks that the shape of
+ * each zone, built from the Areas each circle keeps, is the same as the shape
+ * built from newly made Areas.  The circles are then copied and moved, after
+ * their Areas have been made, and the zones are checked again, so that any
+ * Area kept from before the move would show.
+ */
+public class ShapeCacheTest {
+
+    static final int SIZE = TestData.TEST_PANEL_SIZE;
+    static final double SHIFT_X = 7.25;
+    static final double SHIFT_Y = -5.5;
+
+    public static void main(String args[]) {
+        Rectangle2D.Double box = new Rectangle2D.Double(0, 0, SIZE, SIZE);
+        int num_zones = 0;
+        int mismatches = 0;
+        for (int i = 0; i < TestData.test_data.length; i++) {
+            ConcreteDiagram cd;
+            try {
+                cd = ConcreteDiagram.makeConcreteDiagram(TestDescriptions.makeForTesting(
+                        TestData.test_data[i].description), SIZE);
+            } catch (CannotDrawException x) {
+                continue;
+            }
+            if (cd == null) {
+                continue;
+            }
+            ArrayList<ConcreteZone> zones = new ArrayList<ConcreteZone>(cd.getUnshadedZones());
+            zones.addAll(cd.getShadedZones());
+
+            IdentityHashMap<CircleContour, CircleContour> moved =
+                    new IdentityHashMap<CircleContour, CircleContour>();
+            for (CircleContour c : cd.getCircles()) {
+                CircleContour copy = new CircleContour(c);
+                // make its Areas before it moves
+                copy.getBigInterior();
+                copy.getSmallInterior();
+                copy.shift(SHIFT_X, SHIFT_Y);
+                moved.put(c, copy);
+            }
+
+            for (ConcreteZone z : zones) {
+                num_zones++;
+                if (!sameShapes(z.getContainingContours(), z.getExcludingContours(), box)) {
+                    mismatches++;
+                    System.out.println("test " + i + " : zone " + z.getAbstractBasicRegion().debug()
+                            + " differs");
+                }
+                if (!sameShapes(copies(z.getContainingContours(), moved),
+                        copies(z.getExcludingContours(), moved), box)) {
+                    mismatches++;
+                    System.out.println("test " + i + " : moved zone "
+                            + z.getAbstractBasicRegion().debug() + " differs");
+                }
+            }
+            for (CircleContour copy : moved.values()) {
+                // a copy of the copy has made no ellipse yet
+                if (!copy.getCircle().equals(new CircleContour(copy).getCircle())) {
+                    mismatches++;
+                    System.out.println("test " + i + " : moved circle " + copy.ac.getLabel()
+                            + " keeps its old ellipse");
+                }
+            }
+        }
+
+        System.out.println("******************");
+        if (mismatches == 0) {
+            System.out.println("**** all " + num_zones + " zones match ****");
+        } else {
+            System.out.println("**** " + mismatches + " mismatches ****");
+        }
+        System.out.println("******************");
+    }
+
+    private static ArrayList<CircleContour> copies(ArrayList<CircleContour> circles,
+            IdentityHashMap<CircleContour, CircleContour> moved) {
+        ArrayList<CircleContour> result = new ArrayList<CircleContour>();
+        for (CircleContour c : circles) {
+            result.add(moved.get(c));
+        }
+        return result;
+    }
+
+    /**
+     * Does a zone with these circles have the same shape through the
+     * circles' kept Areas as through new ones?
+     */
+    private static boolean sameShapes(ArrayList<CircleContour> containing,
+            ArrayList<CircleContour> excluding, Rectangle2D.Double box) {
+        // asked twice, so that the second time uses the kept Areas
+        new ConcreteZone(null, containing, excluding).getShape(box);
+        Area cached = new ConcreteZone(null, containing, excluding).getShape(box);
+
+        Area uncached = new Area(box);
+        for (CircleContour c : containing) {
+            uncached.intersect(new Area(c.getFatInterior(c.getNudge())));
+        }
+        for (CircleContour c : excluding) {
+            uncached.subtract(new Area(c.getFatInterior(-c.getNudge())));
+        }
+        return cached.equals(uncached);
+    }
+}
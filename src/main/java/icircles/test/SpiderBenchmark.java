@@ -0,0 +1,162 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.abstractDescription.AbstractDescription;
+import icircles.abstractDescription.AbstractSpider;
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.ConcreteSpider;
+import icircles.concreteDiagram.ConcreteSpiderFoot;
+import icircles.concreteDiagram.ConcreteSpiderLeg;
+import icircles.util.CannotDrawException;
+
+/**
+ * Times the layout of a three-set Venn diagram with 25 to 200 spiders, each
+ * with one to three (or up to eight) feet in random zones, and counts the
+ * feet left lying on legs which do not end at them.  A diagram which is not
+ * {@link ConcreteDiagram#isDegraded degraded} should have none, and each one
+ * that does counts as a failure.  Also reports the mean length of leg per
+ * spider.
+ *
+ * Arguments: the number of diagrams of each size, and the most feet a
+ * spider may have.
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties).
+ */
+public class SpiderBenchmark {
+
+    static final int MIN_SPIDERS = 25;
+    static final int MAX_SPIDERS = 200;
+    static final int REPEATS = 3;
+    static final int MAX_FEET = 3;
+    static final int SIZE = 1000;
+    // as in DiagramCreator
+    static final double FOOT_TOLERANCE = 6;
+
+    private static int failures = 0;
+
+    public static void main(String args[]) {
+        int repeats = REPEATS;
+        if (args.length > 0) {
+            repeats = Integer.parseInt(args[0]);
+        }
+        int maxFeet = MAX_FEET;
+        if (args.length > 1) {
+            maxFeet = Integer.parseInt(args[1]);
+        }
+        Random random = new Random(0);
+
+        // warm up
+        for (int i = 0; i < repeats; i++) {
+            layOut(makeDescription(MIN_SPIDERS, maxFeet, random), new double[4]);
+        }
+
+        for (int n = MIN_SPIDERS; n <= MAX_SPIDERS; n *= 2) {
+            ArrayList<AbstractDescription> ads = new ArrayList<AbstractDescription>();
+            for (int i = 0; i < repeats; i++) {
+                ads.add(makeDescription(n, maxFeet, random));
+            }
+            // diagrams drawn, feet on legs, and spiders and their leg length
+            double[] counts = new double[4];
+            long start = System.nanoTime();
+            for (AbstractDescription ad : ads) {
+                layOut(ad, counts);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("spiders " + n + " : " + (long) counts[0] + " of " + repeats + " drawn, "
+                    + (elapsed / 1000000 / repeats) + " ms each, " + (long) counts[1] + " feet on legs"
+                    + (counts[2] == 0 ? "" : String.format(", %.1f leg length per spider", counts[3] / counts[2])));
+        }
+
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+
+    private static void layOut(AbstractDescription ad, double[] counts) {
+        ConcreteDiagram cd;
+        try {
+            cd = ConcreteDiagram.makeConcreteDiagram(ad, SIZE);
+        } catch (CannotDrawException x) {
+            return;
+        }
+        if (cd == null) {
+            return;
+        }
+        counts[0]++;
+        double feet_on_legs = counts[1];
+        for (ConcreteSpider cs : cd.getSpiders()) {
+            counts[2]++;
+            for (ConcreteSpiderLeg leg : cs.getLegs()) {
+                counts[3] += Math.hypot(leg.to.getX() - leg.from.getX(), leg.to.getY() - leg.from.getY());
+            }
+            for (ConcreteSpiderFoot foot : cs.getFeet()) {
+                for (ConcreteSpider cs2 : cd.getSpiders()) {
+                    for (ConcreteSpiderLeg leg : cs2.getLegs()) {
+                        if (leg.from != foot && leg.to != foot && isOnLeg(foot, leg)) {
+                            counts[1]++;
+                        }
+                    }
+                }
+            }
+        }
+        if (counts[1] > feet_on_legs && !cd.isDegraded()) {
+            failures++;
+        }
+    }
+
+    /**
+     * Whether a foot lies within FOOT_TOLERANCE of a leg, between its ends.
+     */
+    private static boolean isOnLeg(ConcreteSpiderFoot foot, ConcreteSpiderLeg leg) {
+        double lx = leg.to.getX() - leg.from.getX();
+        double ly = leg.to.getY() - leg.from.getY();
+        double fx = foot.getX() - leg.from.getX();
+        double fy = foot.getY() - leg.from.getY();
+        double len2 = lx * lx + ly * ly;
+        if (len2 == 0) {
+            return false;
+        }
+        double along = (fx * lx + fy * ly) / len2;
+        double across = Math.abs(fx * ly - fy * lx) / Math.sqrt(len2);
+        return across < FOOT_TOLERANCE && along > 0 && along < 1;
+    }
+
+    static AbstractDescription makeDescription(int numSpiders, int maxFeet, Random random) {
+        AbstractCurve a = new AbstractCurve("a");
+        AbstractCurve b = new AbstractCurve("b");
+        AbstractCurve c = new AbstractCurve("c");
+        AbstractCurve[][] insides = {{}, {a}, {b}, {c}, {a, b}, {a, c}, {b, c}, {a, b, c}};
+        ArrayList<AbstractBasicRegion> zoneList = new ArrayList<AbstractBasicRegion>();
+        for (AbstractCurve[] in : insides) {
+            TreeSet<AbstractCurve> in_set = new TreeSet<AbstractCurve>();
+            for (AbstractCurve ac : in) {
+                in_set.add(ac);
+            }
+            zoneList.add(AbstractBasicRegion.get(in_set));
+        }
+        TreeSet<AbstractCurve> contours = new TreeSet<AbstractCurve>();
+        contours.add(a);
+        contours.add(b);
+        contours.add(c);
+        AbstractDescription ad = new AbstractDescription(contours,
+                new TreeSet<AbstractBasicRegion>(zoneList));
+        for (int i = 0; i < numSpiders; i++) {
+            TreeSet<AbstractBasicRegion> habitat = new TreeSet<AbstractBasicRegion>();
+            int numFeet = 1 + random.nextInt(Math.min(maxFeet, zoneList.size()));
+            while (habitat.size() < numFeet) {
+                habitat.add(zoneList.get(random.nextInt(zoneList.size())));
+            }
+            ad.addSpider(new AbstractSpider(habitat, "s" + i));
+        }
+        return ad;
+    }
+}
@@ -0,0 +1,173 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+import icircles.concreteDiagram.ConcreteSpiderFoot;
+import icircles.concreteDiagram.ConcreteSpiderLeg;
+import icircles.concreteDiagram.SpiderLegTree;
+
+/**
+ * Builds the legs of spiders with random feet, some scattered, some on a
+ * grid as DiagramCreator places them and some on top of one another, and
+ * reports any set of legs which does not join every foot or is longer than
+ * the tree found by comparing every pair of feet.  Then times both on
+ * spiders with many feet.
+ *
+ * Arguments: the number of spiders of each kind.
+ */
+public class SpiderLegTreeTest {
+
+    static final int SPIDERS = 200;
+    static final int MAX_FEET = 40;
+    static final int LARGE_FEET = 20000;
+    static final double TOLERANCE = 1e-9;
+
+    public static void main(String args[]) {
+        int spiders = SPIDERS;
+        if (args.length > 0) {
+            spiders = Integer.parseInt(args[0]);
+        }
+        Random random = new Random(0);
+        int failures = 0;
+        for (int kind = 0; kind < 3; kind++) {
+            for (int i = 0; i < spiders; i++) {
+                ArrayList<ConcreteSpiderFoot> feet = makeFeet(kind, 1 + random.nextInt(MAX_FEET), random);
+                ArrayList<ConcreteSpiderLeg> legs = SpiderLegTree.minimumSpanningTree(feet);
+                if (!joinsAll(feet, legs)) {
+                    failures++;
+                    System.out.println("kind " + kind + ", " + feet.size() + " feet : not joined");
+                } else if (length(legs) > primLength(feet) * (1 + TOLERANCE)) {
+                    failures++;
+                    System.out.println("kind " + kind + ", " + feet.size() + " feet : legs "
+                            + length(legs) + " but tree " + primLength(feet));
+                }
+            }
+        }
+
+        for (int feetCount = LARGE_FEET / 8; feetCount <= LARGE_FEET; feetCount *= 2) {
+            ArrayList<ConcreteSpiderFoot> feet = makeFeet(0, feetCount, random);
+            long start = System.nanoTime();
+            ArrayList<ConcreteSpiderLeg> legs = SpiderLegTree.minimumSpanningTree(feet);
+            long treeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            double primLength = primLength(feet);
+            long primTime = System.nanoTime() - start;
+            if (Math.abs(length(legs) - primLength) > primLength * TOLERANCE) {
+                failures++;
+                System.out.println(feetCount + " feet : legs " + length(legs) + " but tree " + primLength);
+            }
+            System.out.println(feetCount + " feet : " + (treeTime / 1000000) + " ms, every pair "
+                    + (primTime / 1000000) + " ms");
+        }
+
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+
+    /**
+     * @param kind 0 for scattered feet, 1 for feet on a grid, 2 for feet
+     *        which often share a place.
+     */
+    private static ArrayList<ConcreteSpiderFoot> makeFeet(int kind, int count, Random random) {
+        ArrayList<ConcreteSpiderFoot> result = new ArrayList<ConcreteSpiderFoot>();
+        for (int i = 0; i < count; i++) {
+            if (kind == 0) {
+                result.add(new ConcreteSpiderFoot(random.nextDouble() * 1000, random.nextDouble() * 1000));
+            } else if (kind == 1) {
+                result.add(new ConcreteSpiderFoot(random.nextInt(8) * 5, random.nextInt(8) * 5));
+            } else if (!result.isEmpty() && random.nextBoolean()) {
+                ConcreteSpiderFoot other = result.get(random.nextInt(result.size()));
+                result.add(new ConcreteSpiderFoot(other.getX(), other.getY()));
+            } else {
+                result.add(new ConcreteSpiderFoot(random.nextDouble() * 100, random.nextDouble() * 100));
+            }
+        }
+        return result;
+    }
+
+    private static boolean joinsAll(ArrayList<ConcreteSpiderFoot> feet, ArrayList<ConcreteSpiderLeg> legs) {
+        if (legs.size() != Math.max(0, feet.size() - 1)) {
+            return false;
+        }
+        IdentityHashMap<ConcreteSpiderFoot, ConcreteSpiderFoot> parent =
+                new IdentityHashMap<ConcreteSpiderFoot, ConcreteSpiderFoot>();
+        for (ConcreteSpiderFoot foot : feet) {
+            parent.put(foot, foot);
+        }
+        int joins = 0;
+        for (ConcreteSpiderLeg leg : legs) {
+            if (!parent.containsKey(leg.from) || !parent.containsKey(leg.to)) {
+                return false;
+            }
+            ConcreteSpiderFoot a = root(parent, leg.from);
+            ConcreteSpiderFoot b = root(parent, leg.to);
+            if (a != b) {
+                parent.put(a, b);
+                joins++;
+            }
+        }
+        return joins == legs.size();
+    }
+
+    private static ConcreteSpiderFoot root(IdentityHashMap<ConcreteSpiderFoot, ConcreteSpiderFoot> parent,
+            ConcreteSpiderFoot foot) {
+        while (parent.get(foot) != foot) {
+            foot = parent.get(foot);
+        }
+        return foot;
+    }
+
+    private static double length(ArrayList<ConcreteSpiderLeg> legs) {
+        double result = 0;
+        for (ConcreteSpiderLeg leg : legs) {
+            result += distance(leg.from, leg.to);
+        }
+        return result;
+    }
+
+    /**
+     * @return the length of the minimum spanning tree, by Prim's algorithm
+     *         over every pair of feet.
+     */
+    private static double primLength(ArrayList<ConcreteSpiderFoot> feet) {
+        int n = feet.size();
+        if (n < 2) {
+            return 0;
+        }
+        double[] best = new double[n];
+        boolean[] inTree = new boolean[n];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        best[0] = 0;
+        double result = 0;
+        for (int k = 0; k < n; k++) {
+            int next = -1;
+            for (int i = 0; i < n; i++) {
+                if (!inTree[i] && (next < 0 || best[i] < best[next])) {
+                    next = i;
+                }
+            }
+            inTree[next] = true;
+            result += best[next];
+            for (int i = 0; i < n; i++) {
+                if (!inTree[i]) {
+                    best[i] = Math.min(best[i], distance(feet.get(next), feet.get(i)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static double distance(ConcreteSpiderFoot a, ConcreteSpiderFoot b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,113 @@
+package icircles.test;
+
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.DiagramCreator;
+import icircles.concreteDiagram.StrategyPortfolio;
+import icircles.decomposition.DecompositionStrategy;
+import icircles.recomposition.RecompositionStrategy;
+import icircles.util.CannotDrawException;
+
+/**
+ * Draws every diagram in {@link TestData} with the default pairing of
+ * strategies alone, and with a {@link StrategyPortfolio} in each of its
+ * modes, at the usual size and at the size used for checksums.  Reports any
+ * diagram the default pairing draws but the portfolio does not, and any
+ * portfolio whose counts of wins and successes do not match the diagrams it
+ * drew.  Then prints how many diagrams each way drew, and how long it took.
+ *
+ * Arguments: the number of threads in the portfolio.
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties).
+ */
+public class StrategyPortfolioTest {
+
+    static final int NUM_THREADS = 4;
+    static final int[] SIZES = {TestData.TEST_PANEL_SIZE, 100};
+    static final int[] MODES = {StrategyPortfolio.FIRST_SUCCESS, StrategyPortfolio.BEST_BY_DEADLINE};
+    static final String[] MODE_NAMES = {"first success", "best by deadline"};
+
+    public static void main(String args[]) {
+        int numThreads = NUM_THREADS;
+        if (args.length > 0) {
+            numThreads = Integer.parseInt(args[0]);
+        }
+        int failures = 0;
+        for (int size : SIZES) {
+            boolean[] drawnAlone = new boolean[TestData.test_data.length];
+            int numAlone = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < TestData.test_data.length; i++) {
+                try {
+                    drawnAlone[i] = new DiagramCreator(TestDescriptions.makeForTesting(
+                            TestData.test_data[i].description)).createDiagram(size) != null;
+                } catch (CannotDrawException x) {
+                    drawnAlone[i] = false;
+                }
+                if (drawnAlone[i]) {
+                    numAlone++;
+                }
+            }
+            System.out.println("size " + size + ", default pairing : drew " + numAlone + " of "
+                    + TestData.test_data.length + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+            for (int m = 0; m < MODES.length; m++) {
+                StrategyPortfolio portfolio = new StrategyPortfolio(numThreads);
+                int drawn = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < TestData.test_data.length; i++) {
+                    ConcreteDiagram cd = null;
+                    try {
+                        cd = portfolio.createDiagram(TestDescriptions.makeForTesting(
+                                TestData.test_data[i].description), size, MODES[m], 0);
+                    } catch (CannotDrawException x) {
+                        // undrawable by every pairing
+                    }
+                    if (cd != null) {
+                        drawn++;
+                    } else if (drawnAlone[i]) {
+                        failures++;
+                        System.out.println("size " + size + ", " + MODE_NAMES[m] + " : test " + i
+                                + " not drawn, though the default pairing draws it");
+                    }
+                }
+                long time = System.nanoTime() - start;
+
+                long wins = 0;
+                long successes = 0;
+                long attempts = 0;
+                for (int d : new int[] {DecompositionStrategy.SORT_ORDER, DecompositionStrategy.SORT_ORDER_REV,
+                        DecompositionStrategy.INNERMOST, DecompositionStrategy.PIERCEDFIRST}) {
+                    for (int r : new int[] {RecompositionStrategy.RECOMPOSE_NESTED,
+                            RecompositionStrategy.RECOMPOSE_SINGLY_PIERCED,
+                            RecompositionStrategy.RECOMPOSE_DOUBLY_PIERCED}) {
+                        StrategyPortfolio.Statistics stats = portfolio.getStatistics(d, r);
+                        wins += stats.getWins();
+                        successes += stats.getSuccesses();
+                        attempts += stats.getAttempts();
+                    }
+                }
+                if (wins != drawn) {
+                    failures++;
+                    System.out.println("size " + size + ", " + MODE_NAMES[m] + " : " + wins
+                            + " wins but " + drawn + " drawn");
+                }
+                if (successes < drawn || successes > attempts) {
+                    failures++;
+                    System.out.println("size " + size + ", " + MODE_NAMES[m] + " : " + successes
+                            + " successes of " + attempts + " attempts, but " + drawn + " drawn");
+                }
+                System.out.println("size " + size + ", " + MODE_NAMES[m] + " : drew " + drawn + " of "
+                        + TestData.test_data.length + " in " + time / 1000000 + " ms");
+                portfolio.shutdown();
+            }
+        }
+
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+}
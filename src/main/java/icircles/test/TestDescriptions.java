@@ -0,0 +1,106 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.abstractDescription.AbstractDescription;
+import icircles.abstractDescription.AbstractSpider;
+
+/**
+ * Reads the descriptions in {@link TestData}, such as
+ * <pre>"a b ab, ab, a 'x, . b"</pre>
+ * The first part lists the zones by their contour labels, one character per
+ * contour.  The second lists the shaded zones, with "." for the outside
+ * zone.  Each further part is the habitat of a spider, optionally named by a
+ * word starting with a quote.
+ */
+class TestDescriptions {
+
+    static AbstractDescription makeForTesting(String s) {
+        ArrayList<String> descriptors = getDescriptors(s);
+        String diagString = descriptors.get(0);
+        String shadingString = descriptors.get(1);
+
+        TreeSet<AbstractBasicRegion> ad_zones = new TreeSet<AbstractBasicRegion>();
+        AbstractBasicRegion outsideZone = AbstractBasicRegion.get(new TreeSet<AbstractCurve>());
+        ad_zones.add(outsideZone);
+        HashMap<String, AbstractCurve> contours = new HashMap<String, AbstractCurve>();
+        StringTokenizer st = new StringTokenizer(diagString); // for spaces
+        while (st.hasMoreTokens()) {
+            String word = st.nextToken();
+            TreeSet<AbstractCurve> zoneContours = new TreeSet<AbstractCurve>();
+            for (int i = 0; i < word.length(); i++) {
+                // curves match labels by identity
+                String label = ("" + word.charAt(i)).intern();
+                if (!contours.containsKey(label)) {
+                    contours.put(label, new AbstractCurve(label));
+                }
+                zoneContours.add(contours.get(label));
+            }
+            ad_zones.add(AbstractBasicRegion.get(zoneContours));
+        }
+        TreeSet<AbstractCurve> ad_contours = new TreeSet<AbstractCurve>(contours.values());
+
+        TreeSet<AbstractBasicRegion> ad_shaded_zones = new TreeSet<AbstractBasicRegion>();
+        st = new StringTokenizer(shadingString);
+        while (st.hasMoreTokens()) {
+            ad_shaded_zones.add(getZone(st.nextToken(), outsideZone, contours, ad_zones));
+        }
+        AbstractDescription result = new AbstractDescription(ad_contours, ad_zones, ad_shaded_zones);
+
+        for (int d = 2; d < descriptors.size(); d++) {
+            st = new StringTokenizer(descriptors.get(d));
+            TreeSet<AbstractBasicRegion> habitat = new TreeSet<AbstractBasicRegion>();
+            String spiderLabel = null;
+            while (st.hasMoreTokens()) {
+                String word = st.nextToken();
+                if (word.charAt(0) == '\'') {
+                    // this string represents the spider's label
+                    spiderLabel = word.substring(1);
+                } else {
+                    habitat.add(getZone(word, outsideZone, contours, ad_zones));
+                }
+            }
+            result.addSpider(new AbstractSpider(habitat, spiderLabel));
+        }
+        return result;
+    }
+
+    private static AbstractBasicRegion getZone(String word,
+            AbstractBasicRegion outsideZone,
+            HashMap<String, AbstractCurve> contours,
+            TreeSet<AbstractBasicRegion> ad_zones) {
+        if (word.equals(".")) {
+            // this means the outside zone
+            return outsideZone;
+        }
+        TreeSet<AbstractCurve> zoneContours = new TreeSet<AbstractCurve>();
+        for (int i = 0; i < word.length(); i++) {
+            AbstractCurve ac = contours.get("" + word.charAt(i));
+            if (ac == null) {
+                throw new RuntimeException("malformed diagram spec : contour " + word.charAt(i) + "\n");
+            }
+            zoneContours.add(ac);
+        }
+        AbstractBasicRegion zone = AbstractBasicRegion.get(zoneContours);
+        if (!ad_zones.contains(zone)) {
+            throw new RuntimeException("malformed diagram spec : zone " + zone + "\n");
+        }
+        return zone;
+    }
+
+    private static ArrayList<String> getDescriptors(String s) {
+        ArrayList<String> strings = new ArrayList<String>();
+        for (String part : s.split(",", -1)) {
+            strings.add(part);
+        }
+        while (strings.size() < 2) {
+            strings.add(""); // no zones, or no shaded zones
+        }
+        return strings;
+    }
+}
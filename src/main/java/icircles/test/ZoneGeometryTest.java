@@ -0,0 +1,219 @@
+package icircles.test;
+
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+import icircles.concreteDiagram.CircleContour;
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.ConcreteZone;
+import icircles.util.CannotDrawException;
+
+/**
+ * Lays out every diagram in {@link TestData}, and checks the exact geometry
+ * of each zone inside at least one circle against an Area made from the same
+ * circles: that {@link ConcreteZone#getArea} matches the area of the Area,
+ * that the shape of {@link ConcreteZone#getBoundaryPath} matches the Area,
+ * and that {@link ConcreteZone#containsPoint} agrees with the Area at random
+ * points around the zone.
+ *
+ * An Area draws each circle with cubic curves, which stray from the circle
+ * by a little under a thousandth of its radius, so the areas and shapes are
+ * compared to within that.  Points closer to a circle than that may fall on
+ * either side, so they are counted but not reported.
+ *
+ * Arguments: the number of random points per zone.
+ */
+public class ZoneGeometryTest {
+
+    static final int SIZE = TestData.TEST_PANEL_SIZE;
+    static final int POINTS = 200;
+    // how far an Area's curves may stray from the circle, per unit radius
+    static final double CURVE_ERROR = 1e-3;
+    static final double FLATNESS = 0.01;
+
+    public static void main(String args[]) {
+        int points = POINTS;
+        if (args.length > 0) {
+            points = Integer.parseInt(args[0]);
+        }
+        Rectangle2D.Double box = new Rectangle2D.Double(0, 0, SIZE, SIZE);
+        Random random = new Random(0);
+        int num_zones = 0;
+        int num_points = 0;
+        int near_edge = 0;
+        int failures = 0;
+        for (int i = 0; i < TestData.test_data.length; i++) {
+            ConcreteDiagram cd;
+            try {
+                cd = ConcreteDiagram.makeConcreteDiagram(TestDescriptions.makeForTesting(
+                        TestData.test_data[i].description), SIZE);
+            } catch (CannotDrawException x) {
+                continue;
+            }
+            if (cd == null) {
+                continue;
+            }
+            ArrayList<ConcreteZone> zones = new ArrayList<ConcreteZone>(cd.getUnshadedZones());
+            zones.addAll(cd.getShadedZones());
+
+            for (ConcreteZone z : zones) {
+                if (z.getContainingContours().isEmpty()) {
+                    continue;
+                }
+                num_zones++;
+                String name = "test " + i + " : zone " + z.getAbstractBasicRegion().debug();
+                Area expected = trueShape(z);
+                double tolerance = tolerance(z);
+
+                double area = area(expected);
+                if (Math.abs(z.getArea() - area) > tolerance) {
+                    failures++;
+                    System.out.println(name + " has area " + z.getArea() + " but its Area " + area);
+                }
+
+                Area difference = new Area(z.getBoundaryPath(box));
+                difference.exclusiveOr(expected);
+                if (area(difference) > tolerance) {
+                    failures++;
+                    System.out.println(name + " path differs from its Area by " + area(difference));
+                }
+
+                Rectangle2D bounds = expected.getBounds2D();
+                if (bounds.isEmpty()) {
+                    // too thin for an Area; try points about its circles
+                    bounds = z.getContainingContours().get(0).getCircle().getBounds2D();
+                }
+                for (int p = 0; p < points; p++) {
+                    double x = bounds.getX() + (random.nextDouble() * 1.2 - 0.1) * bounds.getWidth();
+                    double y = bounds.getY() + (random.nextDouble() * 1.2 - 0.1) * bounds.getHeight();
+                    num_points++;
+                    if (z.containsPoint(x, y) == expected.contains(x, y)) {
+                        continue;
+                    }
+                    if (distanceToEdge(z, x, y) <= edgeTolerance(z)) {
+                        near_edge++;
+                    } else {
+                        failures++;
+                        System.out.println(name + " : containsPoint(" + x + ", " + y + ") is "
+                                + z.containsPoint(x, y));
+                    }
+                }
+            }
+        }
+
+        System.out.println(num_zones + " zones, " + num_points + " points, of which "
+                + near_edge + " on the edge of a circle differ");
+        System.out.println("******************");
+        if (failures == 0) {
+            System.out.println("**** all pass ****");
+        } else {
+            System.out.println("**** " + failures + " failures ****");
+        }
+        System.out.println("******************");
+    }
+
+    /**
+     * The zone as an Area of its circles, without the nudges that
+     * {@link ConcreteZone#getShape} adds.
+     */
+    private static Area trueShape(ConcreteZone z) {
+        Area result = null;
+        for (CircleContour c : z.getContainingContours()) {
+            Area a = new Area(circle(c));
+            if (result == null) {
+                result = a;
+            } else {
+                result.intersect(a);
+            }
+        }
+        for (CircleContour c : z.getExcludingContours()) {
+            result.subtract(new Area(circle(c)));
+        }
+        return result;
+    }
+
+    private static Ellipse2D.Double circle(CircleContour c) {
+        double r = c.get_radius();
+        return new Ellipse2D.Double(c.get_cx() - r, c.get_cy() - r, 2 * r, 2 * r);
+    }
+
+    /**
+     * How far the area of an Area for z may be from the true area: the
+     * length of all its circles times how far their curves may stray.
+     */
+    private static double tolerance(ConcreteZone z) {
+        double result = 0;
+        for (CircleContour c : z.getContainingContours()) {
+            result += 2 * Math.PI * c.get_radius() * c.get_radius() * CURVE_ERROR;
+        }
+        for (CircleContour c : z.getExcludingContours()) {
+            result += 2 * Math.PI * c.get_radius() * c.get_radius() * CURVE_ERROR;
+        }
+        return result;
+    }
+
+    /**
+     * How far a point may be from the nearest circle of z and still be on
+     * the wrong side of its curves.
+     */
+    private static double edgeTolerance(ConcreteZone z) {
+        double result = 0;
+        for (CircleContour c : z.getContainingContours()) {
+            result = Math.max(result, c.get_radius() * CURVE_ERROR);
+        }
+        for (CircleContour c : z.getExcludingContours()) {
+            result = Math.max(result, c.get_radius() * CURVE_ERROR);
+        }
+        return result;
+    }
+
+    private static double distanceToEdge(ConcreteZone z, double x, double y) {
+        double result = Double.POSITIVE_INFINITY;
+        ArrayList<CircleContour> circles = new ArrayList<CircleContour>(z.getContainingContours());
+        circles.addAll(z.getExcludingContours());
+        for (CircleContour c : circles) {
+            double dist = Math.hypot(x - c.get_cx(), y - c.get_cy());
+            result = Math.min(result, Math.abs(dist - c.get_radius()));
+        }
+        return result;
+    }
+
+    /**
+     * The area enclosed by an Area, from its outline flattened into lines.
+     * The outline of a hole runs the other way round to the outline about
+     * it, so holes count against the total.
+     */
+    private static double area(Area a) {
+        double total = 0;
+        double[] coords = new double[6];
+        double startX = 0;
+        double startY = 0;
+        double lastX = 0;
+        double lastY = 0;
+        for (PathIterator it = a.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+            switch (it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    total += lastX * coords[1] - coords[0] * lastY;
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    total += lastX * startY - startX * lastY;
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return Math.abs(total) / 2;
+    }
+}
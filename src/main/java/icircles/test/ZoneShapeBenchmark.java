@@ -0,0 +1,131 @@
+package icircles.test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import icircles.abstractDescription.AbstractBasicRegion;
+import icircles.abstractDescription.AbstractCurve;
+import icircles.abstractDescription.AbstractDescription;
+import icircles.concreteDiagram.ConcreteDiagram;
+import icircles.concreteDiagram.ConcreteZone;
+import icircles.util.CannotDrawException;
+
+/**
+ * Times the layout of diagrams of 10 to 40 contours, and counts the circles
+ * each zone of the finished diagrams excludes: the circles whose Areas are
+ * subtracted when the shape of the zone is built.
+ *
+ * Each diagram is made of small clusters of contours side by side, so that
+ * most circles are far from most zones.  Only circles near a zone need be
+ * subtracted from it.
+ *
+ * Arguments: the number of diagrams of each size.
+ *
+ * Run with logging off (devel/iCircles/log4j.release.properties).
+ */
+public class ZoneShapeBenchmark {
+
+    static final int MIN_CONTOURS = 10;
+    static final int MAX_CONTOURS = 40;
+    static final int STEP = 10;
+    static final int REPEATS = 5;
+    static final int SIZE = 500;
+
+    public static void main(String args[]) {
+        int repeats = REPEATS;
+        if (args.length > 0) {
+            repeats = Integer.parseInt(args[0]);
+        }
+        Random random = new Random(0);
+
+        // warm up
+        for (int i = 0; i < repeats; i++) {
+            layOut(makeDescription(MIN_CONTOURS, random), new long[3]);
+        }
+
+        for (int n = MIN_CONTOURS; n <= MAX_CONTOURS; n += STEP) {
+            ArrayList<AbstractDescription> ads = new ArrayList<AbstractDescription>();
+            for (int i = 0; i < repeats; i++) {
+                ads.add(makeDescription(n, random));
+            }
+            // zones, excluded circles, and circles outside the zones
+            long[] counts = new long[3];
+            int drawn = 0;
+            long start = System.nanoTime();
+            for (AbstractDescription ad : ads) {
+                if (layOut(ad, counts)) {
+                    drawn++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("contours " + n + " : " + drawn + " of " + repeats + " drawn, "
+                    + (elapsed / 1000000 / repeats) + " ms each, "
+                    + "excluding " + (counts[1] / Math.max(1, counts[0]))
+                    + " of " + (counts[2] / Math.max(1, counts[0])) + " circles per zone");
+        }
+    }
+
+    private static boolean layOut(AbstractDescription ad, long[] counts) {
+        ConcreteDiagram cd;
+        try {
+            cd = ConcreteDiagram.makeConcreteDiagram(ad, SIZE);
+        } catch (CannotDrawException x) {
+            return false;
+        }
+        if (cd == null) {
+            return false;
+        }
+        int numCircles = cd.getCircles().size();
+        ArrayList<ConcreteZone> zones = new ArrayList<ConcreteZone>(cd.getUnshadedZones());
+        zones.addAll(cd.getShadedZones());
+        for (ConcreteZone z : zones) {
+            counts[0]++;
+            counts[1] += z.getExcludingContours().size();
+            counts[2] += numCircles - z.getContainingContours().size();
+        }
+        return true;
+    }
+
+    /**
+     * Small clusters of contours side by side: each cluster a pair of
+     * overlapping contours, with a third contour nested inside one of them
+     * about half the time.
+     */
+    static AbstractDescription makeDescription(int numContours, Random random) {
+        AbstractCurve[] curves = new AbstractCurve[numContours];
+        for (int i = 0; i < numContours; i++) {
+            curves[i] = new AbstractCurve(("c" + i).intern());
+        }
+        TreeSet<AbstractBasicRegion> zones = new TreeSet<AbstractBasicRegion>();
+        zones.add(AbstractBasicRegion.get(new TreeSet<AbstractCurve>()));
+        int i = 0;
+        while (i < numContours) {
+            AbstractCurve a = curves[i++];
+            zones.add(zone(a));
+            if (i == numContours) {
+                break;
+            }
+            AbstractCurve b = curves[i++];
+            zones.add(zone(b));
+            zones.add(zone(a, b));
+            if (i < numContours && random.nextBoolean()) {
+                AbstractCurve c = curves[i++];
+                zones.add(zone(random.nextBoolean() ? a : b, c));
+            }
+        }
+        TreeSet<AbstractCurve> contours = new TreeSet<AbstractCurve>();
+        for (AbstractCurve c : curves) {
+            contours.add(c);
+        }
+        return new AbstractDescription(contours, zones);
+    }
+
+    private static AbstractBasicRegion zone(AbstractCurve... in) {
+        TreeSet<AbstractCurve> in_set = new TreeSet<AbstractCurve>();
+        for (AbstractCurve c : in) {
+            in_set.add(c);
+        }
+        return AbstractBasicRegion.get(in_set);
+    }
+}
@@ -0,0 +1,49 @@
+package icircles.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets a caller give up on a layout, either by cancelling it from another
+ * thread or by setting a deadline when the layout starts.  The layout
+ * checks the token between pieces of work, so it stops soon after, rather
+ * than at once.
+ */
+public class CancellationToken {
+
+    private volatile boolean m_cancelled;
+    private final long m_deadline;
+    private final boolean m_has_deadline;
+
+    /**
+     * A token without a deadline, which is only cancelled by {@link #cancel}.
+     */
+    public CancellationToken() {
+        m_deadline = 0;
+        m_has_deadline = false;
+    }
+
+    private CancellationToken(long deadline) {
+        m_deadline = deadline;
+        m_has_deadline = true;
+    }
+
+    /**
+     * @param timeout_ms how long from now the layout may take.
+     * @return a token which is cancelled once that time has passed.
+     */
+    public static CancellationToken withTimeout(long timeout_ms) {
+        return new CancellationToken(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout_ms));
+    }
+
+    public void cancel() {
+        m_cancelled = true;
+    }
+
+    /**
+     * @return true if {@link #cancel} has been called or the deadline has
+     *         passed.
+     */
+    public boolean isCancelled() {
+        return m_cancelled || (m_has_deadline && System.nanoTime() - m_deadline >= 0);
+    }
+}
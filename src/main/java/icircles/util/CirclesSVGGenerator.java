@@ -1,6 +1,7 @@
 package icircles.util;
 
 import java.io.*;
+import java.util.List;
 
 import java.awt.Color;
 import java.awt.geom.*;
@@ -66,10 +67,11 @@ public class CirclesSVGGenerator {
         svgRoot.setAttributeNS(null, "width", Integer.toString(diagram.getSize()));
         svgRoot.setAttributeNS(null, "height", Integer.toString(diagram.getSize()));
 
-        // Draw the shaded zones
+        // Draw the shaded zones, all cut from one arrangement of the circles
+        diagram.getArrangement();
         for(ConcreteZone z : diagram.getShadedZones()) {
             Element path = document.createElementNS(svgNS, "path");
-            path.setAttributeNS(null, "d", toSVGPath(z.getShape(diagram.getBox())));
+            path.setAttributeNS(null, "d", toSVGPath(z, diagram.getBox()));
             path.setAttributeNS(null, "fill", "#cccccc"); // grey
             path.setAttributeNS(null, "z-index", Integer.toString(zOrder.SHADING.ordinal()));
 
@@ -138,43 +140,48 @@ public class CirclesSVGGenerator {
     }
 
     /**
-     * Converts an awt Area to a String representing an SVG path.
+     * Converts the exact boundary of a zone to a String representing an SVG
+     * path, with one elliptical arc command per boundary arc.
      *
-     * @param a The Area to convert to an SVG path.
-     * @returns An SVG specification of the passed in Area.
+     * @param z The zone to convert to an SVG path.
+     * @param box The box to which a zone outside all its circles is clipped.
+     * @returns An SVG specification of the zone's outline.
      */
-    private static String toSVGPath(Area a) {
+    private static String toSVGPath(ConcreteZone z, Rectangle2D.Double box) {
         StringBuilder sb = new StringBuilder();
 
-        PathIterator it = a.getPathIterator(null);
-        if (null == it) {
-            return new String();
+        if (z.getContainingContours().isEmpty()) {
+            sb.append(String.format("M%.2f,%.2f ", box.getMinX(), box.getMinY()));
+            sb.append(String.format("L%.2f,%.2f ", box.getMaxX(), box.getMinY()));
+            sb.append(String.format("L%.2f,%.2f ", box.getMaxX(), box.getMaxY()));
+            sb.append(String.format("L%.2f,%.2f ", box.getMinX(), box.getMaxY()));
+            sb.append("Z");
         }
 
-        // PathIterator is not a normal Java Iterator
-        while (!it.isDone()){
-            double[] c = new double[6];
-
-            switch(it.currentSegment(c)) {
-            case PathIterator.SEG_MOVETO:
-                sb.append(String.format("M%.2f,%.2f ", c[0], c[1]));
-                break;
-            case PathIterator.SEG_LINETO:
-                sb.append(String.format("L%.2f,%.2f ", c[0], c[1]));
-                break;
-            case PathIterator.SEG_QUADTO:
-                sb.append(String.format("Q%.2f,%.2f,%.2f,%.2f ",c[0], c[1], c[2], c[3]));
-                break;
-            case PathIterator.SEG_CUBICTO:
-                sb.append(String.format("C%.2f,%.2f,%.2f,%.2f,%.2f,%.2f ", c[0], c[1], c[2], c[3], c[4], c[5]));
-                break;
-            case PathIterator.SEG_CLOSE:
-                sb.append("Z");
-                break;
+        for (List<CircleArrangement.BoundaryArc> loop
+                : CircleArrangement.toLoops(z.getBoundary())) {
+            boolean first = true;
+            for (CircleArrangement.BoundaryArc b : loop) {
+                CircleContour c = b.getArc().getCircle();
+                double r = c.get_radius();
+                double extent = b.getArc().getExtent();
+                // sweep flag 1 runs the way of increasing angle
+                int sweep = b.isReversed() ? 0 : 1;
+                if (first) {
+                    sb.append(String.format("M%.2f,%.2f ", b.getFromX(), b.getFromY()));
+                    first = false;
+                }
+                if (extent >= 2 * Math.PI) {
+                    // a whole circle has to be drawn as two halves
+                    double midX = 2 * c.get_cx() - b.getFromX();
+                    double midY = 2 * c.get_cy() - b.getFromY();
+                    sb.append(String.format("A%.2f,%.2f 0 0,%d %.2f,%.2f ", r, r, sweep, midX, midY));
+                    extent = Math.PI;
+                }
+                sb.append(String.format("A%.2f,%.2f 0 %d,%d %.2f,%.2f ",
+                        r, r, extent > Math.PI ? 1 : 0, sweep, b.getToX(), b.getToY()));
             }
-
-            // update
-            it.next();
+            sb.append("Z");
         }
         return sb.toString();
     }